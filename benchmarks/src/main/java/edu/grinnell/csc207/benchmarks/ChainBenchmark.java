@@ -0,0 +1,230 @@
+package edu.grinnell.csc207.benchmarks;
+
+import edu.grinnell.csc207.blockchains.Block;
+import edu.grinnell.csc207.blockchains.BlockChain;
+import edu.grinnell.csc207.blockchains.Hash;
+import edu.grinnell.csc207.blockchains.HashValidator;
+import edu.grinnell.csc207.blockchains.Transaction;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the chain operations whose cost might grow with the chain: appending, looking up
+ * balances, and validating. Also compares the two ways blocks are hashed: MessageDigest, which
+ * hashes the whole block each time, and Sha256, which mining uses to hash the fixed part of a
+ * block once and then only the nonce for each attempt.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChainBenchmark {
+  /**
+   * The number of blocks in the chain.
+   */
+  @Param({"1000", "100000"})
+  public int chainLength;
+
+  /**
+   * The number of users in the chain.
+   */
+  @Param({"10", "1000"})
+  public int users;
+
+  /**
+   * The chain.
+   */
+  BlockChain chain;
+
+  /**
+   * A block that fits on the end of the chain.
+   */
+  Block next;
+
+  /**
+   * The names of the users.
+   */
+  String[] names;
+
+  /**
+   * The user whose balance to look up next.
+   */
+  int user;
+
+  /**
+   * Build the chain.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    this.chain = Chains.build(Math.max(this.chainLength, this.users), this.users);
+    this.next = Chains.next(this.chain, this.users);
+    this.names = new String[this.users];
+    for (int i = 0; i < this.users; i++) {
+      this.names[i] = Chains.user(i);
+    } // for
+  } // setup()
+
+  /**
+   * Counts the blocks validated, which JMH reports as a rate.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Validated {
+    /**
+     * The number of blocks validated.
+     */
+    public long blocks;
+
+    /**
+     * Start each iteration from zero.
+     */
+    @Setup(Level.Iteration)
+    public void clear() {
+      this.blocks = 0;
+    } // clear()
+  } // class Validated
+
+  /**
+   * A block to hash with a number of nonces, and a validator that accepts the last of them.
+   */
+  @State(Scope.Thread)
+  public static class Hashing implements HashValidator {
+    /**
+     * The number of nonces to try for each block. One is a hash computed once, as in
+     * calculateHash(); more is mining.
+     */
+    @Param({"1", "1000"})
+    public int attempts;
+
+    /**
+     * The transaction in the block.
+     */
+    Transaction transaction;
+
+    /**
+     * The hash of the block before.
+     */
+    Hash prev;
+
+    /**
+     * The number of nonces left to reject.
+     */
+    int left;
+
+    /**
+     * Build the block.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+      this.transaction = new Transaction("Ann", "Bob", 10);
+      this.prev = new Hash(new byte[32]);
+    } // setup()
+
+    /**
+     * Accept a hash once enough nonces have been tried.
+     *
+     * @param hash The hash we're checking.
+     * @return true for the last attempt and false otherwise.
+     */
+    public boolean isValid(Hash hash) {
+      return --this.left <= 0;
+    } // isValid(Hash)
+
+    /**
+     * Accept the bytes of a hash once enough nonces have been tried.
+     *
+     * @param digest The bytes of the hash we're checking.
+     * @return true for the last attempt and false otherwise.
+     */
+    public boolean isValidDigest(byte[] digest) {
+      return --this.left <= 0;
+    } // isValidDigest(byte[])
+  } // class Hashing
+
+  /**
+   * Append a block and remove it again, leaving the chain as it was.
+   *
+   * @return whether the block was removed.
+   */
+  @Benchmark
+  public boolean appendAndRemove() {
+    this.chain.append(this.next);
+    return this.chain.removeLast();
+  } // appendAndRemove()
+
+  /**
+   * Look up one user's balance.
+   *
+   * @return the balance.
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public int balance() {
+    this.user = (this.user + 1) % this.users;
+    return this.chain.balance(this.names[this.user]);
+  } // balance()
+
+  /**
+   * Validate the whole chain.
+   *
+   * @param counters Where to count the blocks validated.
+   * @return whether the chain is correct.
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public boolean validate(Validated counters) {
+    counters.blocks += this.chain.getSize();
+    return this.chain.isCorrect();
+  } // validate(Validated)
+
+  /**
+   * Try each nonce with MessageDigest, hashing the whole block every time.
+   *
+   * @param hashing The block and the number of nonces.
+   * @return the last hash.
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Hash messageDigest(Hashing hashing) {
+    Hash hash = null;
+    for (int nonce = 0; nonce < hashing.attempts; nonce++) {
+      hash = new Block(1, hashing.transaction, hashing.prev, nonce).getHash();
+    } // for
+    return hash;
+  } // messageDigest(Hashing)
+
+  /**
+   * Try each nonce with Sha256 by mining, absorbing the rest of the block once and restoring
+   * that midstate for every nonce. Mining also hashes the block it finds once with
+   * MessageDigest, so with one attempt the difference from messageDigest is the cost of a
+   * single Sha256 hash.
+   *
+   * @param hashing The block and the number of nonces.
+   * @return the mined block.
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Block sha256Midstate(Hashing hashing) {
+    hashing.left = hashing.attempts;
+    return new Block(1, hashing.transaction, hashing.prev, hashing);
+  } // sha256Midstate(Hashing)
+} // class ChainBenchmark
@@ -0,0 +1,77 @@
+package edu.grinnell.csc207.benchmarks;
+
+import edu.grinnell.csc207.blockchains.Block;
+import edu.grinnell.csc207.blockchains.BlockChain;
+import edu.grinnell.csc207.blockchains.Transaction;
+
+/**
+ * Builds chains for the benchmarks to work on.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class Chains {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How much each user starts with.
+   */
+  static final int START_BALANCE = 1_000_000;
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Get the name of a user.
+   *
+   * @param i The number of the user.
+   * @return the user's name.
+   */
+  public static String user(int i) {
+    return "user-" + i;
+  } // user(int)
+
+  /**
+   * Get the transaction for a block in a benchmark chain. The first blocks deposit money for
+   * each user; the rest pass one unit around the users in turn.
+   *
+   * @param num   The number of the block.
+   * @param users The number of users.
+   * @return the transaction.
+   */
+  public static Transaction transaction(int num, int users) {
+    if (num < users) {
+      return new Transaction("", user(num), START_BALANCE);
+    } // if
+    return new Transaction(user(num % users), user((num + 1) % users), 1);
+  } // transaction(int, int)
+
+  /**
+   * Build a chain whose validator accepts every hash, so no mining is needed.
+   *
+   * @param length The number of blocks.
+   * @param users  The number of users.
+   * @return the chain.
+   */
+  public static BlockChain build(int length, int users) {
+    BlockChain chain = new BlockChain((h) -> true);
+    for (int i = 0; i < length; i++) {
+      chain.append(next(chain, users));
+    } // for
+    return chain;
+  } // build(int, int)
+
+  /**
+   * Make the next block for a benchmark chain without appending it.
+   *
+   * @param chain The chain, whose validator must accept every hash.
+   * @param users The number of users.
+   * @return the block.
+   */
+  public static Block next(BlockChain chain, int users) {
+    return chain.mine(transaction(chain.getSize(), users));
+  } // next(BlockChain, int)
+} // class Chains
@@ -0,0 +1,108 @@
+package edu.grinnell.csc207.benchmarks;
+
+import edu.grinnell.csc207.blockchains.Block;
+import edu.grinnell.csc207.blockchains.BlockChain;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures balance lookups while one thread appends and removes blocks. Run with
+ * "-tg N,1" to vary the number of reading threads.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class ConcurrentReadBenchmark {
+  /**
+   * The number of users in the chain.
+   */
+  @Param({"1000"})
+  public int users;
+
+  /**
+   * The chain.
+   */
+  BlockChain chain;
+
+  /**
+   * A block that fits on the end of the chain.
+   */
+  Block next;
+
+  /**
+   * The names of the users.
+   */
+  String[] names;
+
+  /**
+   * Build the chain.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    this.chain = Chains.build(10_000, this.users);
+    this.next = Chains.next(this.chain, this.users);
+    this.names = new String[this.users];
+    for (int i = 0; i < this.users; i++) {
+      this.names[i] = Chains.user(i);
+    } // for
+  } // setup()
+
+  /**
+   * The user a reading thread looks up next.
+   */
+  @State(Scope.Thread)
+  public static class Reader {
+    /**
+     * The number of the user.
+     */
+    int user;
+  } // class Reader
+
+  /**
+   * Append a block and remove it again, leaving the chain as it was.
+   *
+   * @return whether the block was removed.
+   */
+  @Benchmark
+  @Group("readWhileWriting")
+  @GroupThreads(1)
+  public boolean write() {
+    this.chain.append(this.next);
+    return this.chain.removeLast();
+  } // write()
+
+  /**
+   * Look up one user's balance.
+   *
+   * @param reader The reading thread's place among the users.
+   * @return the balance.
+   */
+  @Benchmark
+  @Group("readWhileWriting")
+  @GroupThreads(3)
+  public int read(Reader reader) {
+    reader.user = (reader.user + 1) % this.users;
+    return this.chain.balance(this.names[reader.user]);
+  } // read(Reader)
+} // class ConcurrentReadBenchmark
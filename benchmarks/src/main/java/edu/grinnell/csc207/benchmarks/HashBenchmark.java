@@ -0,0 +1,64 @@
+package edu.grinnell.csc207.benchmarks;
+
+import edu.grinnell.csc207.blockchains.Block;
+import edu.grinnell.csc207.blockchains.Hash;
+import edu.grinnell.csc207.blockchains.Transaction;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many block hashes we compute per second.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashBenchmark {
+  /**
+   * The length of the user names in the block.
+   */
+  @Param({"8", "256"})
+  public int nameLength;
+
+  /**
+   * The block to hash.
+   */
+  Block block;
+
+  /**
+   * Build the block.
+   */
+  @Setup
+  public void setup() {
+    String name = "u".repeat(this.nameLength);
+    this.block = new Block(1, new Transaction(name, name + "2", 10),
+        new Hash(new byte[32]), 0);
+  } // setup()
+
+  /**
+   * Hash the block once.
+   *
+   * @return the hash.
+   */
+  @Benchmark
+  public Hash calculateHash() {
+    return this.block.calculateHash();
+  } // calculateHash()
+} // class HashBenchmark
@@ -0,0 +1,129 @@
+package edu.grinnell.csc207.benchmarks;
+
+import edu.grinnell.csc207.blockchains.Block;
+import edu.grinnell.csc207.blockchains.DifficultyTarget;
+import edu.grinnell.csc207.blockchains.Hash;
+import edu.grinnell.csc207.blockchains.ParallelMiner;
+import edu.grinnell.csc207.blockchains.Transaction;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long mining a block takes and how many hashes per second the miner computes.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MiningBenchmark {
+  /**
+   * The number of leading zero bits a hash needs.
+   */
+  @Param({"8", "12", "16"})
+  public int difficultyBits;
+
+  /**
+   * The number of mining threads; 0 mines on the benchmark thread with the Block constructor.
+   */
+  @Param({"0", "1", "4"})
+  public int threads;
+
+  /**
+   * The validator.
+   */
+  DifficultyTarget target;
+
+  /**
+   * The miner, if threads is positive.
+   */
+  ParallelMiner miner;
+
+  /**
+   * Varies the transaction so each search is different.
+   */
+  int amount;
+
+  /**
+   * Set up the validator and miner.
+   */
+  @Setup
+  public void setup() {
+    this.target = DifficultyTarget.leadingZeroBits(this.difficultyBits);
+    if (this.threads > 0) {
+      this.miner = new ParallelMiner(this.threads);
+    } // if
+  } // setup()
+
+  /**
+   * Stop the miner.
+   */
+  @TearDown
+  public void tearDown() {
+    if (this.miner != null) {
+      this.miner.close();
+    } // if
+  } // tearDown()
+
+  /**
+   * Counts the hashes computed, which JMH reports as a rate.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Hashes {
+    /**
+     * The number of hashes computed.
+     */
+    public long hashes;
+
+    /**
+     * Start each iteration from zero.
+     */
+    @Setup(Level.Iteration)
+    public void clear() {
+      this.hashes = 0;
+    } // clear()
+  } // class Hashes
+
+  /**
+   * Mine one block.
+   *
+   * @param counters Where to count the hashes.
+   * @return the block.
+   */
+  @Benchmark
+  public Block mine(Hashes counters) {
+    Transaction t = new Transaction("miner", "someone", this.amount++);
+    Hash prevHash = new Hash(new byte[32]);
+    if (this.miner == null) {
+      Block b = new Block(1, t, prevHash, this.target);
+      counters.hashes += b.getNonce() + 1;
+      return b;
+    } // if
+    AtomicLong attempts = new AtomicLong();
+    Block b = this.miner.mineAsync(1, t, prevHash, this.target, ParallelMiner.UNLIMITED, null,
+        (progress) -> attempts.set(progress.getAttempts())).join();
+    counters.hashes += attempts.get();
+    return b;
+  } // mine(Hashes)
+} // class MiningBenchmark
@@ -3,10 +3,15 @@ package edu.grinnell.csc207.blockchains;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
- * Blocks to be stored in blockchain.
+ * Blocks to be stored in blockchain. A block holds either one transaction, hashed field by field
+ * into its header, or a batch of transactions, which its header commits to through their Merkle
+ * root.
  *
  * @author Grant Sackmann
  * @author Paden Houck
@@ -18,10 +23,21 @@ public class Block {
   // +--------+
 
   /**
-   * Object holding block Transactions.
+   * Object holding block Transactions. Null for a batch.
    */
   Transaction transaction;
 
+  /**
+   * The transactions of a batch, or null for a block with one transaction.
+   */
+  Transaction[] batch;
+
+  /**
+   * The Merkle root of the batch, computed when first needed. Null for a block with one
+   * transaction.
+   */
+  Hash merkleRoot;
+
   /**
    * Block Hash.
    */
@@ -32,11 +48,6 @@ public class Block {
    */
   Hash prevHash;
 
-  /**
-   * Hash validation object.
-   */
-  HashValidator check;
-
   /**
    * Number once— a randomly generated number for cryptographic security.
    */
@@ -58,19 +69,29 @@ public class Block {
   int num;
 
   /**
-   * The message digest used to compute hashes.
+   * The store this block is a view of, or null if it is not a view.
+   */
+  BlockStore store;
+
+  /**
+   * The position of this block in its store.
    */
-  static MessageDigest md = null;
+  int pos;
 
   /**
-   * The byte buffer used for ints.
+   * The digest each thread uses to compute hashes. Keeping one per thread lets blocks on different
+   * threads hash at the same time without sharing state or taking locks. Hashes computed once use
+   * MessageDigest, whose intrinsics beat Sha256; only mining, which restores a midstate for every
+   * nonce, uses Sha256.
    */
-  static ByteBuffer intBuffer = null;
+  static final ThreadLocal<MessageDigest> HASHERS = ThreadLocal.withInitial(Block::newDigest);
 
   /**
-   * The byte buffer used for longs.
+   * The byte that follows the block number in the header of a batch. No UTF-8 name starts with
+   * it, so a batch header never matches the header of a block with one transaction.
    */
-  static ByteBuffer longBuffer = null;
+  static final byte BATCH_MARK = (byte) 0xff;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -85,18 +106,43 @@ public class Block {
    * @param pCheck       The validator used to _check the block.
    */
   public Block(int pNum, Transaction pTransaction, Hash pPrevHash, HashValidator pCheck) {
-    trySetup();
     this.num = pNum;
     this.transaction = pTransaction;
     this.prevHash = pPrevHash;
     this.nonce = 0;
-    while (!pCheck.isValid(calculateHash())) {
-      this.nonce += 1;
-    } // while
-    computeHash();
-
+    mine(pCheck);
   } // Block(int, Transaction, Hash, HashValidator)
 
+  /**
+   * Create a new block holding a batch of transactions, mining to choose a nonce that meets the
+   * requirements of the validator. The batch is hashed once, into its Merkle root; each nonce
+   * then costs a single hash of the header.
+   *
+   * @param pNum          The number of the block.
+   * @param pTransactions The transactions for the block, in order.
+   * @param pPrevHash     The hash of the previous block.
+   * @param pCheck        The validator used to check the block.
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public Block(int pNum, List<Transaction> pTransactions, Hash pPrevHash, HashValidator pCheck) {
+    this(pNum, pTransactions.toArray(new Transaction[0]), pPrevHash, 0, null);
+    mine(pCheck);
+  } // Block(int, List<Transaction>, Hash, HashValidator)
+
+  /**
+   * Create a new block holding a batch of transactions, computing the hash for the block.
+   *
+   * @param pNum          The number of the block.
+   * @param pTransactions The transactions for the block, in order.
+   * @param pPrevHash     The hash of the previous block.
+   * @param pNonce        The nonce of the block.
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public Block(int pNum, List<Transaction> pTransactions, Hash pPrevHash, long pNonce) {
+    this(pNum, pTransactions.toArray(new Transaction[0]), pPrevHash, pNonce, null);
+    computeHash();
+  } // Block(int, List<Transaction>, Hash, long)
+
   /**
    * Create a new block, computing the hash for the block.
    *
@@ -106,7 +152,6 @@ public class Block {
    * @param pNonce       The validator used to _check the block.
    */
   public Block(int pNum, Transaction pTransaction, Hash pPrevHash, long pNonce) {
-    trySetup();
     this.num = pNum;
     this.transaction = pTransaction;
     this.prevHash = pPrevHash;
@@ -114,32 +159,60 @@ public class Block {
     computeHash();
   } // Block(int, Transaction, Hash, long)
 
-  // +----------------+------------------------------------------------
-  // | Helper Methods |
-  // +----------------+
+  /**
+   * Create a block whose hash is already known, as when reading it back from storage. The hash
+   * is trusted rather than recomputed; validation recomputes it.
+   *
+   * @param pNum         The number of the block.
+   * @param pTransaction The transaction for the block.
+   * @param pPrevHash    The hash of the previous block.
+   * @param pNonce       The nonce of the block.
+   * @param pHash        The hash of the block.
+   */
+  Block(int pNum, Transaction pTransaction, Hash pPrevHash, long pNonce, Hash pHash) {
+    this.num = pNum;
+    this.transaction = pTransaction;
+    this.prevHash = pPrevHash;
+    this.nonce = pNonce;
+    this.hash = pHash;
+  } // Block(int, Transaction, Hash, long, Hash)
 
   /**
-   * Initializes static fields of class if not already done so.
+   * Create a batch whose hash is already known, as when reading it back from storage. The block
+   * takes over the array of transactions.
+   *
+   * @param pNum          The number of the block.
+   * @param pTransactions The transactions for the block, in order.
+   * @param pPrevHash     The hash of the previous block.
+   * @param pNonce        The nonce of the block.
+   * @param pHash         The hash of the block, or null if it is not yet known.
+   * @throws IllegalArgumentException if there are no transactions.
    */
-  static void trySetup() {
-    if (md != null) {
-      return;
+  Block(int pNum, Transaction[] pTransactions, Hash pPrevHash, long pNonce, Hash pHash) {
+    if (pTransactions.length == 0) {
+      throw new IllegalArgumentException("A batch needs at least one transaction");
     } // if
-    try {
-      Block.md = MessageDigest.getInstance("sha-256");
-    } catch (NoSuchAlgorithmException e) {
-      throw new NoSuchElementException("Cannot instantiate sha-256 Algorithm");
-    } // try-catch
-    Block.intBuffer = ByteBuffer.allocate(Integer.BYTES);
-    Block.longBuffer = ByteBuffer.allocate(Long.BYTES);
-  } // try-setup
+    this.num = pNum;
+    this.batch = pTransactions;
+    this.prevHash = pPrevHash;
+    this.nonce = pNonce;
+    this.hash = pHash;
+  } // Block(int, Transaction[], Hash, long, Hash)
+
+  // +----------------+------------------------------------------------
+  // | Helper Methods |
+  // +----------------+
 
   /**
-   * Retrieves the previous block.
+   * Retrieves the previous block. For a view of a stored block, this is the block now stored
+   * before it.
    *
    * @return Block reference
    */
   public Block getPreviousBlock() {
+    if (this.store != null) {
+      return this.store.neighbor(this.pos - 1);
+    } // if
     return previousBlock;
   } // getPreviousBlock()
 
@@ -150,7 +223,7 @@ public class Block {
    */
   public void setPreviousBlock(Block pPreviousBlock) {
     if (this.previousBlock != null) {
-      pPreviousBlock.nextBlock = null;
+      this.previousBlock.nextBlock = null;
     } // if
     this.previousBlock = pPreviousBlock;
     if (this.previousBlock != null) {
@@ -159,11 +232,15 @@ public class Block {
   } // setPreviousBlock()
 
   /**
-   * Retrieves the next block.
+   * Retrieves the next block. For a view of a stored block, this is the block now stored after
+   * it.
    *
    * @return Block reference
    */
   public Block getNextBlock() {
+    if (this.store != null) {
+      return this.store.neighbor(this.pos + 1);
+    } // if
     return this.nextBlock;
   } // getNextBlock()
 
@@ -174,7 +251,7 @@ public class Block {
    */
   public void setNextBlock(Block pNextBlock) {
     if (this.nextBlock != null) {
-      pNextBlock.previousBlock = null;
+      this.nextBlock.previousBlock = null;
     } // if
     this.nextBlock = pNextBlock;
     if (this.nextBlock != null) {
@@ -195,16 +272,104 @@ public class Block {
    * @return computed Hash
    */
   public Hash calculateHash() {
-    Block.md.reset();
-    Block.md.update(intToBytes(this.getNum()));
-    Block.md.update(this.getTransaction().getSource().getBytes());
-    Block.md.update(this.getTransaction().getTarget().getBytes());
-    Block.md.update(intToBytes(this.getTransaction().getAmount()));
-    Block.md.update(this.getPrevHash().getBytes());
-    Block.md.update(longToBytes(this.getNonce()));
-    return new Hash(Block.md.digest());
+    byte[] header = (this.batch == null)
+        ? header(this.getNum(), this.getTransaction(), this.getPrevHash())
+        : batchHeader(this.getNum(), MerkleTree.root(getTransactions()), this.getPrevHash());
+    MessageDigest md = HASHERS.get();
+    md.reset();
+    md.update(header);
+    md.update(ByteBuffer.allocate(Long.BYTES).putLong(0, this.getNonce()).array());
+    return Hash.wrap(md.digest());
   } // calculateHash()
 
+  /**
+   * Get the bytes of everything that goes into a block's hash except the nonce.
+   *
+   * @param pNum         The number of the block.
+   * @param pTransaction The transaction for the block.
+   * @param pPrevHash    The hash of the previous block.
+   * @return the bytes, which the nonce follows.
+   */
+  static byte[] header(int pNum, Transaction pTransaction, Hash pPrevHash) {
+    byte[] source = pTransaction.getSource().getBytes();
+    byte[] target = pTransaction.getTarget().getBytes();
+    byte[] prev = pPrevHash.getBytes();
+    return ByteBuffer.allocate(2 * Integer.BYTES + source.length + target.length + prev.length)
+        .putInt(pNum).put(source).put(target).putInt(pTransaction.getAmount()).put(prev).array();
+  } // header(int, Transaction, Hash)
+
+  /**
+   * Get the bytes of everything that goes into the hash of a batch except the nonce.
+   *
+   * @param pNum        The number of the block.
+   * @param pMerkleRoot The Merkle root of the transactions in the batch.
+   * @param pPrevHash   The hash of the previous block.
+   * @return the bytes, which the nonce follows.
+   */
+  static byte[] batchHeader(int pNum, Hash pMerkleRoot, Hash pPrevHash) {
+    byte[] root = pMerkleRoot.getBytes();
+    byte[] prev = pPrevHash.getBytes();
+    return ByteBuffer.allocate(Integer.BYTES + 1 + root.length + prev.length)
+        .putInt(pNum).put(BATCH_MARK).put(root).put(prev).array();
+  } // batchHeader(int, Hash, Hash)
+
+  /**
+   * Get the bytes of this block's header, everything but the nonce, using the stored Merkle root
+   * of a batch rather than recomputing it.
+   *
+   * @return the bytes, which the nonce follows.
+   */
+  byte[] header() {
+    if (this.batch == null) {
+      return header(this.num, this.transaction, this.prevHash);
+    } else {
+      return batchHeader(this.num, getMerkleRoot(), this.prevHash);
+    } // if-else
+  } // header()
+
+  /**
+   * Create a fresh sha-256 message digest.
+   *
+   * @return the new digest.
+   */
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("sha-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new NoSuchElementException("Cannot instantiate sha-256 Algorithm");
+    } // try-catch
+  } // newDigest()
+
+  /**
+   * Search, starting from this block's nonce, for the first nonce that meets the requirements of
+   * a validator, and take it.
+   *
+   * @param pCheck The validator.
+   */
+  void mine(HashValidator pCheck) {
+    NonceHasher hasher = new NonceHasher(this);
+    HashValidator target = pCheck.forNonce(this.nonce);
+    while (!target.isValidDigest(hasher.hash(this.nonce))) {
+      this.nonce += 1;
+    } // while
+    computeHash();
+  } // mine(HashValidator)
+
+  /**
+   * Make a copy of this block with another nonce, and its hash.
+   *
+   * @param pNonce The nonce.
+   * @return the new block.
+   */
+  Block withNonce(long pNonce) {
+    Block result = (this.batch == null)
+        ? new Block(this.num, this.transaction, this.prevHash, pNonce, null)
+        : new Block(this.num, this.batch, this.prevHash, pNonce, null);
+    result.merkleRoot = this.merkleRoot;
+    result.computeHash();
+    return result;
+  } // withNonce(long)
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -222,11 +387,58 @@ public class Block {
    * Get the transaction stored in this block.
    *
    * @return the transaction.
+   * @throws IllegalStateException if the block holds a batch.
    */
   public Transaction getTransaction() {
+    if (this.batch != null) {
+      throw new IllegalStateException("Block " + this.num + " holds a batch of "
+          + this.batch.length + " transactions");
+    } // if
     return this.transaction;
   } // getTransaction()
 
+  /**
+   * Get all the transactions stored in this block, in order.
+   *
+   * @return an unmodifiable list of the transactions.
+   */
+  public List<Transaction> getTransactions() {
+    if (this.batch == null) {
+      return List.of(this.transaction);
+    } // if
+    return Collections.unmodifiableList(Arrays.asList(this.batch));
+  } // getTransactions()
+
+  /**
+   * Get the number of transactions stored in this block.
+   *
+   * @return the number of transactions.
+   */
+  public int getTransactionCount() {
+    return (this.batch == null) ? 1 : this.batch.length;
+  } // getTransactionCount()
+
+  /**
+   * Determine if this block holds a batch of transactions.
+   *
+   * @return true for a batch and false for a block with one transaction.
+   */
+  public boolean isBatch() {
+    return this.batch != null;
+  } // isBatch()
+
+  /**
+   * Get the Merkle root of the transactions in a batch.
+   *
+   * @return the root, or null if the block holds one transaction.
+   */
+  public Hash getMerkleRoot() {
+    if (this.batch != null && this.merkleRoot == null) {
+      this.merkleRoot = MerkleTree.root(getTransactions());
+    } // if
+    return this.merkleRoot;
+  } // getMerkleRoot()
+
   /**
    * Get the nonce of this block.
    *
@@ -260,7 +472,11 @@ public class Block {
    * @return a string representation of the block.
    */
   public String toString() {
-    if (getTransaction().getSource().isEmpty()) {
+    if (isBatch()) {
+      return String.format(
+          "Block %s (Batch: %s transactions, Merkle root: %s, Nonce: %s, prevHash: %s, hash: %s)",
+          getNum(), getTransactionCount(), getMerkleRoot(), getNonce(), getPrevHash(), getHash());
+    } else if (getTransaction().getSource().isEmpty()) {
       return String.format(
           "Block %s (Transaction: [Deposit Target %s, Amount: %s], "
               + "Nonce: %s, prevHash: %s, hash: %s)",
@@ -274,26 +490,4 @@ public class Block {
           getTransaction().getAmount(), getNonce(), getPrevHash(), getHash());
     } // if-else
   } // toString()
-
-  /**
-   * Convert an integer into its bytes.
-   *
-   * @param i The integer to convert.
-   * @return The bytes of that integer.
-   */
-  static byte[] intToBytes(int i) {
-    Block.intBuffer.clear();
-    return Block.intBuffer.putInt(i).array();
-  } // intToBytes(int)
-
-  /**
-   * Convert a long into its bytes.
-   *
-   * @param l The long to convert.
-   * @return The bytes in that long.
-   */
-  static byte[] longToBytes(long l) {
-    Block.longBuffer.clear();
-    return Block.longBuffer.putLong(l).array();
-  } // longToBytes()
 } // class Block
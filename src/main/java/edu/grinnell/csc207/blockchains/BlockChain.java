@@ -1,30 +1,119 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 
 /**
  * A full blockchain.
  *
+ * <p>A chain may be read by many threads while one thread at a time appends and removes blocks.
+ * Appends and removals hold the write lock of a StampedLock. Reads of the size and the tail are
+ * plain volatile reads, and other reads run optimistically, without locking, and are repeated
+ * under the read lock only if a write overlapped them. Reads of a chain kept in a log always
+ * take the read lock, since the log's files may shrink under an optimistic reader.</p>
+ *
  * @author Paden Houck
  * @author Grant Sackmann
  */
 public class BlockChain implements Iterable<Transaction> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How many blocks a chain kept in a log appends between automatic checkpoints.
+   */
+  public static final int CHECKPOINT_INTERVAL = 10_000;
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
 
   /**
-   * The head Block of the blockchain.
+   * Where the blocks are kept: a BlockStore in memory, or the log.
+   */
+  BlockStorage storage;
+
+  /**
+   * The same storage as a BlockStore, or null when the chain is kept in a log.
+   */
+  BlockStore store;
+
+  /**
+   * The tail Block of the blockchain.
+   */
+  volatile Block lastBlock;
+
+  /**
+   * The position of each block in the chain, by hash, or null until the first lookup by hash.
+   */
+  volatile HashMap<Hash, Integer> byHash;
+
+  /**
+   * The number of blocks in the chain.
    */
-  Block rootBlock;
+  volatile int size;
+
+  /**
+   * The number of blocks at the start of the chain known to be correct.
+   */
+  volatile int verified;
+
+  /**
+   * The balances after the last block.
+   */
+  Ledger ledger;
 
   /**
    * Validator object to check blockchain.
    */
   HashValidator check;
 
+  /**
+   * The miner used to search for nonces, or null to mine on the calling thread.
+   */
+  volatile ParallelMiner miner;
+
+  /**
+   * Whether the chain created its miner, and so must shut it down. Guarded by the lock.
+   */
+  boolean ownsMiner;
+
+  /**
+   * The durable log that holds the blocks, or null if they are only kept in memory.
+   */
+  BlockLog log;
+
+  /**
+   * What the chain has done and how long it took.
+   */
+  Metrics metrics;
+
+  /**
+   * Held for writing while blocks are appended or removed.
+   */
+  final StampedLock lock = new StampedLock();
+
+  /**
+   * Whether the chain is a snapshot, which cannot be changed.
+   */
+  boolean readOnly;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -36,9 +125,121 @@ public class BlockChain implements Iterable<Transaction> {
    * @param checker The validator used to check elements.
    */
   public BlockChain(HashValidator checker) {
-    this.check = checker;
+    this(checker, null, null);
   } // BlockChain(HashValidator)
 
+  /**
+   * Create a new blockchain using a validator to check elements and a miner to search for nonces
+   * in parallel.
+   *
+   * @param checker The validator used to check elements.
+   * @param pMiner  The miner used by mine(Transaction).
+   */
+  public BlockChain(HashValidator checker, ParallelMiner pMiner) {
+    this(checker, pMiner, null);
+  } // BlockChain(HashValidator, ParallelMiner)
+
+  /**
+   * Create a blockchain whose blocks are kept in a durable log, starting with the blocks already
+   * in the log. Blocks are read back from the log as they are needed. The balances are restored
+   * from the newest usable checkpoint, and only the blocks after it are read and checked when the
+   * chain is opened.
+   *
+   * @param checker The validator used to check elements.
+   * @param pMiner  The miner used by mine(Transaction), or null to mine on the calling thread.
+   * @param pLog    The log, or null to keep the blocks in memory.
+   */
+  public BlockChain(HashValidator checker, ParallelMiner pMiner, BlockLog pLog) {
+    this.check = checker.forChain();
+    this.miner = pMiner;
+    this.log = pLog;
+    this.metrics = new Metrics(this);
+    this.store = (pLog == null) ? new BlockStore() : null;
+    this.storage = (pLog == null) ? this.store : pLog;
+    if (this.store != null) {
+      this.store.lock = this.lock;
+    } // if
+    this.ledger = newLedger();
+    if (pLog == null || pLog.size() == 0) {
+      this.check.resized(0, 0);
+      return;
+    } // if
+    Checkpoint start = pLog.latestCheckpoint();
+    Block prev = null;
+    if (start != null) {
+      this.ledger = start.ledger;
+      this.size = start.size;
+      this.verified = start.verified;
+      prev = pLog.read(start.size - 1);
+    } // if
+    while (this.size < pLog.size()) {
+      Block block = pLog.read(this.size);
+      if (verify(block, this.size, prev, this.ledger) == null && this.verified == this.size) {
+        this.verified++;
+      } // if
+      prev = block;
+      this.size++;
+    } // while
+    this.lastBlock = prev;
+    this.check.resized(this.size, prev.getNonce());
+  } // BlockChain(HashValidator, ParallelMiner, BlockLog)
+
+  /**
+   * Create a read-only snapshot of a chain kept in memory. The caller holds the chain's lock.
+   *
+   * @param source The chain.
+   */
+  BlockChain(BlockChain source) {
+    this.check = source.check.forChain();
+    this.metrics = new Metrics(this);
+    this.store = source.store.snapshot();
+    this.store.lock = this.lock;
+    this.storage = this.store;
+    this.ledger = source.ledger.copyBalances(this.store.users);
+    this.size = source.size;
+    this.verified = source.verified;
+    this.lastBlock = (this.size == 0) ? null : this.store.read(this.size - 1);
+    this.readOnly = true;
+  } // BlockChain(BlockChain)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Read under a lock, optimistically if allowed. An optimistic read that overlaps a write, or
+   * that fails while one is under way, is repeated under the read lock.
+   *
+   * @param <T>        The type of the result.
+   * @param lock       The lock.
+   * @param optimistic Whether the reader may run without the lock.
+   * @param reader     The read, which must not change anything.
+   * @return the result of the read.
+   */
+  static <T> T read(StampedLock lock, boolean optimistic, Supplier<T> reader) {
+    if (optimistic) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0) {
+        try {
+          T result = reader.get();
+          if (lock.validate(stamp)) {
+            return result;
+          } // if
+        } catch (RuntimeException e) {
+          if (lock.validate(stamp)) {
+            throw e;
+          } // if
+        } // try-catch
+      } // if
+    } // if
+    long stamp = lock.readLock();
+    try {
+      return reader.get();
+    } finally {
+      lock.unlockRead(stamp);
+    } // try-finally
+  } // read(StampedLock, boolean, Supplier)
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
@@ -49,14 +250,61 @@ public class BlockChain implements Iterable<Transaction> {
    * @return Block
    */
   public Block getLastBlock() {
-    Block current = this.rootBlock;
+    return this.lastBlock;
+  } // getLastBlock()
 
-    while (current != null && current.getNextBlock() != null) {
-      current = current.getNextBlock();
-    } // while
+  /**
+   * Get the hash a new block at the end of the chain should link to.
+   *
+   * @return the hash of the last block, or an empty hash if the chain is empty.
+   */
+  Hash tailHash() {
+    Block last = getLastBlock();
+    if (last == null) {
+      return new Hash(new byte[]{});
+    } // if
+    return last.getHash();
+  } // tailHash()
+
+  /**
+   * Make sure the chain may be changed.
+   *
+   * @throws UnsupportedOperationException if the chain is a snapshot.
+   */
+  void requireWritable() {
+    if (this.readOnly) {
+      throw new UnsupportedOperationException("A snapshot cannot be changed");
+    } // if
+  } // requireWritable()
+
+  /**
+   * Read the chain, optimistically when its blocks are kept in memory.
+   *
+   * @param <T>    The type of the result.
+   * @param reader The read, which must not change anything.
+   * @return the result of the read.
+   */
+  <T> T read(Supplier<T> reader) {
+    return read(this.lock, this.store != null, reader);
+  } // read(Supplier)
+
+  /**
+   * Read part of the chain for an iterator, which only reads what was in the chain when it was
+   * made.
+   *
+   * @param <T>    The type of the result.
+   * @param reader The read, which must not change anything.
+   * @return the result of the read.
+   * @throws ConcurrentModificationException if what the iterator covers has been removed.
+   */
+  <T> T readCovered(Supplier<T> reader) {
+    try {
+      return read(reader);
+    } catch (IndexOutOfBoundsException e) {
+      throw new ConcurrentModificationException("The chain shrank during iteration");
+    } // try-catch
+  } // readCovered(Supplier)
 
-    return current;
-  } // getLastBlock()
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -68,28 +316,168 @@ public class BlockChain implements Iterable<Transaction> {
    * @return a new block with correct number, hashes, and such.
    */
   public Block mine(Transaction t) {
-    if (getLastBlock() == null) {
-      return new Block(getSize(), t, new Hash(new byte[]{}), check);
-    } // if
-    return new Block(getSize(), t, getLastBlock().getHash(), check);
+    return mineBlock(read(() -> new Block(this.size, t, tailHash(), this.check.startNonce(),
+        null)));
   } // mine(Transaction)
 
+  /**
+   * Mine for a new valid block for the end of the chain that holds a batch of transactions. The
+   * whole batch costs one search for a nonce.
+   *
+   * @param transactions The transactions that go in the block, in order.
+   * @return a new block with correct number, hashes, and such.
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public Block mine(List<Transaction> transactions) {
+    Transaction[] batch = transactions.toArray(new Transaction[0]);
+    return mineBlock(read(() -> new Block(this.size, batch, tailHash(), this.check.startNonce(),
+        null)));
+  } // mine(List<Transaction>)
+
+  /**
+   * Start mining a new block for the end of the chain without waiting for it. Cancelling the
+   * returned future stops the search.
+   *
+   * @param t The transaction that goes in the block.
+   * @return a future for the new block.
+   */
+  public CompletableFuture<Block> mineAsync(Transaction t) {
+    return mineAsync(t, ParallelMiner.UNLIMITED, null, null);
+  } // mineAsync(Transaction)
+
+  /**
+   * Start mining a new block for the end of the chain with limits on how long to search. If a
+   * limit runs out first, the future completes exceptionally with a TimeoutException (for the
+   * timeout) or a NoSuchElementException (for the attempts).
+   * A chain without a miner creates one the first time, which shutdown() stops.
+   *
+   * @param t           The transaction that goes in the block.
+   * @param maxAttempts The most nonces to try, or ParallelMiner.UNLIMITED.
+   * @param timeout     How long to search before giving up, or null to search indefinitely.
+   * @param progress    Receives periodic progress reports, or null.
+   * @return a future for the new block.
+   */
+  public CompletableFuture<Block> mineAsync(Transaction t, long maxAttempts, Duration timeout,
+      Consumer<MiningProgress> progress) {
+    ParallelMiner pool = asyncMiner();
+    return track(pool, read(() -> new Block(this.size, t, tailHash(), this.check.startNonce(),
+        null)), maxAttempts, timeout, progress);
+  } // mineAsync(Transaction, long, Duration, Consumer)
+
+  /**
+   * Start mining a block with the same contents as another, without waiting for it.
+   *
+   * @param template The block to mine; the search starts at its nonce.
+   * @return a future for the mined block.
+   */
+  CompletableFuture<Block> mineAsync(Block template) {
+    return track(asyncMiner(), template, ParallelMiner.UNLIMITED, null, null);
+  } // mineAsync(Block)
+
+  /**
+   * Get the miner for searches in the background, creating one the first time if the chain was
+   * not given one. The chain owns a miner it creates; shutdown() stops it.
+   *
+   * @return the miner.
+   */
+  ParallelMiner asyncMiner() {
+    ParallelMiner current = this.miner;
+    if (current != null) {
+      return current;
+    } // if
+    long stamp = this.lock.writeLock();
+    try {
+      if (this.miner == null) {
+        this.miner = new ParallelMiner();
+        this.ownsMiner = true;
+      } // if
+      return this.miner;
+    } finally {
+      this.lock.unlockWrite(stamp);
+    } // try-finally
+  } // asyncMiner()
+
+  /**
+   * Stop the worker threads of a miner that the chain created for mineAsync. A miner given to
+   * the chain belongs to the caller and is left running. Mining in the background afterwards
+   * creates a new miner.
+   */
+  public void shutdown() {
+    long stamp = this.lock.writeLock();
+    try {
+      if (this.ownsMiner) {
+        this.miner.close();
+        this.miner = null;
+        this.ownsMiner = false;
+      } // if
+    } finally {
+      this.lock.unlockWrite(stamp);
+    } // try-finally
+  } // shutdown()
+
+  /**
+   * Mine a block with the same contents as another on the chain's miner, or on the calling
+   * thread if there is none, and record the search in the metrics.
+   *
+   * @param template The block to mine; the search starts at its nonce.
+   * @return the mined block.
+   */
+  Block mineBlock(Block template) {
+    long start = System.nanoTime();
+    long first = template.getNonce();
+    Block result;
+    ParallelMiner pool = this.miner;
+    if (pool != null) {
+      long[] attempts = new long[1];
+      result = pool.mine(template, check, (p) -> attempts[0] = p.getAttempts());
+      this.metrics.mined(attempts[0], System.nanoTime() - start);
+    } else {
+      template.mine(check);
+      result = template;
+      this.metrics.mined(result.getNonce() - first + 1, System.nanoTime() - start);
+    } // if-else
+    return result;
+  } // mineBlock(Block)
+
+  /**
+   * Start mining a block on a miner, recording the search in the metrics before the returned
+   * future completes. Cancelling the returned future stops the search.
+   *
+   * @param pool        The miner.
+   * @param template    The block to mine; the search starts at its nonce.
+   * @param maxAttempts The most nonces to try, or ParallelMiner.UNLIMITED.
+   * @param timeout     How long to search before giving up, or null to search indefinitely.
+   * @param progress    Receives periodic progress reports, or null.
+   * @return a future for the mined block.
+   */
+  CompletableFuture<Block> track(ParallelMiner pool, Block template, long maxAttempts,
+      Duration timeout, Consumer<MiningProgress> progress) {
+    long start = System.nanoTime();
+    AtomicLong attempts = new AtomicLong();
+    CompletableFuture<Block> result = pool.mineAsync(template, check, maxAttempts, timeout,
+        (p) -> {
+          attempts.set(p.getAttempts());
+          if (progress != null) {
+            progress.accept(p);
+          } // if
+        });
+    CompletableFuture<Block> tracked = result.whenComplete((block, failure) -> this.metrics.mined(
+        attempts.get(), (block == null) ? -1 : System.nanoTime() - start));
+    tracked.whenComplete((block, failure) -> {
+      if (tracked.isCancelled()) {
+        result.cancel(true);
+      } // if
+    });
+    return tracked;
+  } // track(ParallelMiner, Block, long, Duration, Consumer)
+
   /**
    * Get the number of blocks curently in the chain.
    *
    * @return the number of blocks in the chain, including the initial block.
    */
   public int getSize() {
-    if (this.rootBlock == null) {
-      return 0;
-    } // if
-    Block current = this.rootBlock;
-    int count = 1;
-    while (current.getNextBlock() != null) {
-      current = current.getNextBlock();
-      count++;
-    } // while
-    return count;
+    return this.size;
   } // getSize()
 
   /**
@@ -98,35 +486,290 @@ public class BlockChain implements Iterable<Transaction> {
    * @param blk The block to add to the end of the chain.
    * @throws IllegalArgumentException if (a) the hash is not valid, (b) the hash is not appropriate
    *                                  for the contents, or (c) the previous hash is incorrect.
+   * @throws UnsupportedOperationException if the chain is a snapshot.
    */
   public void append(Block blk) {
-    if (getLastBlock() != null && !blk.getPrevHash().equals(getLastBlock().getHash())) {
-      throw new IllegalArgumentException();
-    } // if
+    requireWritable();
+    long start = System.nanoTime();
+    boolean matches = blk.getHash().equals(blk.calculateHash());
+    long stamp = this.lock.writeLock();
+    try {
+      Block last = this.lastBlock;
+      if (!matches || (last != null && !blk.getPrevHash().equals(last.getHash()))) {
+        this.metrics.rejected.increment();
+        throw new IllegalArgumentException();
+      } // if
+      link(blk);
+    } finally {
+      this.lock.unlockWrite(stamp);
+    } // try-finally
+    this.metrics.appending.record(System.nanoTime() - start);
+  } // append()
+
+  /**
+   * Add a block to the end of the chain only if the chain still ends with the block it links to.
+   * The check and the append happen under one lock, so a block mined for the end of the chain
+   * goes in only if nothing was added or removed in the meantime.
+   *
+   * @param blk The block to add to the end of the chain.
+   * @return false if the chain no longer ends with the block before blk (in which case blk is not
+   * added) or true otherwise (in which case it is).
+   * @throws IllegalArgumentException if the hash is not appropriate for the contents, or the
+   *                                  transactions leave a balance negative. The chain is then
+   *                                  unchanged.
+   * @throws UnsupportedOperationException if the chain is a snapshot.
+   */
+  public boolean tryAppend(Block blk) {
+    requireWritable();
+    long start = System.nanoTime();
     if (!blk.getHash().equals(blk.calculateHash())) {
-      throw new IllegalArgumentException();
+      this.metrics.rejected.increment();
+      throw new IllegalArgumentException("The hash does not match the contents");
     } // if
-    if (getLastBlock() == null) {
-      rootBlock = blk;
-    } else {
-      getLastBlock().setNextBlock(blk);
+    long stamp = this.lock.writeLock();
+    try {
+      if (!blk.getPrevHash().equals(tailHash())) {
+        return false;
+      } // if
+      String reason = link(blk);
+      if (reason != null) {
+        dropLast();
+        this.metrics.rejected.increment();
+        throw new IllegalArgumentException("Block " + blk.getNum() + ": " + reason);
+      } // if
+    } finally {
+      this.lock.unlockWrite(stamp);
+    } // try-finally
+    this.metrics.appending.record(System.nanoTime() - start);
+    return true;
+  } // tryAppend(Block)
+
+  /**
+   * Add several blocks to the end of the chain, all or none. The links between the blocks are
+   * checked in one pass and their hashes are recomputed in parallel before any block is added.
+   *
+   * @param blocks The blocks to add, in order.
+   * @throws IllegalArgumentException if any block's previous hash is not the hash of the block
+   *                                  before it, or any block's hash is not appropriate for its
+   *                                  contents. The chain is then unchanged.
+   * @throws UnsupportedOperationException if the chain is a snapshot.
+   */
+  public void appendAll(List<Block> blocks) {
+    requireWritable();
+    for (int i = 1; i < blocks.size(); i++) {
+      if (!blocks.get(i - 1).getHash().equals(blocks.get(i).getPrevHash())) {
+        this.metrics.rejected.add(blocks.size());
+        throw new IllegalArgumentException("Block " + i + " does not link to the block before it");
+      } // if
+    } // for
+    int bad = IntStream.range(0, blocks.size()).parallel()
+        .filter((i) -> !blocks.get(i).getHash().equals(blocks.get(i).calculateHash()))
+        .min().orElse(-1);
+    if (bad >= 0) {
+      this.metrics.rejected.add(blocks.size());
+      throw new IllegalArgumentException("Block " + bad + " has a hash that does not match");
     } // if
-  } // append()
+    if (blocks.isEmpty()) {
+      return;
+    } // if
+    long stamp = this.lock.writeLock();
+    try {
+      Block last = this.lastBlock;
+      if (last != null && !last.getHash().equals(blocks.get(0).getPrevHash())) {
+        this.metrics.rejected.add(blocks.size());
+        throw new IllegalArgumentException("Block 0 does not link to the block before it");
+      } // if
+      int before = this.size;
+      try {
+        for (Block blk : blocks) {
+          link(blk);
+        } // for
+      } catch (RuntimeException e) {
+        while (this.size > before) {
+          dropLast();
+        } // while
+        this.metrics.rejected.add(blocks.size());
+        throw e;
+      } // try-catch
+    } finally {
+      this.lock.unlockWrite(stamp);
+    } // try-finally
+  } // appendAll(List<Block>)
+
+  /**
+   * Add a block that is already known to link to the end of the chain and to have a hash that
+   * matches its contents. The caller holds the write lock.
+   *
+   * @param blk The block.
+   * @return why the block is bad, or null if it is correct.
+   */
+  String link(Block blk) {
+    this.storage.append(blk);
+    if (this.byHash != null) {
+      this.byHash.put(blk.getHash(), this.size);
+    } // if
+    String reason = settle(blk, this.size, this.lastBlock, this.ledger);
+    if (reason == null && this.verified == this.size) {
+      this.verified++;
+    } // if
+    this.lastBlock = blk;
+    this.size++;
+    this.check.resized(this.size, blk.getNonce());
+    this.metrics.appended.increment();
+    if (this.log != null && this.size % CHECKPOINT_INTERVAL == 0) {
+      saveCheckpoint();
+    } // if
+    return reason;
+  } // link(Block)
 
   /**
    * Attempt to remove the last block from the chain.
    *
    * @return false if the chain has only one block (in which case it's not removed) or true
    * otherwise (in which case the last block is removed).
+   * @throws UnsupportedOperationException if the chain is a snapshot.
    */
   public boolean removeLast() {
-    if (this.rootBlock == this.getLastBlock()) {
-      return false;
-    } // if
-    this.getLastBlock().getPreviousBlock().setNextBlock(null);
-    return true;
+    requireWritable();
+    long stamp = this.lock.writeLock();
+    try {
+      if (this.size <= 1) {
+        return false;
+      } // if
+      dropLast();
+      return true;
+    } finally {
+      this.lock.unlockWrite(stamp);
+    } // try-finally
   } // removeLast()
 
+  /**
+   * Remove the last block from the chain, even if it is the only one. The caller holds the write
+   * lock.
+   */
+  void dropLast() {
+    Block removed = this.lastBlock;
+    if (this.store != null) {
+      int first = this.store.firstTransaction(this.size - 1);
+      for (int tx = this.store.endTransaction(this.size - 1) - 1; tx >= first; tx--) {
+        this.ledger.revert(this.store.sourceId(tx), this.store.targetId(tx),
+            this.store.amount(tx));
+      } // for
+    } else {
+      List<Transaction> transactions = removed.getTransactions();
+      for (int tx = transactions.size() - 1; tx >= 0; tx--) {
+        this.ledger.revert(transactions.get(tx));
+      } // for
+    } // if-else
+    this.storage.removeLast();
+    if (this.byHash != null) {
+      this.byHash.remove(removed.getHash());
+    } // if
+    this.size--;
+    this.lastBlock = (this.size == 0) ? null : this.storage.read(this.size - 1);
+    this.verified = Math.min(this.verified, this.size);
+    this.check.resized(this.size, (this.size == 0) ? 0 : this.lastBlock.getNonce());
+  } // dropLast()
+
+  /**
+   * Get a block by its number.
+   *
+   * @param num The number of the block, between 0 (inclusive) and getSize() (exclusive).
+   * @return the block.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public Block getBlock(int num) {
+    return read(() -> blockAt(num));
+  } // getBlock(int)
+
+  /**
+   * Get a block by its number without locking.
+   *
+   * @param num The number of the block.
+   * @return the block.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  Block blockAt(int num) {
+    int n = this.size;
+    if (num < 0 || num >= n) {
+      throw new IndexOutOfBoundsException("No block " + num + " in a chain of " + n);
+    } // if
+    return (num == n - 1) ? this.lastBlock : this.storage.read(num);
+  } // blockAt(int)
+
+  /**
+   * Find the block with a given hash. The first lookup indexes every block, reading just their
+   * hashes; the index is kept up to date after that.
+   *
+   * @param hash The hash.
+   * @return the block, or null if no block in the chain has that hash.
+   */
+  public Block findByHash(Hash hash) {
+    if (this.byHash == null) {
+      long stamp = this.lock.writeLock();
+      try {
+        positionOf(hash);
+      } finally {
+        this.lock.unlockWrite(stamp);
+      } // try-finally
+    } // if
+    return read(() -> {
+      Integer num = this.byHash.get(hash);
+      return (num == null) ? null : blockAt(num);
+    });
+  } // findByHash(Hash)
+
+  /**
+   * Take a read-only snapshot of the chain as it is now. The snapshot shares the chain's stored
+   * blocks rather than copying them, so taking one costs about as much as copying the balances,
+   * and it can be read, iterated, and validated at leisure while this chain goes on growing and
+   * shrinking. Appending to or removing from the snapshot throws an
+   * UnsupportedOperationException.
+   *
+   * @return the snapshot.
+   * @throws IllegalStateException if the chain is kept in a log.
+   */
+  public BlockChain snapshot() {
+    if (this.store == null) {
+      throw new IllegalStateException("Only chains kept in memory can be snapshotted");
+    } // if
+    long stamp = this.lock.readLock();
+    try {
+      return new BlockChain(this);
+    } finally {
+      this.lock.unlockRead(stamp);
+    } // try-finally
+  } // snapshot()
+
+  /**
+   * Get the chain's metrics, which are kept up to date as it mines, grows, and is validated.
+   *
+   * @return the metrics.
+   */
+  public Metrics getMetrics() {
+    return this.metrics;
+  } // getMetrics()
+
+  /**
+   * Find the position of the block with a given hash, indexing every block by hash the first
+   * time. The caller holds the write lock.
+   *
+   * @param hash The hash.
+   * @return the position of the block, or -1 if no block in the chain has that hash.
+   */
+  int positionOf(Hash hash) {
+    if (this.byHash == null) {
+      HashMap<Hash, Integer> index = new HashMap<Hash, Integer>(Math.max(16,
+          this.size * 4 / 3 + 1));
+      for (int i = 0; i < this.size; i++) {
+        index.put(this.storage.readHash(i), i);
+      } // for
+      this.byHash = index;
+    } // if
+    Integer num = this.byHash.get(hash);
+    return (num == null) ? -1 : num;
+  } // positionOf(Hash)
+
   /**
    * Get the hash of the last block in the chain.
    *
@@ -136,6 +779,54 @@ public class BlockChain implements Iterable<Transaction> {
     return getLastBlock().getHash();
   } // getHash()
 
+  /**
+   * Get the number of blocks at the start of the chain that are known to be correct, as
+   * validate() would find them. Blocks appended after a bad block are not counted, even if they
+   * are correct themselves.
+   *
+   * @return the number of verified blocks.
+   */
+  public int getVerifiedSize() {
+    return this.verified;
+  } // getVerifiedSize()
+
+  /**
+   * Save the balances and the position of the end of the chain next to the chain's log, so that
+   * reopening the chain only needs to read and check the blocks appended after this point. This
+   * happens automatically every CHECKPOINT_INTERVAL blocks.
+   *
+   * @throws IllegalStateException if the chain is not kept in a log.
+   * @throws UncheckedIOException if the checkpoint cannot be written.
+   */
+  public void checkpoint() {
+    if (this.log == null) {
+      throw new IllegalStateException("Only chains kept in a log can be checkpointed");
+    } // if
+    long stamp = this.lock.readLock();
+    try {
+      saveCheckpoint();
+    } finally {
+      this.lock.unlockRead(stamp);
+    } // try-finally
+  } // checkpoint()
+
+  /**
+   * Write a checkpoint of the chain to its log. The caller holds the lock.
+   *
+   * @throws UncheckedIOException if the checkpoint cannot be written.
+   */
+  void saveCheckpoint() {
+    if (this.size == 0) {
+      return;
+    } // if
+    try {
+      this.log.writeCheckpoint(
+          new Checkpoint(this.size, this.verified, getHash(), this.ledger.copy()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try-catch
+  } // saveCheckpoint()
+
   /**
    * Determine if the blockchain is correct in that (a) the balances are legal/correct at every
    * step, (b) that every block has a correct previous hash field, (c) that every block has a hash
@@ -144,26 +835,122 @@ public class BlockChain implements Iterable<Transaction> {
    * @return true if the blockchain is correct and false otherwise.
    */
   public boolean isCorrect() {
-    Iterator<Block> blockIterator = this.blocks();
-    HashMap<String, Integer> runningBalances = this.calculateBalances();
-    while (blockIterator.hasNext()) {
-      Block block = blockIterator.next();
-      if (block.getPreviousBlock() != null
-          && block.getPrevHash() != block.getPreviousBlock().getHash()) {
-        return false;
-      } // if
-      if (block.getPreviousBlock() != null
-          && block.getHash() != block.calculateHash()) {
-        return false;
-      } // if
-      if (runningBalances.get(block.getTransaction().getTarget()) < 0
-          || runningBalances.get(block.getTransaction().getSource()) < 0) {
-        return false;
-      } // if
-    } // while
-    return true;
+    return validate().isValid();
   } // isCorrect()
 
+  /**
+   * Check the whole chain in one pass, stopping at the first bad block. For each block, in
+   * order, this recomputes the hash, checks it against the stored hash and the validator, checks
+   * the link to the previous block, and applies the transaction to a running ledger to make sure
+   * no balance goes negative. Appends and removals wait until the check is done.
+   *
+   * @return a report naming the first bad block and why it failed, if there is one.
+   */
+  public ValidationReport validate() {
+    long start = System.nanoTime();
+    long stamp = this.lock.readLock();
+    try {
+      Ledger running = newLedger();
+      Block prev = null;
+      for (int i = 0; i < this.size; i++) {
+        Block block = this.storage.read(i);
+        String reason = verify(block, i, prev, running);
+        if (reason != null) {
+          return ValidationReport.failure(i, reason);
+        } // if
+        prev = block;
+      } // for
+      return ValidationReport.valid(this.size);
+    } finally {
+      this.lock.unlockRead(stamp);
+      this.metrics.validating.record(System.nanoTime() - start);
+    } // try-finally
+  } // validate()
+
+  /**
+   * Check one block against the block before it and apply its transaction to a running ledger.
+   * The transaction is applied even if the block is bad.
+   *
+   * @param block   The block.
+   * @param i       The position of the block in the chain.
+   * @param prev    The block before, or null for the first block.
+   * @param running The balances before the block.
+   * @return why the block is bad, or null if it is correct.
+   */
+  String verify(Block block, int i, Block prev, Ledger running) {
+    if (prev != null && !prev.getHash().equals(block.getPrevHash())) {
+      applyAll(block, i, running);
+      return "previous hash does not match the block before";
+    } // if
+    if (!block.calculateHash().equals(block.getHash())) {
+      applyAll(block, i, running);
+      return "hash does not match the contents";
+    } // if
+    return settle(block, i, prev, running);
+  } // verify(Block, int, Block, Ledger)
+
+  /**
+   * Apply a block's transactions to a running ledger, checking the block's hash against the
+   * validator and the balances after each transaction. The hash must already be known to match
+   * the contents.
+   *
+   * @param block   The block.
+   * @param i       The position of the block in the chain.
+   * @param prev    The block before, or null for the first block.
+   * @param running The balances before the block.
+   * @return why the block is bad, or null if it is correct.
+   */
+  String settle(Block block, int i, Block prev, Ledger running) {
+    String reason = applyAll(block, i, running);
+    if (!this.check.isValidBlock(block, i, (prev == null) ? 0 : prev.getNonce())) {
+      return "hash is not valid";
+    } // if
+    return reason;
+  } // settle(Block, int, Block, Ledger)
+
+  /**
+   * Apply all of a block's transactions to a running ledger, in order, noting the first that
+   * leaves a balance negative. When the ledger shares the store's dictionary, the stored user ids
+   * are applied directly.
+   *
+   * @param block   The block.
+   * @param i       The position of the block in the chain.
+   * @param running The balances before the block.
+   * @return why the first bad transaction is bad, or null if there is none.
+   */
+  String applyAll(Block block, int i, Ledger running) {
+    boolean stored = this.store != null && running.users == this.store.users;
+    int first = stored ? this.store.firstTransaction(i) : 0;
+    String reason = null;
+    List<Transaction> transactions = block.getTransactions();
+    for (int tx = 0; tx < transactions.size(); tx++) {
+      Transaction t = transactions.get(tx);
+      int source = stored ? this.store.sourceId(first + tx) : running.users.id(t.getSource());
+      int target = stored ? this.store.targetId(first + tx) : running.users.id(t.getTarget());
+      running.apply(source, target, t.getAmount());
+      if (reason != null) {
+        continue;
+      } else if (running.balanceOf(target) < 0) {
+        reason = t.getTarget() + " has a negative balance";
+      } else if (source != UserDictionary.NOBODY && running.balanceOf(source) < 0) {
+        reason = t.getSource() + " has a negative balance";
+      } // if-else
+    } // for
+    return reason;
+  } // applyAll(Block, int, Ledger)
+
+  /**
+   * Make a ledger with no balances, sharing the store's dictionary when there is a store.
+   *
+   * @return the ledger.
+   */
+  Ledger newLedger() {
+    if (this.store != null) {
+      return new Ledger(this.store.users());
+    } // if
+    return new Ledger();
+  } // newLedger()
+
   /**
    * Determine if the blockchain is correct in that (a) the balances are legal/correct at every
    * step, (b) that every block has a correct previous hash field, (c) that every block has a hash
@@ -172,8 +959,9 @@ public class BlockChain implements Iterable<Transaction> {
    * @throws Exception If things are wrong at any block.
    */
   public void check() throws Exception {
-    if (!isCorrect()) {
-      throw new Exception();
+    ValidationReport report = validate();
+    if (!report.isValid()) {
+      throw new Exception(report.toString());
     } // if
   } // check()
 
@@ -183,20 +971,11 @@ public class BlockChain implements Iterable<Transaction> {
    * @return an iterator of all the people in the system.
    */
   public Iterator<String> users() {
-    return new Iterator<String>() {
-      int i = 0;
-      Object[] userList = calculateBalances().keySet().toArray();
-
-      public boolean hasNext() {
-        return i < userList.length;
-      } // hasNext()
-
-      public String next() {
-        String temp = (String) userList[i];
-        i++;
-        return temp;
-      } // next()
-    };
+    return read(this.lock, true, () -> {
+      ArrayList<String> users = new ArrayList<String>(this.ledger.userCount());
+      this.ledger.users().forEachRemaining(users::add);
+      return users;
+    }).iterator();
   } // users()
 
   /**
@@ -206,76 +985,124 @@ public class BlockChain implements Iterable<Transaction> {
    * @return that user's balance (or 0, if the user is not in the system).
    */
   public int balance(String user) {
-    if (calculateBalances().containsKey(user)) {
-      return calculateBalances().get(user);
-    } // if
-    return 0;
+    this.metrics.balanceLookups.increment();
+    long stamp = this.lock.tryOptimisticRead();
+    try {
+      int result = this.ledger.balance(user);
+      if (this.lock.validate(stamp)) {
+        return result;
+      } // if
+    } catch (RuntimeException e) {
+      // A write overlapped the lookup; look again under the lock.
+    } // try-catch
+    return read(this.lock, false, () -> this.ledger.balance(user));
   } // balance()
 
   /**
-   * Calculates the final balances users in the blockchain.
+   * Calculates the final balances users in the blockchain by replaying every block. The chain
+   * keeps these balances up to date as blocks come and go, so this is only needed to double-check
+   * them.
    *
    * @return HashMap of String usernames to balances
    */
   public HashMap<String, Integer> calculateBalances() {
-    HashMap<String, Integer> runningBalances = new HashMap<String, Integer>();
-    Iterator<Block> blockIterator = this.blocks();
-    while (blockIterator.hasNext()) {
-      Block block = blockIterator.next();
-      if (block.getTransaction().getSource().isEmpty()) {
-        runningBalances.put(block.getTransaction().getTarget(),
-            runningBalances.get(block.getTransaction().getTarget())
-                + block.getTransaction().getAmount());
-      } else {
-        runningBalances.put(block.getTransaction().getTarget(),
-            runningBalances.get(block.getTransaction().getTarget())
-                + block.getTransaction().getAmount());
-        runningBalances.put(block.getTransaction().getSource(),
-            runningBalances.get(block.getTransaction().getSource())
-                - block.getTransaction().getAmount());
-      } // if else
-    } // while
-    return runningBalances;
+    return read(this.lock, false, this::replay);
   } // calculateBalances
 
   /**
-   * Get an interator for all the blocks in the chain.
+   * Replay every block into a new ledger. The caller holds the read lock.
+   *
+   * @return the balances, by user name.
+   */
+  HashMap<String, Integer> replay() {
+    Ledger replay = newLedger();
+    if (this.store != null) {
+      for (int tx = 0; tx < this.store.transactionCount(); tx++) {
+        replay.apply(this.store.sourceId(tx), this.store.targetId(tx), this.store.amount(tx));
+      } // for
+    } else {
+      for (int i = 0; i < this.size; i++) {
+        this.storage.readTransactions(i).forEach(replay::apply);
+      } // for
+    } // if-else
+    return replay.toMap();
+  } // replay()
+
+  /**
+   * Get an interator for all the blocks in the chain. It covers the blocks in the chain when it
+   * is made, and blocks appended later are left out.
    *
    * @return an iterator for all the blocks in the chain.
+   * @throws ConcurrentModificationException from next() if a block it covers has been removed.
    */
   public Iterator<Block> blocks() {
     return new Iterator<Block>() {
-      Block currentBlock = rootBlock;
+      int i = 0;
+      int end = size;
 
       public boolean hasNext() {
-        return currentBlock != null;
+        return i < end;
       } // hasNext()
 
       public Block next() {
-        Block temp = currentBlock;
-        currentBlock = currentBlock.getNextBlock();
-        return temp;
+        if (i >= end) {
+          throw new NoSuchElementException();
+        } // if
+        int at = i++;
+        return readCovered(() -> storage.read(at));
       } // next()
     };
   } // blocks()
 
   /**
-   * Get an interator for all the transactions in the chain.
+   * Get an interator for all the transactions in the chain, including each transaction of every
+   * batch. Like blocks(), it covers the blocks in the chain when it is made.
    *
-   * @return an iterator for all the blocks in the chain.
+   * @return an iterator for all the transactions in the chain.
+   * @throws ConcurrentModificationException from next() if a block it covers has been removed.
    */
   public Iterator<Transaction> iterator() {
+    if (this.store != null) {
+      return new Iterator<Transaction>() {
+        int tx = 0;
+        int end = read(store::transactionCount);
+
+        public boolean hasNext() {
+          return tx < end;
+        } // hasNext()
+
+        public Transaction next() {
+          if (tx >= end) {
+            throw new NoSuchElementException();
+          } // if
+          int at = tx++;
+          return readCovered(() -> {
+            if (at >= store.transactionCount()) {
+              throw new IndexOutOfBoundsException("No transaction " + at);
+            } // if
+            return store.transaction(at);
+          });
+        } // next()
+      };
+    } // if
     return new Iterator<Transaction>() {
-      Block currentBlock = rootBlock;
+      int i = 0;
+      int end = size;
+      Iterator<Transaction> current = Collections.emptyIterator();
 
       public boolean hasNext() {
-        return currentBlock.getNextBlock() != null;
+        while (!current.hasNext() && i < end) {
+          int at = i++;
+          current = readCovered(() -> storage.readTransactions(at)).iterator();
+        } // while
+        return current.hasNext();
       } // hasNext()
 
       public Transaction next() {
-        Block temp = currentBlock;
-        currentBlock = currentBlock.getNextBlock();
-        return temp.getTransaction();
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        return current.next();
       } // next()
     };
   } // iterator()
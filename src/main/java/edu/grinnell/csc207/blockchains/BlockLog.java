@@ -0,0 +1,727 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A durable, append-only record of the blocks in a chain. Blocks are written one after another
+ * into segment files of bounded size, and an index file holds the location of each block, so the
+ * number of blocks is known as soon as the log is opened. Blocks are read back through
+ * memory-mapped segments only when they are asked for. The last segment's file grows ahead of
+ * its records, doubling each time, so that appending remaps it only a few times as it fills and
+ * reading never remaps. Appending and removing must not overlap with reading.
+ *
+ * <p>Each record holds, in order and big-endian: its own length in bytes, the block number, the
+ * amount, the nonce, and then the source, target, previous hash, and hash, each as a length
+ * followed by that many bytes. Names are stored as UTF-8. The record of a batch has the high bit
+ * of its length set and the number of transactions in place of the amount; the previous hash
+ * and hash follow the nonce, and then each transaction as its source, target, and amount.</p>
+ *
+ * <p>The directory may also hold checkpoints of the chain, named by the number of blocks they
+ * cover. Only the newest few are kept.</p>
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class BlockLog implements BlockStorage, AutoCloseable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default largest size of a segment, in bytes.
+   */
+  public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+
+  /**
+   * The name of the index file.
+   */
+  static final String INDEX_FILE = "blocks.idx";
+
+  /**
+   * The pattern for segment file names.
+   */
+  static final String SEGMENT_FILE = "segment-%06d.log";
+
+  /**
+   * The pattern for checkpoint file names.
+   */
+  static final String CHECKPOINT_FILE = "checkpoint-%010d.ckpt";
+
+  /**
+   * The number of checkpoints kept.
+   */
+  static final int KEEP_CHECKPOINTS = 2;
+
+  /**
+   * The bytes in a record before the variable-length fields.
+   */
+  static final int FIXED_BYTES = 3 * Integer.BYTES + Long.BYTES;
+
+  /**
+   * The bit set in the length of the record of a batch.
+   */
+  static final int BATCH_FLAG = Integer.MIN_VALUE;
+
+  /**
+   * Offset of the block number within a record.
+   */
+  static final int NUM_AT = Integer.BYTES;
+
+  /**
+   * Offset of the amount, or the number of transactions of a batch, within a record.
+   */
+  static final int AMOUNT_AT = 2 * Integer.BYTES;
+
+  /**
+   * Offset of the nonce within a record.
+   */
+  static final int NONCE_AT = 3 * Integer.BYTES;
+
+  /**
+   * The least number of bytes the last segment's file grows to.
+   */
+  static final int MIN_MAPPING = 1 << 12;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The directory holding the log.
+   */
+  Path dir;
+
+  /**
+   * The largest size of a segment that holds more than one block.
+   */
+  int segmentBytes;
+
+  /**
+   * The index file.
+   */
+  FileChannel index;
+
+  /**
+   * The segment files, in order.
+   */
+  ArrayList<FileChannel> segments;
+
+  /**
+   * A mapping of each segment that covers every record in it. Mappings are only replaced while
+   * appending or removing.
+   */
+  volatile AtomicReferenceArray<MappedByteBuffer> maps;
+
+  /**
+   * The number of bytes of records in the last segment, which may be fewer than in its file.
+   */
+  long tail;
+
+  /**
+   * The location of each block: its segment in the high half and its offset in the low half.
+   */
+  long[] entries;
+
+  /**
+   * The number of blocks in the log.
+   */
+  int count;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open the log in a directory, creating it if necessary.
+   *
+   * @param pDir The directory.
+   * @throws IOException if the log cannot be read.
+   */
+  public BlockLog(Path pDir) throws IOException {
+    this(pDir, DEFAULT_SEGMENT_BYTES);
+  } // BlockLog(Path)
+
+  /**
+   * Open the log in a directory, creating it if necessary. Anything written after the last
+   * complete index entry, as by a crash in the middle of an append, is discarded.
+   *
+   * @param pDir          The directory.
+   * @param pSegmentBytes The largest size of a segment.
+   * @throws IOException if the log cannot be read.
+   */
+  public BlockLog(Path pDir, int pSegmentBytes) throws IOException {
+    this.dir = pDir;
+    this.segmentBytes = pSegmentBytes;
+    Files.createDirectories(pDir);
+    this.index = FileChannel.open(pDir.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.count = (int) (this.index.size() / Long.BYTES);
+    this.index.truncate((long) this.count * Long.BYTES);
+    ByteBuffer entryBytes = ByteBuffer.allocate(this.count * Long.BYTES);
+    while (entryBytes.hasRemaining() && this.index.read(entryBytes, entryBytes.position()) > 0) {
+      continue;
+    } // while
+    this.entries = new long[Math.max(16, this.count)];
+    entryBytes.flip().asLongBuffer().get(this.entries, 0, this.count);
+
+    this.segments = new ArrayList<FileChannel>();
+    int lastSegment = (this.count == 0) ? 0 : segmentOf(this.entries[this.count - 1]);
+    this.maps = new AtomicReferenceArray<MappedByteBuffer>(lastSegment + 1);
+    for (int seg = 0; seg <= lastSegment; seg++) {
+      openSegment(seg);
+    } // for
+    long end = 0;
+    if (this.count > 0) {
+      long last = this.entries[this.count - 1];
+      ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+      this.segments.get(lastSegment).read(length, offsetOf(last));
+      end = offsetOf(last) + (length.getInt(0) & ~BATCH_FLAG);
+    } // if
+    this.segments.get(lastSegment).truncate(end);
+    for (int seg = 0; seg < lastSegment; seg++) {
+      FileChannel segment = this.segments.get(seg);
+      this.maps.set(seg, segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size()));
+    } // for
+    this.tail = end;
+    reserve(lastSegment, end);
+    Path extra = segmentPath(lastSegment + 1);
+    for (int seg = lastSegment + 2; Files.deleteIfExists(extra); seg++) {
+      extra = segmentPath(seg);
+    } // for
+  } // BlockLog(Path, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of blocks in the log.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.count;
+  } // size()
+
+  /**
+   * Add a block to the end of the log.
+   *
+   * @param blk The block.
+   * @throws UncheckedIOException if the block cannot be written.
+   */
+  public void append(Block blk) {
+    ByteBuffer record = encode(blk);
+    int length = record.remaining();
+
+    try {
+      int seg = this.segments.size() - 1;
+      long offset = this.tail;
+      if (offset > 0 && offset + length > this.segmentBytes) {
+        FileChannel full = this.segments.get(seg);
+        full.truncate(offset);
+        this.maps.set(seg, full.map(FileChannel.MapMode.READ_ONLY, 0, offset));
+        seg++;
+        openSegment(seg);
+        offset = 0;
+      } // if
+      reserve(seg, offset + length);
+      writeFully(this.segments.get(seg), record, offset);
+      this.tail = offset + length;
+      long entry = ((long) seg << Integer.SIZE) | offset;
+      writeFully(this.index, ByteBuffer.allocate(Long.BYTES).putLong(0, entry),
+          (long) this.count * Long.BYTES);
+      if (this.count == this.entries.length) {
+        this.entries = Arrays.copyOf(this.entries, this.count * 2);
+      } // if
+      this.entries[this.count++] = entry;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try-catch
+  } // append(Block)
+
+  /**
+   * Remove the last block from the log. Its bytes are left in the last segment, past the
+   * records, until another block is appended over them.
+   *
+   * @return false if the log is empty and true otherwise.
+   * @throws UncheckedIOException if the files cannot be truncated.
+   */
+  public boolean removeLast() {
+    if (this.count == 0) {
+      return false;
+    } // if
+    long entry = this.entries[--this.count];
+    int seg = segmentOf(entry);
+    try {
+      this.index.truncate((long) this.count * Long.BYTES);
+      if (seg > 0 && offsetOf(entry) == 0) {
+        this.segments.remove(seg).close();
+        this.maps.set(seg, null);
+        Files.delete(segmentPath(seg));
+        this.tail = this.segments.get(seg - 1).size();
+      } else {
+        this.tail = offsetOf(entry);
+      } // if-else
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try-catch
+    return true;
+  } // removeLast()
+
+  /**
+   * Read a block. The block is not linked to its neighbors.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the block.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public Block read(int i) {
+    return decode(record(i));
+  } // read(int)
+
+  /**
+   * Read just the transaction of a block with one transaction.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the transaction.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   * @throws IllegalStateException if the block holds a batch.
+   */
+  public Transaction readTransaction(int i) {
+    ByteBuffer buf = record(i);
+    if (isBatch(buf)) {
+      throw new IllegalStateException("Block " + i + " holds a batch");
+    } // if
+    int at = buf.position() + FIXED_BYTES;
+    byte[] source = field(buf, at);
+    byte[] target = field(buf, at + Integer.BYTES + source.length);
+    return new Transaction(new String(source, StandardCharsets.UTF_8),
+        new String(target, StandardCharsets.UTF_8), buf.getInt(buf.position() + AMOUNT_AT));
+  } // readTransaction(int)
+
+  /**
+   * Read just the transactions of a block.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the transactions, in order.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public List<Transaction> readTransactions(int i) {
+    ByteBuffer buf = record(i);
+    if (!isBatch(buf)) {
+      return List.of(readTransaction(i));
+    } // if
+    int at = buf.position() + FIXED_BYTES;
+    at += Integer.BYTES + buf.getInt(at);
+    at += Integer.BYTES + buf.getInt(at);
+    return Arrays.asList(batch(buf, at));
+  } // readTransactions(int)
+
+  /**
+   * Read just the hash of a block.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the hash.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public Hash readHash(int i) {
+    ByteBuffer buf = record(i);
+    int at = buf.position() + FIXED_BYTES;
+    for (int skip = isBatch(buf) ? 2 : 0; skip < 3; skip++) {
+      at += Integer.BYTES + buf.getInt(at);
+    } // for
+    return Hash.wrap(field(buf, at));
+  } // readHash(int)
+
+  /**
+   * Save a checkpoint next to the log, replacing any older checkpoint of the same size and
+   * deleting all but the newest few. The blocks it covers are flushed first, and the checkpoint
+   * only appears once it is completely written.
+   *
+   * @param checkpoint The checkpoint.
+   * @throws IOException if the checkpoint cannot be written.
+   */
+  public void writeCheckpoint(Checkpoint checkpoint) throws IOException {
+    flush();
+    Path target = checkpointPath(checkpoint.size);
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+      checkpoint.write(out);
+      out.flush();
+      channel.force(true);
+    } // try
+    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    ArrayList<Integer> sizes = checkpointSizes();
+    for (int i = KEEP_CHECKPOINTS; i < sizes.size(); i++) {
+      Files.deleteIfExists(checkpointPath(sizes.get(i)));
+    } // for
+  } // writeCheckpoint(Checkpoint)
+
+  /**
+   * Find the newest checkpoint that still describes the start of the log. Checkpoints that cover
+   * blocks that have since been removed or replaced, and checkpoints that cannot be read, are
+   * skipped.
+   *
+   * @return the checkpoint, or null if there is none.
+   * @throws UncheckedIOException if the directory cannot be read.
+   */
+  public Checkpoint latestCheckpoint() {
+    ArrayList<Integer> sizes;
+    try {
+      sizes = checkpointSizes();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try-catch
+    for (int size : sizes) {
+      if (size == 0 || size > this.count) {
+        continue;
+      } // if
+      Checkpoint checkpoint;
+      Path path = checkpointPath(size);
+      try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+        checkpoint = Checkpoint.read(in, Files.size(path));
+      } catch (IOException e) {
+        continue;
+      } // try-catch
+      if (checkpoint.size == size && checkpoint.tailHash.equals(readHash(size - 1))) {
+        return checkpoint;
+      } // if
+    } // for
+    return null;
+  } // latestCheckpoint()
+
+  /**
+   * Make sure everything appended so far is on disk.
+   *
+   * @throws IOException if the files cannot be forced.
+   */
+  public void flush() throws IOException {
+    for (FileChannel segment : this.segments) {
+      segment.force(false);
+    } // for
+    this.index.force(false);
+  } // flush()
+
+  /**
+   * Flush and close the log.
+   *
+   * @throws IOException if the files cannot be closed.
+   */
+  public void close() throws IOException {
+    this.segments.get(this.segments.size() - 1).truncate(this.tail);
+    flush();
+    for (FileChannel segment : this.segments) {
+      segment.close();
+    } // for
+    this.index.close();
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the mapped bytes of a block's record.
+   *
+   * @param i The position of the block.
+   * @return a buffer whose position is the start of the record.
+   */
+  ByteBuffer record(int i) {
+    if (i < 0 || i >= this.count) {
+      throw new IndexOutOfBoundsException("No block " + i + " in a log of " + this.count);
+    } // if
+    long entry = this.entries[i];
+    int seg = segmentOf(entry);
+    int offset = offsetOf(entry);
+    return this.maps.get(seg).duplicate().position(offset);
+  } // record(int)
+
+  /**
+   * Read a block from its record. The block is not linked to its neighbors.
+   *
+   * @param buf The buffer, positioned at the start of the record.
+   * @return the block.
+   * @throws IndexOutOfBoundsException if the record is cut short.
+   */
+  static Block decode(ByteBuffer buf) {
+    if (isBatch(buf)) {
+      int at = buf.position() + FIXED_BYTES;
+      byte[] prevHash = field(buf, at);
+      at += Integer.BYTES + prevHash.length;
+      byte[] hash = field(buf, at);
+      return new Block(buf.getInt(buf.position() + NUM_AT),
+          batch(buf, at + Integer.BYTES + hash.length), Hash.wrap(prevHash),
+          buf.getLong(buf.position() + NONCE_AT), Hash.wrap(hash));
+    } // if
+    int at = buf.position() + FIXED_BYTES;
+    byte[] source = field(buf, at);
+    at += Integer.BYTES + source.length;
+    byte[] target = field(buf, at);
+    at += Integer.BYTES + target.length;
+    byte[] prevHash = field(buf, at);
+    at += Integer.BYTES + prevHash.length;
+    byte[] hash = field(buf, at);
+    Transaction t = new Transaction(new String(source, StandardCharsets.UTF_8),
+        new String(target, StandardCharsets.UTF_8), buf.getInt(buf.position() + AMOUNT_AT));
+    return new Block(buf.getInt(buf.position() + NUM_AT), t, Hash.wrap(prevHash),
+        buf.getLong(buf.position() + NONCE_AT), Hash.wrap(hash));
+  } // decode(ByteBuffer)
+
+  /**
+   * Lay out the record of a block.
+   *
+   * @param blk The block.
+   * @return a buffer holding the record.
+   */
+  static ByteBuffer encode(Block blk) {
+    return blk.isBatch() ? batchRecord(blk) : record(blk);
+  } // encode(Block)
+
+  /**
+   * Lay out the record of a block with one transaction.
+   *
+   * @param blk The block.
+   * @return a buffer holding the record.
+   */
+  static ByteBuffer record(Block blk) {
+    Transaction t = blk.getTransaction();
+    byte[] source = t.getSource().getBytes(StandardCharsets.UTF_8);
+    byte[] target = t.getTarget().getBytes(StandardCharsets.UTF_8);
+    byte[] prevHash = blk.getPrevHash().hashData;
+    byte[] hash = blk.getHash().hashData;
+    int length = FIXED_BYTES + 4 * Integer.BYTES + source.length + target.length
+        + prevHash.length + hash.length;
+    ByteBuffer record = ByteBuffer.allocate(length);
+    record.putInt(length).putInt(blk.getNum()).putInt(t.getAmount()).putLong(blk.getNonce());
+    record.putInt(source.length).put(source).putInt(target.length).put(target);
+    record.putInt(prevHash.length).put(prevHash).putInt(hash.length).put(hash);
+    return record.flip();
+  } // record(Block)
+
+  /**
+   * Lay out the record of a batch.
+   *
+   * @param blk The block.
+   * @return a buffer holding the record.
+   */
+  static ByteBuffer batchRecord(Block blk) {
+    List<Transaction> transactions = blk.getTransactions();
+    byte[][] names = new byte[2 * transactions.size()][];
+    byte[] prevHash = blk.getPrevHash().hashData;
+    byte[] hash = blk.getHash().hashData;
+    int length = FIXED_BYTES + 2 * Integer.BYTES + prevHash.length + hash.length;
+    for (int i = 0; i < transactions.size(); i++) {
+      names[2 * i] = transactions.get(i).getSource().getBytes(StandardCharsets.UTF_8);
+      names[2 * i + 1] = transactions.get(i).getTarget().getBytes(StandardCharsets.UTF_8);
+      length += 3 * Integer.BYTES + names[2 * i].length + names[2 * i + 1].length;
+    } // for
+    ByteBuffer record = ByteBuffer.allocate(length);
+    record.putInt(length | BATCH_FLAG).putInt(blk.getNum()).putInt(transactions.size())
+        .putLong(blk.getNonce());
+    record.putInt(prevHash.length).put(prevHash).putInt(hash.length).put(hash);
+    for (int i = 0; i < transactions.size(); i++) {
+      record.putInt(names[2 * i].length).put(names[2 * i]);
+      record.putInt(names[2 * i + 1].length).put(names[2 * i + 1]);
+      record.putInt(transactions.get(i).getAmount());
+    } // for
+    return record.flip();
+  } // batchRecord(Block)
+
+  /**
+   * Read the transactions of a batch.
+   *
+   * @param buf The buffer, positioned at the start of the record.
+   * @param at  The position of the first transaction.
+   * @return the transactions.
+   */
+  static Transaction[] batch(ByteBuffer buf, int at) {
+    int count = buf.getInt(buf.position() + AMOUNT_AT);
+    if (count < 0 || count > (buf.limit() - at) / (3 * Integer.BYTES)) {
+      throw new IndexOutOfBoundsException("Invalid number of transactions: " + count);
+    } // if
+    Transaction[] result = new Transaction[count];
+    int pos = at;
+    for (int i = 0; i < result.length; i++) {
+      byte[] source = field(buf, pos);
+      pos += Integer.BYTES + source.length;
+      byte[] target = field(buf, pos);
+      pos += Integer.BYTES + target.length;
+      result[i] = new Transaction(new String(source, StandardCharsets.UTF_8),
+          new String(target, StandardCharsets.UTF_8), buf.getInt(pos));
+      pos += Integer.BYTES;
+    } // for
+    return result;
+  } // batch(ByteBuffer, int)
+
+  /**
+   * Determine if a record holds a batch.
+   *
+   * @param buf The buffer, positioned at the start of the record.
+   * @return true for a batch.
+   */
+  static boolean isBatch(ByteBuffer buf) {
+    return (buf.getInt(buf.position()) & BATCH_FLAG) != 0;
+  } // isBatch(ByteBuffer)
+
+  /**
+   * Make sure the mapping of the last segment covers a given number of bytes, growing the file
+   * to at least twice its size, up to the size of a segment, if it does not. The file holds
+   * zeros past the records until they are written.
+   *
+   * @param seg    The last segment.
+   * @param needed The number of bytes needed from the start of the segment.
+   * @throws IOException if the file cannot be grown or mapped.
+   */
+  void reserve(int seg, long needed) throws IOException {
+    MappedByteBuffer map = this.maps.get(seg);
+    long current = (map == null) ? 0 : map.capacity();
+    if (current >= needed) {
+      return;
+    } // if
+    long capacity = Math.max(needed,
+        Math.min(Math.max(MIN_MAPPING, 2 * current), this.segmentBytes));
+    FileChannel segment = this.segments.get(seg);
+    if (segment.size() < capacity) {
+      writeFully(segment, ByteBuffer.allocate(1), capacity - 1);
+    } // if
+    this.maps.set(seg, segment.map(FileChannel.MapMode.READ_ONLY, 0, capacity));
+  } // reserve(int, long)
+
+  /**
+   * Open or create a segment file and add it to the end of the segments.
+   *
+   * @param seg The number of the segment.
+   * @throws IOException if the file cannot be opened.
+   */
+  void openSegment(int seg) throws IOException {
+    this.segments.add(FileChannel.open(segmentPath(seg), StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE));
+    AtomicReferenceArray<MappedByteBuffer> current = this.maps;
+    if (seg >= current.length()) {
+      AtomicReferenceArray<MappedByteBuffer> grown =
+          new AtomicReferenceArray<MappedByteBuffer>(2 * seg + 1);
+      for (int i = 0; i < current.length(); i++) {
+        grown.set(i, current.get(i));
+      } // for
+      this.maps = grown;
+    } // if
+  } // openSegment(int)
+
+  /**
+   * Get the path of a segment file.
+   *
+   * @param seg The number of the segment.
+   * @return the path.
+   */
+  Path segmentPath(int seg) {
+    return this.dir.resolve(String.format(SEGMENT_FILE, seg));
+  } // segmentPath(int)
+
+  /**
+   * Get the path of a checkpoint file.
+   *
+   * @param size The number of blocks the checkpoint covers.
+   * @return the path.
+   */
+  Path checkpointPath(int size) {
+    return this.dir.resolve(String.format(CHECKPOINT_FILE, size));
+  } // checkpointPath(int)
+
+  /**
+   * Find the sizes of the checkpoints in the directory.
+   *
+   * @return the sizes, largest first.
+   * @throws IOException if the directory cannot be read.
+   */
+  ArrayList<Integer> checkpointSizes() throws IOException {
+    ArrayList<Integer> sizes = new ArrayList<Integer>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir, "checkpoint-*.ckpt")) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        try {
+          sizes.add(Integer.parseInt(name.substring(name.indexOf('-') + 1, name.indexOf('.'))));
+        } catch (NumberFormatException e) {
+          continue;
+        } // try-catch
+      } // for
+    } // try
+    sizes.sort(Collections.reverseOrder());
+    return sizes;
+  } // checkpointSizes()
+
+  /**
+   * Read a length-prefixed field.
+   *
+   * @param buf The buffer.
+   * @param at  The position of the length.
+   * @return the bytes of the field.
+   * @throws IndexOutOfBoundsException if the field runs past the end of the buffer.
+   */
+  static byte[] field(ByteBuffer buf, int at) {
+    int length = buf.getInt(at);
+    if (length < 0 || length > buf.limit() - at - Integer.BYTES) {
+      throw new IndexOutOfBoundsException("Invalid field length: " + length);
+    } // if
+    byte[] bytes = new byte[length];
+    buf.get(at + Integer.BYTES, bytes);
+    return bytes;
+  } // field(ByteBuffer, int)
+
+  /**
+   * Write all of a buffer at a position.
+   *
+   * @param channel  The file.
+   * @param buf      The bytes to write.
+   * @param position Where to write them.
+   * @throws IOException if the bytes cannot be written.
+   */
+  static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+    long at = position;
+    while (buf.hasRemaining()) {
+      at += channel.write(buf, at);
+    } // while
+  } // writeFully(FileChannel, ByteBuffer, long)
+
+  /**
+   * Get the segment from an index entry.
+   *
+   * @param entry The entry.
+   * @return the segment number.
+   */
+  static int segmentOf(long entry) {
+    return (int) (entry >>> Integer.SIZE);
+  } // segmentOf(long)
+
+  /**
+   * Get the offset within its segment from an index entry.
+   *
+   * @param entry The entry.
+   * @return the offset.
+   */
+  static int offsetOf(long entry) {
+    return (int) entry;
+  } // offsetOf(long)
+} // class BlockLog
@@ -0,0 +1,60 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.List;
+
+/**
+ * Somewhere to keep the blocks of a chain, in order, with the last block the only one that can be
+ * removed.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public interface BlockStorage {
+  /**
+   * Get the number of blocks stored.
+   *
+   * @return the number of blocks.
+   */
+  int size();
+
+  /**
+   * Add a block to the end.
+   *
+   * @param blk The block.
+   */
+  void append(Block blk);
+
+  /**
+   * Remove the last block.
+   *
+   * @return false if there are no blocks and true otherwise.
+   */
+  boolean removeLast();
+
+  /**
+   * Read a block.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the block.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  Block read(int i);
+
+  /**
+   * Read just the transactions of a block.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the transactions, in order.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  List<Transaction> readTransactions(int i);
+
+  /**
+   * Read just the hash of a block.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the hash.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  Hash readHash(int i);
+} // interface BlockStorage
@@ -0,0 +1,536 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Blocks kept in memory column by column. Numbers, nonces, and hashes are held in primitive
+ * arrays, a chunk of blocks at a time, and the transactions of all the blocks are held one after
+ * another in columns of their own, with users stored as ids from a UserDictionary. A stored
+ * block with one transaction takes about 60 bytes and no objects of its own; Block objects are
+ * only made when a block is read, as views of the stored data.
+ *
+ * <p>Only the first block's previous hash is stored. Every later block must link to the block
+ * before it, so its previous hash is that block's hash.</p>
+ *
+ * <p>A snapshot shares the chunks of the store it was taken from. A chunk remembers how many of
+ * its entries some snapshot can see, and the store copies the chunk before it overwrites one of
+ * those entries, which only happens once blocks have been removed. Appends past the end of what
+ * the snapshots see write in place.</p>
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class BlockStore implements BlockStorage {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes in a stored hash.
+   */
+  public static final int HASH_BYTES = Sha256.DIGEST_BYTES;
+
+  /**
+   * The number of blocks, or transactions, in a chunk. A power of two, so positions split with
+   * shifts and masks.
+   */
+  static final int CHUNK_BLOCKS = 1 << 12;
+
+  /**
+   * The shift that turns a position into a chunk number.
+   */
+  static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_BLOCKS);
+
+  /**
+   * The mask that turns a position into a place within its chunk.
+   */
+  static final int CHUNK_MASK = CHUNK_BLOCKS - 1;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chunks of blocks, in order. Only the last may be partly filled.
+   */
+  ArrayList<Chunk> chunks;
+
+  /**
+   * The chunks of transactions, in order. Only the last may be partly filled.
+   */
+  ArrayList<TransactionChunk> transactionChunks;
+
+  /**
+   * The ids of the users named in the blocks.
+   */
+  UserDictionary users;
+
+  /**
+   * The previous hash of the first block, or null if there are no blocks.
+   */
+  Hash firstPrevHash;
+
+  /**
+   * The number of blocks stored.
+   */
+  int count;
+
+  /**
+   * The number of transactions stored.
+   */
+  int transactionCount;
+
+  /**
+   * The lock of the chain that writes to this store, which views take when they read their
+   * neighbors, or null if the store is not shared between threads.
+   */
+  StampedLock lock;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty store.
+   */
+  public BlockStore() {
+    this(new UserDictionary());
+  } // BlockStore()
+
+  /**
+   * Create an empty store that names users with the ids in a dictionary.
+   *
+   * @param pUsers The dictionary.
+   */
+  BlockStore(UserDictionary pUsers) {
+    this.chunks = new ArrayList<Chunk>();
+    this.transactionChunks = new ArrayList<TransactionChunk>();
+    this.users = pUsers;
+  } // BlockStore(UserDictionary)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of blocks stored.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.count;
+  } // size()
+
+  /**
+   * Get the number of transactions stored, across all blocks.
+   *
+   * @return the number of transactions.
+   */
+  public int transactionCount() {
+    return this.transactionCount;
+  } // transactionCount()
+
+  /**
+   * Get the ids of the users named in the blocks.
+   *
+   * @return the dictionary.
+   */
+  public UserDictionary users() {
+    return this.users;
+  } // users()
+
+  /**
+   * Add a block to the end of the store.
+   *
+   * @param blk The block.
+   * @throws IllegalArgumentException if the block's hash is not a SHA-256 hash, or the block does
+   *                                  not link to the last block.
+   */
+  public void append(Block blk) {
+    byte[] hash = blk.getHash().hashData;
+    if (hash.length != HASH_BYTES) {
+      throw new IllegalArgumentException("Hashes must be " + HASH_BYTES + " bytes");
+    } // if
+    if (this.count > 0) {
+      Chunk last = chunk(this.count - 1);
+      int from = ((this.count - 1) & CHUNK_MASK) * HASH_BYTES;
+      if (!Arrays.equals(last.hashes, from, from + HASH_BYTES, blk.getPrevHash().hashData, 0,
+          blk.getPrevHash().hashData.length)) {
+        throw new IllegalArgumentException("Block does not link to the last block");
+      } // if
+    } else {
+      this.firstPrevHash = blk.getPrevHash();
+    } // if-else
+    for (Transaction t : blk.getTransactions()) {
+      if ((this.transactionCount >>> CHUNK_SHIFT) == this.transactionChunks.size()) {
+        this.transactionChunks.add(new TransactionChunk());
+      } // if
+      TransactionChunk chunk = this.transactionChunks.get(this.transactionCount >>> CHUNK_SHIFT);
+      int at = this.transactionCount & CHUNK_MASK;
+      if (at < chunk.shared) {
+        chunk = new TransactionChunk(chunk);
+        this.transactionChunks.set(this.transactionCount >>> CHUNK_SHIFT, chunk);
+      } // if
+      chunk.sources[at] = this.users.id(t.getSource());
+      chunk.targets[at] = this.users.id(t.getTarget());
+      chunk.amounts[at] = t.getAmount();
+      this.transactionCount++;
+    } // for
+    if ((this.count >>> CHUNK_SHIFT) == this.chunks.size()) {
+      this.chunks.add(new Chunk());
+    } // if
+    Chunk chunk = chunk(this.count);
+    int at = this.count & CHUNK_MASK;
+    if (at < chunk.shared) {
+      chunk = new Chunk(chunk);
+      this.chunks.set(this.count >>> CHUNK_SHIFT, chunk);
+    } // if
+    chunk.nums[at] = blk.getNum();
+    chunk.nonces[at] = blk.getNonce();
+    chunk.transactionEnds[at] = this.transactionCount;
+    chunk.batches[at] = blk.isBatch();
+    System.arraycopy(hash, 0, chunk.hashes, at * HASH_BYTES, HASH_BYTES);
+    this.count++;
+  } // append(Block)
+
+  /**
+   * Remove the last block from the store. Its users keep their ids.
+   *
+   * @return false if the store is empty and true otherwise.
+   */
+  public boolean removeLast() {
+    if (this.count == 0) {
+      return false;
+    } // if
+    this.transactionCount = firstTransaction(this.count - 1);
+    this.count--;
+    if ((this.count & CHUNK_MASK) == 0) {
+      this.chunks.remove(this.chunks.size() - 1);
+    } // if
+    int neededChunks = (this.transactionCount + CHUNK_MASK) >>> CHUNK_SHIFT;
+    while (this.transactionChunks.size() > neededChunks) {
+      this.transactionChunks.remove(this.transactionChunks.size() - 1);
+    } // while
+    if (this.count == 0) {
+      this.firstPrevHash = null;
+    } // if
+    return true;
+  } // removeLast()
+
+  /**
+   * Make a view of a block. The view's neighbors are the blocks stored next to it when they are
+   * asked for.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the block.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public Block read(int i) {
+    Chunk chunk = chunk(check(i));
+    int at = i & CHUNK_MASK;
+    Hash prevHash = (i == 0) ? this.firstPrevHash : readHash(i - 1);
+    Block blk;
+    if (chunk.batches[at]) {
+      blk = new Block(chunk.nums[at], readTransactions(i).toArray(new Transaction[0]), prevHash,
+          chunk.nonces[at], readHash(i));
+    } else {
+      blk = new Block(chunk.nums[at], transaction(firstTransaction(i)), prevHash,
+          chunk.nonces[at], readHash(i));
+    } // if-else
+    blk.store = this;
+    blk.pos = i;
+    return blk;
+  } // read(int)
+
+  /**
+   * Take a read-only snapshot of the store as it is now. The snapshot shares the chunks, which
+   * costs a little per chunk rather than per block, and copies the dictionary, which costs
+   * O(users) but keeps the store's new users from racing with readers of the snapshot. Later
+   * changes to this store do not show in it. The snapshot must not be changed.
+   *
+   * @return the snapshot.
+   */
+  public BlockStore snapshot() {
+    BlockStore result = new BlockStore(this.users.copy());
+    result.chunks.addAll(this.chunks);
+    result.transactionChunks.addAll(this.transactionChunks);
+    result.firstPrevHash = this.firstPrevHash;
+    result.count = this.count;
+    result.transactionCount = this.transactionCount;
+    for (int c = 0; c < this.chunks.size(); c++) {
+      Chunk chunk = this.chunks.get(c);
+      chunk.shared = Math.max(chunk.shared,
+          Math.min(CHUNK_BLOCKS, this.count - (c << CHUNK_SHIFT)));
+    } // for
+    for (int c = 0; c < this.transactionChunks.size(); c++) {
+      TransactionChunk chunk = this.transactionChunks.get(c);
+      chunk.shared = Math.max(chunk.shared,
+          Math.min(CHUNK_BLOCKS, this.transactionCount - (c << CHUNK_SHIFT)));
+    } // for
+    return result;
+  } // snapshot()
+
+  /**
+   * Make a view of a block if it is still stored, reading under the store's lock if it has one.
+   *
+   * @param i The position of the block.
+   * @return the block, or null if there is no such block.
+   */
+  Block neighbor(int i) {
+    if (this.lock == null) {
+      return (i >= 0 && i < this.count) ? read(i) : null;
+    } // if
+    return BlockChain.read(this.lock, true, () -> (i >= 0 && i < this.count) ? read(i) : null);
+  } // neighbor(int)
+
+  /**
+   * Read just the transactions of a block.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the transactions, in order.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public List<Transaction> readTransactions(int i) {
+    int end = endTransaction(i);
+    ArrayList<Transaction> result = new ArrayList<Transaction>(end - firstTransaction(i));
+    for (int tx = firstTransaction(i); tx < end; tx++) {
+      result.add(transaction(tx));
+    } // for
+    return result;
+  } // readTransactions(int)
+
+  /**
+   * Read just the hash of a block.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the hash.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  public Hash readHash(int i) {
+    int from = (check(i) & CHUNK_MASK) * HASH_BYTES;
+    return Hash.wrap(Arrays.copyOfRange(chunk(i).hashes, from, from + HASH_BYTES));
+  } // readHash(int)
+
+  /**
+   * Find where a block's transactions start among all the stored transactions.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the index of its first transaction.
+   */
+  public int firstTransaction(int i) {
+    return (check(i) == 0) ? 0 : endTransaction(i - 1);
+  } // firstTransaction(int)
+
+  /**
+   * Find where a block's transactions end among all the stored transactions.
+   *
+   * @param i The position of the block, between 0 (inclusive) and size() (exclusive).
+   * @return the index just past its last transaction.
+   */
+  public int endTransaction(int i) {
+    return chunk(check(i)).transactionEnds[i & CHUNK_MASK];
+  } // endTransaction(int)
+
+  /**
+   * Make a stored transaction.
+   *
+   * @param tx The index of the transaction, between 0 (inclusive) and transactionCount()
+   *           (exclusive).
+   * @return the transaction.
+   */
+  public Transaction transaction(int tx) {
+    TransactionChunk chunk = transactionChunk(tx);
+    int at = tx & CHUNK_MASK;
+    return new Transaction(this.users.name(chunk.sources[at]),
+        this.users.name(chunk.targets[at]), chunk.amounts[at]);
+  } // transaction(int)
+
+  /**
+   * Get the amount of a stored transaction.
+   *
+   * @param tx The index of the transaction, between 0 (inclusive) and transactionCount()
+   *           (exclusive).
+   * @return the amount.
+   */
+  public int amount(int tx) {
+    return transactionChunk(tx).amounts[tx & CHUNK_MASK];
+  } // amount(int)
+
+  /**
+   * Get the user id of the source of a stored transaction.
+   *
+   * @param tx The index of the transaction, between 0 (inclusive) and transactionCount()
+   *           (exclusive).
+   * @return the id, which is UserDictionary.NOBODY for a deposit.
+   */
+  public int sourceId(int tx) {
+    return transactionChunk(tx).sources[tx & CHUNK_MASK];
+  } // sourceId(int)
+
+  /**
+   * Get the user id of the target of a stored transaction.
+   *
+   * @param tx The index of the transaction, between 0 (inclusive) and transactionCount()
+   *           (exclusive).
+   * @return the id.
+   */
+  public int targetId(int tx) {
+    return transactionChunk(tx).targets[tx & CHUNK_MASK];
+  } // targetId(int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make sure a block exists.
+   *
+   * @param i The position of the block.
+   * @return the position.
+   * @throws IndexOutOfBoundsException if there is no such block.
+   */
+  int check(int i) {
+    if (i < 0 || i >= this.count) {
+      throw new IndexOutOfBoundsException("No block " + i + " in a store of " + this.count);
+    } // if
+    return i;
+  } // check(int)
+
+  /**
+   * Get the chunk that holds a block.
+   *
+   * @param i The position of the block.
+   * @return the chunk.
+   */
+  Chunk chunk(int i) {
+    return this.chunks.get(i >>> CHUNK_SHIFT);
+  } // chunk(int)
+
+  /**
+   * Get the chunk that holds a transaction.
+   *
+   * @param tx The index of the transaction.
+   * @return the chunk.
+   * @throws IndexOutOfBoundsException if there is no such transaction.
+   */
+  TransactionChunk transactionChunk(int tx) {
+    if (tx < 0 || tx >= this.transactionCount) {
+      throw new IndexOutOfBoundsException("No transaction " + tx + " in a store of "
+          + this.transactionCount);
+    } // if
+    return this.transactionChunks.get(tx >>> CHUNK_SHIFT);
+  } // transactionChunk(int)
+
+  // +----------------+----------------------------------------------
+  // | Nested classes |
+  // +----------------+
+
+  /**
+   * The columns for a run of CHUNK_BLOCKS blocks.
+   */
+  static class Chunk {
+    /**
+     * The number of each block.
+     */
+    int[] nums;
+
+    /**
+     * The nonce of each block.
+     */
+    long[] nonces;
+
+    /**
+     * The index just past the last transaction of each block.
+     */
+    int[] transactionEnds;
+
+    /**
+     * Whether each block holds a batch.
+     */
+    boolean[] batches;
+
+    /**
+     * The hash of each block, HASH_BYTES bytes apiece.
+     */
+    byte[] hashes;
+
+    /**
+     * The number of leading entries some snapshot can see, which must not change.
+     */
+    int shared;
+
+    /**
+     * Create an empty chunk.
+     */
+    Chunk() {
+      this.nums = new int[CHUNK_BLOCKS];
+      this.nonces = new long[CHUNK_BLOCKS];
+      this.transactionEnds = new int[CHUNK_BLOCKS];
+      this.batches = new boolean[CHUNK_BLOCKS];
+      this.hashes = new byte[CHUNK_BLOCKS * HASH_BYTES];
+    } // Chunk()
+
+    /**
+     * Copy a chunk, for a store to change without disturbing its snapshots. No snapshot can see
+     * the copy.
+     *
+     * @param source The chunk to copy.
+     */
+    Chunk(Chunk source) {
+      this.nums = source.nums.clone();
+      this.nonces = source.nonces.clone();
+      this.transactionEnds = source.transactionEnds.clone();
+      this.batches = source.batches.clone();
+      this.hashes = source.hashes.clone();
+    } // Chunk(Chunk)
+  } // class Chunk
+
+  /**
+   * The columns for a run of CHUNK_BLOCKS transactions.
+   */
+  static class TransactionChunk {
+    /**
+     * The amount of each transaction.
+     */
+    int[] amounts;
+
+    /**
+     * The user id of the source of each transaction.
+     */
+    int[] sources;
+
+    /**
+     * The user id of the target of each transaction.
+     */
+    int[] targets;
+
+    /**
+     * The number of leading entries some snapshot can see, which must not change.
+     */
+    int shared;
+
+    /**
+     * Create an empty chunk.
+     */
+    TransactionChunk() {
+      this.amounts = new int[CHUNK_BLOCKS];
+      this.sources = new int[CHUNK_BLOCKS];
+      this.targets = new int[CHUNK_BLOCKS];
+    } // TransactionChunk()
+
+    /**
+     * Copy a chunk, for a store to change without disturbing its snapshots. No snapshot can see
+     * the copy.
+     *
+     * @param source The chunk to copy.
+     */
+    TransactionChunk(TransactionChunk source) {
+      this.amounts = source.amounts.clone();
+      this.sources = source.sources.clone();
+      this.targets = source.targets.clone();
+    } // TransactionChunk(TransactionChunk)
+  } // class TransactionChunk
+} // class BlockStore
@@ -0,0 +1,276 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * Every block we know of, arranged as a tree: the best chain, kept in a BlockChain, and side
+ * branches that compete with it. A block may extend any block in the tree. When a side branch
+ * becomes better than the best chain, the chain is reorganized: the blocks after the point where
+ * the branch leaves the chain are removed, undoing their transactions, and the blocks of the
+ * branch are appended. Each block's stored transactions are its undo record, so a reorganization
+ * costs time in proportion to the blocks that change, however long the chain is.
+ *
+ * <p>The best chain is the longest one, or the one with the most work, where the work of a block
+ * is the number of hashes expected to meet the target it was mined for, as the chain's validator
+ * reports it, rather than how lucky its hash happened to be. Ties go to the chain we had first.
+ * A branch whose transactions would leave a balance negative never becomes the best chain; its
+ * bad block and the blocks after it are dropped.</p>
+ *
+ * <p>Every branch starts from a block of the chain or from a first block, numbered 0. A block
+ * whose parent is not in the tree is an orphan and is refused, even when the chain is empty.</p>
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class BlockTree {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The best chain.
+   */
+  BlockChain chain;
+
+  /**
+   * Whether chains are compared by work rather than by length.
+   */
+  boolean byWork;
+
+  /**
+   * The blocks on side branches, by hash.
+   */
+  HashMap<Hash, Block> side;
+
+  /**
+   * The hashes of the side blocks that extend each block, by the hash of the block they extend.
+   */
+  HashMap<Hash, ArrayList<Hash>> children;
+
+  /**
+   * The number of reorganizations so far.
+   */
+  int reorgs;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a tree whose best chain starts as a chain, which the tree then changes.
+   *
+   * @param pChain  The chain.
+   * @param pByWork Whether to choose the chain with the most work, rather than the longest.
+   */
+  public BlockTree(BlockChain pChain, boolean pByWork) {
+    this.chain = pChain;
+    this.byWork = pByWork;
+    this.side = new HashMap<Hash, Block>();
+    this.children = new HashMap<Hash, ArrayList<Hash>>();
+  } // BlockTree(BlockChain, boolean)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the best chain.
+   *
+   * @return the chain.
+   */
+  public BlockChain getChain() {
+    return this.chain;
+  } // getChain()
+
+  /**
+   * Get the number of blocks on side branches.
+   *
+   * @return the number of blocks.
+   */
+  public int getSideBlocks() {
+    return this.side.size();
+  } // getSideBlocks()
+
+  /**
+   * Get the number of times the best chain has switched branches.
+   *
+   * @return the number of reorganizations.
+   */
+  public int getReorgs() {
+    return this.reorgs;
+  } // getReorgs()
+
+  /**
+   * Add a block to the tree. It may extend the best chain or any side branch, and the best chain
+   * is reorganized if the block makes its branch better. Appends and removals wait until the
+   * block is added.
+   *
+   * @param blk The block.
+   * @return false if the tree already held the block and true otherwise.
+   * @throws IllegalArgumentException if the block's hash does not match its contents or is not
+   *                                  valid, the block extends a block that is not in the tree,
+   *                                  or its number does not follow the block it extends.
+   * @throws UnsupportedOperationException if the chain is a snapshot.
+   */
+  public boolean add(Block blk) {
+    Hash hash = blk.getHash();
+    if (!hash.equals(blk.calculateHash())) {
+      throw new IllegalArgumentException("Block " + blk.getNum() + " has a bad hash");
+    } // if
+    this.chain.requireWritable();
+    long stamp = this.chain.lock.writeLock();
+    try {
+      if (this.side.containsKey(hash) || this.chain.positionOf(hash) >= 0) {
+        return false;
+      } // if
+
+      // Walk back to the chain, or to a first block, to find where the block's branch starts.
+      ArrayList<Block> branch = new ArrayList<Block>();
+      branch.add(blk);
+      Hash prev = blk.getPrevHash();
+      int fork = this.chain.positionOf(prev);
+      while (fork < 0 && branch.get(branch.size() - 1).getNum() != 0) {
+        Block parent = this.side.get(prev);
+        if (parent == null) {
+          throw new IllegalArgumentException("Block " + blk.getNum()
+              + " extends a block that is not in the tree");
+        } // if
+        branch.add(parent);
+        prev = parent.getPrevHash();
+        fork = this.chain.positionOf(prev);
+      } // while
+      if (blk.getNum() != fork + branch.size()) {
+        throw new IllegalArgumentException("Block " + blk.getNum() + " would be block "
+            + (fork + branch.size()));
+      } // if
+      Collections.reverse(branch);
+      Block parent = (branch.size() > 1) ? branch.get(branch.size() - 2)
+          : (fork >= 0) ? this.chain.storage.read(fork) : null;
+      if (!this.chain.check.isValidBlock(blk, fork + branch.size(),
+          (parent == null) ? 0 : parent.getNonce())) {
+        throw new IllegalArgumentException("Block " + blk.getNum() + " has a bad hash");
+      } // if
+
+      keep(blk);
+      if (better(fork, branch)) {
+        reorganize(fork, branch);
+      } // if
+      return true;
+    } finally {
+      this.chain.lock.unlockWrite(stamp);
+    } // try-finally
+  } // add(Block)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determine if a branch is better than the blocks of the chain it would replace.
+   *
+   * @param fork   The position in the chain of the block the branch extends, or -1.
+   * @param branch The blocks of the branch, in order.
+   * @return true if the branch should replace the end of the chain.
+   */
+  boolean better(int fork, ArrayList<Block> branch) {
+    if (!this.byWork) {
+      return fork + 1 + branch.size() > this.chain.size;
+    } // if
+    double branchWork = 0;
+    for (Block b : branch) {
+      branchWork += this.chain.check.work(b);
+    } // for
+    double chainWork = 0;
+    for (int i = fork + 1; i < this.chain.size; i++) {
+      chainWork += this.chain.check.work(this.chain.storage.read(i));
+    } // for
+    return branchWork > chainWork;
+  } // better(int, ArrayList<Block>)
+
+  /**
+   * Replace the blocks of the chain after a fork with a branch. If a block of the branch leaves
+   * a balance negative, the chain is put back as it was, and the bad block and its descendants
+   * are dropped from the tree. The caller holds the chain's write lock.
+   *
+   * @param fork   The position in the chain of the block the branch extends, or -1.
+   * @param branch The blocks of the branch, in order.
+   */
+  void reorganize(int fork, ArrayList<Block> branch) {
+    ArrayList<Block> removed = new ArrayList<Block>();
+    while (this.chain.size > fork + 1) {
+      removed.add(this.chain.lastBlock);
+      this.chain.dropLast();
+    } // while
+    for (int i = 0; i < branch.size(); i++) {
+      if (this.chain.link(branch.get(i)) != null) {
+        for (int j = 0; j <= i; j++) {
+          this.chain.dropLast();
+        } // for
+        for (int j = removed.size() - 1; j >= 0; j--) {
+          this.chain.link(removed.get(j));
+        } // for
+        discard(branch.get(i).getHash());
+        return;
+      } // if
+    } // for
+    for (Block b : branch) {
+      forget(b);
+    } // for
+    for (Block b : removed) {
+      keep(b);
+    } // for
+    if (!removed.isEmpty()) {
+      this.reorgs++;
+    } // if
+  } // reorganize(int, ArrayList<Block>)
+
+  /**
+   * Keep a block on a side branch.
+   *
+   * @param blk The block.
+   */
+  void keep(Block blk) {
+    this.side.put(blk.getHash(), blk);
+    this.children.computeIfAbsent(blk.getPrevHash(), (h) -> new ArrayList<Hash>())
+        .add(blk.getHash());
+  } // keep(Block)
+
+  /**
+   * Stop keeping a block on a side branch, as when it joins the chain.
+   *
+   * @param blk The block.
+   */
+  void forget(Block blk) {
+    this.side.remove(blk.getHash());
+    ArrayList<Hash> siblings = this.children.get(blk.getPrevHash());
+    if (siblings != null) {
+      siblings.remove(blk.getHash());
+      if (siblings.isEmpty()) {
+        this.children.remove(blk.getPrevHash());
+      } // if
+    } // if
+  } // forget(Block)
+
+  /**
+   * Drop a side block and every side block descended from it.
+   *
+   * @param hash The hash of the block.
+   */
+  void discard(Hash hash) {
+    ArrayDeque<Hash> doomed = new ArrayDeque<Hash>();
+    doomed.add(hash);
+    while (!doomed.isEmpty()) {
+      Block blk = this.side.get(doomed.remove());
+      if (blk != null) {
+        ArrayList<Hash> descendants = this.children.get(blk.getHash());
+        if (descendants != null) {
+          doomed.addAll(descendants);
+        } // if
+        forget(blk);
+      } // if
+    } // while
+  } // discard(Hash)
+} // class BlockTree
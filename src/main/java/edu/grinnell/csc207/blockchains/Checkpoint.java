@@ -0,0 +1,217 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The state of a chain at one block: its size, the hash of its last block, how many of its blocks
+ * are known to be correct, and the balances. A chain reopened from a checkpoint only needs to
+ * read and check the blocks after it.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class Checkpoint {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Marks the start of a checkpoint file ("BCKP").
+   */
+  static final int MAGIC = 0x42434b50;
+
+  /**
+   * The version of the file format.
+   */
+  static final int VERSION = 1;
+
+  /**
+   * The fewest bytes a user takes: the length of the name, the balance, and the count of
+   * transactions.
+   */
+  static final int USER_BYTES = 3 * Integer.BYTES;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks in the chain.
+   */
+  int size;
+
+  /**
+   * The number of blocks at the start of the chain known to be correct.
+   */
+  int verified;
+
+  /**
+   * The hash of the last block.
+   */
+  Hash tailHash;
+
+  /**
+   * The balances after the last block.
+   */
+  Ledger ledger;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new checkpoint.
+   *
+   * @param pSize     The number of blocks in the chain.
+   * @param pVerified The number of blocks known to be correct.
+   * @param pTailHash The hash of the last block.
+   * @param pLedger   The balances after the last block, which the checkpoint takes over.
+   */
+  Checkpoint(int pSize, int pVerified, Hash pTailHash, Ledger pLedger) {
+    this.size = pSize;
+    this.verified = pVerified;
+    this.tailHash = pTailHash;
+    this.ledger = pLedger;
+  } // Checkpoint(int, int, Hash, Ledger)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of blocks in the chain.
+   *
+   * @return the number of blocks.
+   */
+  public int getSize() {
+    return this.size;
+  } // getSize()
+
+  /**
+   * Get the number of blocks at the start of the chain known to be correct.
+   *
+   * @return the number of verified blocks.
+   */
+  public int getVerifiedSize() {
+    return this.verified;
+  } // getVerifiedSize()
+
+  /**
+   * Get the hash of the last block.
+   *
+   * @return the hash.
+   */
+  public Hash getTailHash() {
+    return this.tailHash;
+  } // getTailHash()
+
+  /**
+   * Write the checkpoint, followed by a checksum of everything written.
+   *
+   * @param out Where to write it.
+   * @throws IOException if it cannot be written.
+   */
+  void write(OutputStream out) throws IOException {
+    CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+    DataOutputStream data = new DataOutputStream(checked);
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(this.size);
+    data.writeInt(this.verified);
+    writeBytes(data, this.tailHash.hashData);
+    data.writeInt(this.ledger.userCount());
+    for (int id = this.ledger.nextUser(0); id < this.ledger.transactions.length;
+        id = this.ledger.nextUser(id + 1)) {
+      writeBytes(data, this.ledger.users.name(id).getBytes(StandardCharsets.UTF_8));
+      data.writeInt(this.ledger.balances[id]);
+      data.writeInt(this.ledger.transactions[id]);
+    } // for
+    data.flush();
+    data.writeLong(checked.getChecksum().getValue());
+    data.flush();
+  } // write(OutputStream)
+
+  /**
+   * Read a checkpoint written by write(). Every length and count in it is checked against the
+   * bytes left before it is used, so a damaged checkpoint cannot ask for more memory than the
+   * file holds.
+   *
+   * @param in     Where to read it from.
+   * @param length The number of bytes that can be read.
+   * @return the checkpoint.
+   * @throws IOException if it cannot be read or it is damaged.
+   */
+  static Checkpoint read(InputStream in, long length) throws IOException {
+    CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+    DataInputStream data = new DataInputStream(checked);
+    if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+      throw new IOException("Not a checkpoint");
+    } // if
+    int size = data.readInt();
+    int verified = data.readInt();
+    long left = length - 4 * Integer.BYTES - Long.BYTES;
+    byte[] tail = readBytes(data, Math.min(left - Integer.BYTES, Sha256.DIGEST_BYTES));
+    left -= Integer.BYTES + tail.length;
+    Hash tailHash = Hash.wrap(tail);
+    Ledger ledger = new Ledger();
+    int users = data.readInt();
+    left -= Integer.BYTES;
+    if (users < 0 || users > left / USER_BYTES) {
+      throw new IOException("Damaged checkpoint");
+    } // if
+    for (int i = 0; i < users; i++) {
+      byte[] name = readBytes(data, left - USER_BYTES);
+      left -= USER_BYTES + name.length;
+      String user = new String(name, StandardCharsets.UTF_8);
+      int balance = data.readInt();
+      ledger.put(user, balance, data.readInt());
+    } // for
+    long expected = checked.getChecksum().getValue();
+    if (new DataInputStream(in).readLong() != expected) {
+      throw new IOException("Damaged checkpoint");
+    } // if
+    return new Checkpoint(size, verified, tailHash, ledger);
+  } // read(InputStream, long)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Write a length followed by that many bytes.
+   *
+   * @param data  Where to write them.
+   * @param bytes The bytes.
+   * @throws IOException if they cannot be written.
+   */
+  static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+    data.writeInt(bytes.length);
+    data.write(bytes);
+  } // writeBytes(DataOutputStream, byte[])
+
+  /**
+   * Read a length followed by that many bytes.
+   *
+   * @param data Where to read them from.
+   * @param max  The most bytes there can be.
+   * @return the bytes.
+   * @throws IOException if they cannot be read, or the length is negative or more than max.
+   */
+  static byte[] readBytes(DataInputStream data, long max) throws IOException {
+    int length = data.readInt();
+    if (length < 0 || length > max) {
+      throw new IOException("Damaged checkpoint");
+    } // if
+    byte[] bytes = new byte[length];
+    data.readFully(bytes);
+    return bytes;
+  } // readBytes(DataInputStream, long)
+} // class Checkpoint
@@ -0,0 +1,127 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Validates hashes against a numeric difficulty target: a hash is valid when, read as an unsigned
+ * big-endian number, it is no greater than the target. Requiring a number of leading zero bits is
+ * the special case whose target is all zeros followed by all ones. Checks read the digest bytes
+ * directly, so mining with this validator allocates nothing per attempt.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class DifficultyTarget implements HashValidator {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The largest valid hash.
+   */
+  byte[] target;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a validator that accepts hashes no greater than a target. Only hashes with as many
+   * bytes as the target are valid.
+   *
+   * @param pTarget The largest valid hash, as big-endian bytes.
+   */
+  public DifficultyTarget(byte[] pTarget) {
+    this.target = pTarget.clone();
+  } // DifficultyTarget(byte[])
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Create a validator that accepts SHA-256 hashes starting with a number of zero bits.
+   *
+   * @param bits The number of leading zero bits, between 0 and 256.
+   * @return the validator.
+   * @throws IllegalArgumentException if bits is out of range.
+   */
+  public static DifficultyTarget leadingZeroBits(int bits) {
+    if (bits < 0 || bits > Sha256.DIGEST_BYTES * Byte.SIZE) {
+      throw new IllegalArgumentException("Invalid number of zero bits: " + bits);
+    } // if
+    byte[] target = new byte[Sha256.DIGEST_BYTES];
+    Arrays.fill(target, bits / Byte.SIZE, target.length, (byte) 0xff);
+    if (bits % Byte.SIZE != 0) {
+      target[bits / Byte.SIZE] = (byte) (0xff >>> (bits % Byte.SIZE));
+    } // if
+    return new DifficultyTarget(target);
+  } // leadingZeroBits(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the largest valid hash.
+   *
+   * @return the target as a hash.
+   */
+  public Hash getTarget() {
+    return new Hash(this.target);
+  } // getTarget()
+
+  /**
+   * Get the work a block proves: the number of hashes one expects to compute to find one no
+   * greater than the target.
+   *
+   * @param blk The block.
+   * @return the expected number of hashes.
+   */
+  public double work(Block blk) {
+    double hashes = Math.pow(2, this.target.length * Byte.SIZE);
+    return hashes / new BigInteger(1, this.target).add(BigInteger.ONE).doubleValue();
+  } // work(Block)
+
+  /**
+   * Determine if a hash is no greater than the target.
+   *
+   * @param hash The hash we're checking.
+   * @return true if the hash is valid and false otherwise.
+   */
+  public boolean isValid(Hash hash) {
+    if (hash.length() != this.target.length) {
+      return false;
+    } // if
+    for (int i = 0; i < this.target.length; i++) {
+      int diff = (hash.get(i) & 0xff) - (this.target[i] & 0xff);
+      if (diff != 0) {
+        return diff < 0;
+      } // if
+    } // for
+    return true;
+  } // isValid(Hash)
+
+  /**
+   * Determine if the bytes of a hash are no greater than the target.
+   *
+   * @param digest The bytes of the hash we're checking.
+   * @return true if the hash is valid and false otherwise.
+   */
+  public boolean isValidDigest(byte[] digest) {
+    if (digest.length != this.target.length) {
+      return false;
+    } // if
+    return Arrays.compareUnsigned(digest, this.target) <= 0;
+  } // isValidDigest(byte[])
+
+  /**
+   * Get a string representation of the target.
+   *
+   * @return a string representation of the target.
+   */
+  public String toString() {
+    return "DifficultyTarget " + getTarget();
+  } // toString()
+} // class DifficultyTarget
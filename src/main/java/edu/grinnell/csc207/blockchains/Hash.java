@@ -16,9 +16,19 @@ public class Hash {
   // +--------+
 
   /**
-   * Data stored as byte array.
+   * Data stored as byte array. It is never changed after construction.
    */
-  byte[] hashData;
+  final byte[] hashData;
+
+  /**
+   * The hash code, computed once since hashes are often used as keys.
+   */
+  final int code;
+
+  /**
+   * The hex string form, computed the first time it is needed.
+   */
+  String hex;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -31,8 +41,36 @@ public class Hash {
    */
   public Hash(byte[] data) {
     this.hashData = data.clone();
+    this.code = Arrays.hashCode(this.hashData);
   } // Hash(byte[])
 
+  /**
+   * Create a new encapsulated hash that takes ownership of an array without copying it, along
+   * with the array's hash code.
+   *
+   * @param data  The data, which no one else may hold on to.
+   * @param pCode The hash code of the data.
+   */
+  private Hash(byte[] data, int pCode) {
+    this.hashData = data;
+    this.code = pCode;
+  } // Hash(byte[], int)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Wrap a freshly computed array in a hash without copying it. The caller must not keep or
+   * change the array afterwards.
+   *
+   * @param data The data for the hash.
+   * @return the new hash.
+   */
+  static Hash wrap(byte[] data) {
+    return new Hash(data, Arrays.hashCode(data));
+  } // wrap(byte[])
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -71,7 +109,12 @@ public class Hash {
    * @return the hash as a hex string.
    */
   public String toString() {
-    return HexFormat.of().formatHex(hashData).toUpperCase();
+    String result = this.hex;
+    if (result == null) {
+      result = HexFormat.of().withUpperCase().formatHex(hashData);
+      this.hex = result;
+    } // if
+    return result;
   } // toString()
 
   /**
@@ -81,8 +124,12 @@ public class Hash {
    * @return true if the two objects are conceptually equal and false otherwise.
    */
   public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    } // if
     if (other instanceof Hash) {
-      return Arrays.equals(hashData, ((Hash) other).getBytes());
+      Hash that = (Hash) other;
+      return this.code == that.code && Arrays.equals(this.hashData, that.hashData);
     } // if
     return false;
   } // equals(Object)
@@ -93,6 +140,6 @@ public class Hash {
    * @return the hash code.
    */
   public int hashCode() {
-    return this.toString().hashCode();
+    return this.code;
   } // hashCode()
 } // class Hash
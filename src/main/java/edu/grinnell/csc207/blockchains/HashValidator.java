@@ -16,4 +16,89 @@ public interface HashValidator {
    */
   boolean isValid(Hash hash);
 
+  /**
+   * Determine if the raw bytes of a hash meet the criterion. Mining calls this for every
+   * attempt, so validators that can read the bytes directly should override it to avoid
+   * building a Hash.
+   *
+   * @param digest
+   *   The bytes of the hash we're checking. They must not be kept or changed.
+   *
+   * @return true if the hash is valid and false otherwise.
+   */
+  default boolean isValidDigest(byte[] digest) {
+    return isValid(new Hash(digest));
+  } // isValidDigest(byte[])
+
+  /**
+   * Determine if a block meets the criterion for its place in a chain. By default, that is just
+   * whether its hash is valid; validators whose criterion changes along the chain override this.
+   *
+   * @param blk       The block we're checking.
+   * @param num       The position of the block in the chain.
+   * @param prevNonce The nonce of the block before it, or 0 for the first block.
+   *
+   * @return true if the block is valid and false otherwise.
+   */
+  default boolean isValidBlock(Block blk, int num, long prevNonce) {
+    return isValid(blk.getHash());
+  } // isValidBlock(Block, int, long)
+
+  /**
+   * Get the nonce at which mining the next block should start. Validators that record something
+   * in each block's nonce keep it in the high bits of this nonce.
+   *
+   * @return the first nonce to try.
+   */
+  default long startNonce() {
+    return 0;
+  } // startNonce()
+
+  /**
+   * Note that a chain checked by this validator has grown or shrunk. Chains call this when they
+   * are created and after each block is added or removed.
+   *
+   * @param size      The number of blocks now in the chain.
+   * @param lastNonce The nonce of the last block, or 0 if there are none.
+   */
+  default void resized(int size, long lastNonce) {
+  } // resized(int, long)
+
+  /**
+   * Get the validator that mining must meet for a block whose nonce starts at a given value. By
+   * default, that is this validator; validators that record what a block needs in its nonce
+   * return one that checks just that.
+   *
+   * @param nonce The first nonce to try.
+   *
+   * @return the validator for mining.
+   */
+  default HashValidator forNonce(long nonce) {
+    return this;
+  } // forNonce(long)
+
+  /**
+   * Get the validator that one chain should use. Chains call this when they are created, so
+   * that validators that keep track of a chain through resized() can give each chain a copy
+   * of that state. By default, that is this validator.
+   *
+   * @return the validator for the chain.
+   */
+  default HashValidator forChain() {
+    return this;
+  } // forChain()
+
+  /**
+   * Get the work a block proves: the number of hashes one expects to compute to find a hash
+   * that meets what the block was mined for. By default, every block counts as 1, since a
+   * validator that does not describe its criterion says nothing about the work.
+   *
+   * @param blk The block, which meets the criterion.
+   *
+   * @return the expected number of hashes.
+   */
+  default double work(Block blk) {
+    return 1;
+  } // work(Block)
+
 } // interface HashValidator
@@ -0,0 +1,144 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of how long an operation takes. Each duration is counted in the bucket for its
+ * power of two in nanoseconds, so recording one costs a few atomic additions and never
+ * allocates, and percentiles are accurate to within a factor of two. Threads may record and read
+ * at the same time.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class LatencyHistogram {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of buckets: one for 0 and one for each bit of a long.
+   */
+  static final int BUCKETS = Long.SIZE;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of durations in each bucket. Bucket b holds the durations below 2^b nanoseconds
+   * and at least 2^(b-1).
+   */
+  final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+  /**
+   * The number of durations recorded.
+   */
+  final LongAdder count = new LongAdder();
+
+  /**
+   * The sum of the durations recorded, in nanoseconds.
+   */
+  final LongAdder total = new LongAdder();
+
+  /**
+   * The longest duration recorded, in nanoseconds.
+   */
+  final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Record one duration.
+   *
+   * @param nanos The duration, in nanoseconds. Negative durations count as 0.
+   */
+  public void record(long nanos) {
+    long d = Math.max(nanos, 0);
+    this.buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(d));
+    this.count.increment();
+    this.total.add(d);
+    this.max.accumulate(d);
+  } // record(long)
+
+  /**
+   * Get the number of durations recorded.
+   *
+   * @return the count.
+   */
+  public long getCount() {
+    return this.count.sum();
+  } // getCount()
+
+  /**
+   * Get the sum of the durations recorded.
+   *
+   * @return the total, in nanoseconds.
+   */
+  public long getTotalNanos() {
+    return this.total.sum();
+  } // getTotalNanos()
+
+  /**
+   * Get the average duration.
+   *
+   * @return the mean, in nanoseconds, or 0 if nothing has been recorded.
+   */
+  public double getMeanNanos() {
+    long n = getCount();
+    return (n == 0) ? 0 : (double) getTotalNanos() / n;
+  } // getMeanNanos()
+
+  /**
+   * Get the longest duration recorded.
+   *
+   * @return the maximum, in nanoseconds.
+   */
+  public long getMaxNanos() {
+    return this.max.get();
+  } // getMaxNanos()
+
+  /**
+   * Estimate a percentile of the durations, as the upper end of the bucket it falls in.
+   *
+   * @param fraction The fraction of durations that should be no longer, between 0 and 1.
+   * @return a duration, in nanoseconds, at least as long as that fraction of the durations and
+   *         less than twice the true percentile, or 0 if nothing has been recorded.
+   * @throws IllegalArgumentException if the fraction is not between 0 and 1.
+   */
+  public long percentile(double fraction) {
+    if (!(fraction >= 0 && fraction <= 1)) {
+      throw new IllegalArgumentException("Invalid fraction: " + fraction);
+    } // if
+    long[] counts = new long[BUCKETS];
+    long n = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      counts[b] = this.buckets.get(b);
+      n += counts[b];
+    } // for
+    long rank = (long) Math.ceil(fraction * n);
+    long seen = 0;
+    for (int b = 0; b < BUCKETS; b++) {
+      seen += counts[b];
+      if (seen >= rank && seen > 0) {
+        return Math.min((b == BUCKETS - 1) ? Long.MAX_VALUE : (1L << b) - 1, getMaxNanos());
+      } // if
+    } // for
+    return 0;
+  } // percentile(double)
+
+  /**
+   * Get a string representation of the histogram.
+   *
+   * @return the count and the mean, median, 99th percentile, and maximum, in microseconds.
+   */
+  public String toString() {
+    return String.format("count=%d mean=%.1fus p50<=%.1fus p99<=%.1fus max=%.1fus", getCount(),
+        getMeanNanos() / 1e3, percentile(0.5) / 1e3, percentile(0.99) / 1e3,
+        getMaxNanos() / 1e3);
+  } // toString()
+} // class LatencyHistogram
@@ -0,0 +1,303 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The balances of every user in a chain, kept up to date one transaction at a time. Applying a
+ * transaction and then reverting it leaves the ledger as it was, including which users it knows.
+ *
+ * <p>Users are known by their ids in a UserDictionary, and balances are kept in primitive arrays
+ * indexed by id, so transactions given by id are applied without boxing or hashing names. A
+ * ledger may share its dictionary with a BlockStore, so that the ids stored with each block can
+ * be applied directly.</p>
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class Ledger {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The ids of the users.
+   */
+  UserDictionary users;
+
+  /**
+   * The balance of each user, by id.
+   */
+  int[] balances;
+
+  /**
+   * The number of applied transactions that involve each user, by id.
+   */
+  int[] transactions;
+
+  /**
+   * The number of users involved in some applied transaction.
+   */
+  int active;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a ledger with no users.
+   */
+  public Ledger() {
+    this(new UserDictionary());
+  } // Ledger()
+
+  /**
+   * Create a ledger with no balances that names users with the ids in a dictionary.
+   *
+   * @param pUsers The dictionary.
+   */
+  public Ledger(UserDictionary pUsers) {
+    this.users = pUsers;
+    this.balances = new int[Math.max(16, pUsers.size())];
+    this.transactions = new int[this.balances.length];
+  } // Ledger(UserDictionary)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Record a transaction.
+   *
+   * @param t The transaction.
+   */
+  public void apply(Transaction t) {
+    apply(this.users.id(t.getSource()), this.users.id(t.getTarget()), t.getAmount());
+  } // apply(Transaction)
+
+  /**
+   * Record a transaction between users given by id.
+   *
+   * @param source The id of the source, or UserDictionary.NOBODY for a deposit.
+   * @param target The id of the target.
+   * @param amount The amount.
+   */
+  public void apply(int source, int target, int amount) {
+    ensureCapacity(Math.max(source, target) + 1);
+    if (source != UserDictionary.NOBODY) {
+      this.balances[source] -= amount;
+      if (this.transactions[source]++ == 0) {
+        this.active++;
+      } // if
+    } // if
+    this.balances[target] += amount;
+    if (this.transactions[target]++ == 0) {
+      this.active++;
+    } // if
+  } // apply(int, int, int)
+
+  /**
+   * Undo a transaction, which must be the most recently applied one that has not been reverted.
+   *
+   * @param t The transaction.
+   */
+  public void revert(Transaction t) {
+    revert(this.users.find(t.getSource()), this.users.find(t.getTarget()), t.getAmount());
+  } // revert(Transaction)
+
+  /**
+   * Undo a transaction between users given by id, which must be the most recently applied one
+   * that has not been reverted.
+   *
+   * @param source The id of the source, or UserDictionary.NOBODY for a deposit.
+   * @param target The id of the target.
+   * @param amount The amount.
+   */
+  public void revert(int source, int target, int amount) {
+    undo(target, -amount);
+    if (source != UserDictionary.NOBODY) {
+      undo(source, amount);
+    } // if
+  } // revert(int, int, int)
+
+  /**
+   * Find one user's balance.
+   *
+   * @param user The user whose balance we want to find.
+   * @return that user's balance (or 0, if the user is not in the ledger).
+   */
+  public int balance(String user) {
+    return balanceOf(this.users.find(user));
+  } // balance(String)
+
+  /**
+   * Find the balance of a user given by id.
+   *
+   * @param id The id of the user.
+   * @return that user's balance (or 0, if the user is not in the ledger).
+   */
+  public int balanceOf(int id) {
+    if (id < 0 || id >= this.balances.length) {
+      return 0;
+    } // if
+    return this.balances[id];
+  } // balanceOf(int)
+
+  /**
+   * Determine if a user appears in the ledger.
+   *
+   * @param user The user.
+   * @return true if some applied transaction involves the user.
+   */
+  public boolean contains(String user) {
+    int id = this.users.find(user);
+    return id >= 0 && id < this.transactions.length && this.transactions[id] > 0;
+  } // contains(String)
+
+  /**
+   * Get the number of users in the ledger.
+   *
+   * @return the number of users.
+   */
+  public int userCount() {
+    return this.active;
+  } // userCount()
+
+  /**
+   * Get the dictionary that gives the users their ids.
+   *
+   * @return the dictionary.
+   */
+  public UserDictionary dictionary() {
+    return this.users;
+  } // dictionary()
+
+  /**
+   * Get an iterator of all the users in the ledger.
+   *
+   * @return an iterator of the users.
+   */
+  public Iterator<String> users() {
+    return new Iterator<String>() {
+      int id = nextUser(0);
+
+      public boolean hasNext() {
+        return id < transactions.length;
+      } // hasNext()
+
+      public String next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        String name = users.name(id);
+        id = nextUser(id + 1);
+        return name;
+      } // next()
+    };
+  } // users()
+
+  /**
+   * Make an independent copy of the ledger, with its own copy of the dictionary.
+   *
+   * @return the copy.
+   */
+  public Ledger copy() {
+    Ledger result = new Ledger(this.users.copy());
+    result.balances = this.balances.clone();
+    result.transactions = this.transactions.clone();
+    result.active = this.active;
+    return result;
+  } // copy()
+
+  /**
+   * Make a copy of the ledger that names its users with another dictionary, such as a copy of
+   * this one, that has at least the same ids.
+   *
+   * @param pUsers The dictionary.
+   * @return the copy.
+   */
+  Ledger copyBalances(UserDictionary pUsers) {
+    Ledger result = new Ledger(pUsers);
+    result.balances = this.balances.clone();
+    result.transactions = this.transactions.clone();
+    result.active = this.active;
+    return result;
+  } // copyBalances(UserDictionary)
+
+  /**
+   * Copy the balances into a map.
+   *
+   * @return a new map from user names to balances.
+   */
+  public HashMap<String, Integer> toMap() {
+    HashMap<String, Integer> result = new HashMap<String, Integer>();
+    for (int id = nextUser(0); id < this.transactions.length; id = nextUser(id + 1)) {
+      result.put(this.users.name(id), this.balances[id]);
+    } // for
+    return result;
+  } // toMap()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Set a user's account directly, as when restoring a saved ledger. The user must not yet be in
+   * the ledger.
+   *
+   * @param user         The user.
+   * @param balance      The user's balance.
+   * @param transactions The number of transactions that involve the user.
+   */
+  void put(String user, int balance, int transactions) {
+    int id = this.users.id(user);
+    ensureCapacity(id + 1);
+    this.balances[id] = balance;
+    this.transactions[id] = transactions;
+    if (transactions > 0) {
+      this.active++;
+    } // if
+  } // put(String, int, int)
+
+  /**
+   * Undo one side of a transaction, forgetting the user once no transaction involves them.
+   *
+   * @param id     The id of the user.
+   * @param change The change to their balance.
+   */
+  void undo(int id, int change) {
+    this.balances[id] += change;
+    if (--this.transactions[id] == 0) {
+      this.active--;
+    } // if
+  } // undo(int, int)
+
+  /**
+   * Find the first user in the ledger at or after an id.
+   *
+   * @param from The id to start from.
+   * @return the id of the user, or the length of the arrays if there is none.
+   */
+  int nextUser(int from) {
+    int id = from;
+    while (id < this.transactions.length && this.transactions[id] == 0) {
+      id++;
+    } // while
+    return id;
+  } // nextUser(int)
+
+  /**
+   * Make sure the arrays have room for a number of ids.
+   *
+   * @param ids The number of ids.
+   */
+  void ensureCapacity(int ids) {
+    if (ids > this.balances.length) {
+      int length = Math.max(ids, this.balances.length * 2);
+      this.balances = Arrays.copyOf(this.balances, length);
+      this.transactions = Arrays.copyOf(this.transactions, length);
+    } // if
+  } // ensureCapacity(int)
+} // class Ledger
@@ -0,0 +1,238 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactions waiting to go into a chain. Any thread may submit a transaction; it waits, in
+ * priority order, until a MiningPipeline takes it, mines it into a block, and appends the block.
+ * A transfer is only accepted if its source can pay for it out of their balance in the chain less
+ * everything they have already submitted, so whatever order the transactions are mined in, none
+ * of them overdraws.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class Mempool {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * First come, first served.
+   */
+  public static final Comparator<Transaction> FIFO = (a, b) -> 0;
+
+  /**
+   * Larger amounts first; equal amounts first come, first served.
+   */
+  public static final Comparator<Transaction> LARGEST_FIRST =
+      Comparator.comparingInt(Transaction::getAmount).reversed();
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chain the transactions go into.
+   */
+  BlockChain chain;
+
+  /**
+   * The transactions waiting to be mined, in priority order.
+   */
+  PriorityBlockingQueue<Pending> queue;
+
+  /**
+   * The total amount each user has submitted to pay that is not yet in the chain. Guarded by
+   * itself.
+   */
+  HashMap<String, Long> debits;
+
+  /**
+   * The number of transactions submitted so far, used to break ties in priority.
+   */
+  AtomicLong submitted;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a mempool that serves transactions in the order they are submitted.
+   *
+   * @param pChain The chain the transactions go into.
+   */
+  public Mempool(BlockChain pChain) {
+    this(pChain, FIFO);
+  } // Mempool(BlockChain)
+
+  /**
+   * Create a mempool that serves transactions in priority order. Transactions of equal priority
+   * are served in the order they are submitted.
+   *
+   * @param pChain    The chain the transactions go into.
+   * @param pPriority Orders the transactions, those to mine first first.
+   */
+  public Mempool(BlockChain pChain, Comparator<Transaction> pPriority) {
+    this.chain = pChain;
+    Comparator<Pending> order = Comparator.comparing((Pending p) -> p.transaction, pPriority);
+    this.queue = new PriorityBlockingQueue<Pending>(64, order.thenComparingLong((p) -> p.seq));
+    this.debits = new HashMap<String, Long>();
+    this.submitted = new AtomicLong();
+  } // Mempool(BlockChain, Comparator)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Submit a transaction. If it is rejected, the returned future fails with an
+   * IllegalArgumentException. If it is accepted, the future completes with the block that holds
+   * it once that block is in the chain, or fails if the transaction can no longer be paid for
+   * when it is mined or the pipeline is closed first.
+   *
+   * @param t The transaction.
+   * @return a future for the block that holds the transaction.
+   */
+  public CompletableFuture<Block> submit(Transaction t) {
+    CompletableFuture<Block> result = new CompletableFuture<Block>();
+    if (t.getAmount() < 0) {
+      result.completeExceptionally(new IllegalArgumentException("Negative amount in " + t));
+      return result;
+    } // if
+    synchronized (this.debits) {
+      if (!t.getSource().isEmpty()) {
+        long owed = this.debits.getOrDefault(t.getSource(), 0L) + t.getAmount();
+        if (this.chain.balance(t.getSource()) < owed) {
+          result.completeExceptionally(
+              new IllegalArgumentException(t.getSource() + " cannot pay for " + t));
+          return result;
+        } // if
+        this.debits.put(t.getSource(), owed);
+      } // if
+      this.queue.add(new Pending(t, result, this.submitted.getAndIncrement()));
+    } // synchronized
+    return result;
+  } // submit(Transaction)
+
+  /**
+   * Get the number of transactions waiting to be mined.
+   *
+   * @return the number of transactions.
+   */
+  public int size() {
+    return this.queue.size();
+  } // size()
+
+  /**
+   * Get the total amount a user has submitted to pay that is not yet in the chain.
+   *
+   * @param user The user.
+   * @return the amount.
+   */
+  public long pendingDebit(String user) {
+    synchronized (this.debits) {
+      return this.debits.getOrDefault(user, 0L);
+    } // synchronized
+  } // pendingDebit(String)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Wait for transactions, then take up to a number of them in priority order.
+   *
+   * @param max     The most transactions to take.
+   * @param timeout How long to wait, in milliseconds.
+   * @return the transactions, which is empty if none arrived in time.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  List<Pending> take(int max, long timeout) throws InterruptedException {
+    ArrayList<Pending> result = new ArrayList<Pending>();
+    Pending first = this.queue.poll(timeout, TimeUnit.MILLISECONDS);
+    if (first != null) {
+      result.add(first);
+      this.queue.drainTo(result, max - 1);
+    } // if
+    return result;
+  } // take(int, long)
+
+  /**
+   * Stop counting a transaction against its source, as when it is dropped or its block is already
+   * in the chain. Released any earlier, a transfer would count neither in the chain nor here.
+   *
+   * @param t The transaction.
+   */
+  void release(Transaction t) {
+    if (!t.getSource().isEmpty()) {
+      synchronized (this.debits) {
+        long owed = this.debits.get(t.getSource()) - t.getAmount();
+        if (owed == 0) {
+          this.debits.remove(t.getSource());
+        } else {
+          this.debits.put(t.getSource(), owed);
+        } // if-else
+      } // synchronized
+    } // if
+  } // release(Transaction)
+
+  /**
+   * Drop every waiting transaction, cancelling its future.
+   */
+  void cancelAll() {
+    ArrayList<Pending> dropped = new ArrayList<Pending>();
+    this.queue.drainTo(dropped);
+    for (Pending p : dropped) {
+      release(p.transaction);
+    } // for
+    for (Pending p : dropped) {
+      p.result.completeExceptionally(new CancellationException("The mempool was closed"));
+    } // for
+  } // cancelAll()
+
+  // +----------------+----------------------------------------------
+  // | Nested classes |
+  // +----------------+
+
+  /**
+   * A transaction waiting to be mined.
+   */
+  static class Pending {
+    /**
+     * The transaction.
+     */
+    final Transaction transaction;
+
+    /**
+     * Completes with the block that holds the transaction.
+     */
+    final CompletableFuture<Block> result;
+
+    /**
+     * The order in which the transaction was submitted.
+     */
+    final long seq;
+
+    /**
+     * Create a waiting transaction.
+     *
+     * @param pTransaction The transaction.
+     * @param pResult      Completes with the block that holds the transaction.
+     * @param pSeq         The order in which the transaction was submitted.
+     */
+    Pending(Transaction pTransaction, CompletableFuture<Block> pResult, long pSeq) {
+      this.transaction = pTransaction;
+      this.result = pResult;
+      this.seq = pSeq;
+    } // Pending(Transaction, CompletableFuture, long)
+  } // class Pending
+} // class Mempool
@@ -0,0 +1,96 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the Merkle root of a batch of transactions, a single hash that commits to every
+ * transaction in the batch and their order. Each transaction is hashed into a leaf, and each pair
+ * of neighboring hashes is hashed into one hash on the level above until a single hash is left.
+ * A hash without a partner moves up a level unchanged. Leaves and pairs are hashed with
+ * different leading bytes, so a pair can never pass for a leaf.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class MerkleTree {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The byte that starts the hash of a leaf.
+   */
+  static final byte LEAF = 0;
+
+  /**
+   * The byte that starts the hash of a pair.
+   */
+  static final byte NODE = 1;
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Compute the Merkle root of a batch of transactions.
+   *
+   * @param transactions The transactions, in order.
+   * @return the root.
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public static Hash root(List<Transaction> transactions) {
+    int count = transactions.size();
+    if (count == 0) {
+      throw new IllegalArgumentException("A batch needs at least one transaction");
+    } // if
+    MessageDigest md = Block.HASHERS.get();
+    byte[] level = new byte[count * Sha256.DIGEST_BYTES];
+    for (int i = 0; i < count; i++) {
+      byte[] out = leaf(md, transactions.get(i));
+      System.arraycopy(out, 0, level, i * Sha256.DIGEST_BYTES, Sha256.DIGEST_BYTES);
+    } // for
+    while (count > 1) {
+      int pairs = count / 2;
+      for (int i = 0; i < pairs; i++) {
+        md.reset();
+        md.update(NODE);
+        md.update(level, 2 * i * Sha256.DIGEST_BYTES, 2 * Sha256.DIGEST_BYTES);
+        byte[] out = md.digest();
+        System.arraycopy(out, 0, level, i * Sha256.DIGEST_BYTES, Sha256.DIGEST_BYTES);
+      } // for
+      if (count % 2 == 1) {
+        System.arraycopy(level, (count - 1) * Sha256.DIGEST_BYTES, level,
+            pairs * Sha256.DIGEST_BYTES, Sha256.DIGEST_BYTES);
+      } // if
+      count = pairs + count % 2;
+    } // while
+    return Hash.wrap(Arrays.copyOf(level, Sha256.DIGEST_BYTES));
+  } // root(List<Transaction>)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Hash one transaction into a leaf. Names are written with their lengths, so that moving
+   * characters from one name to the other changes the hash.
+   *
+   * @param md The digest to use.
+   * @param t  The transaction.
+   * @return the hash of the leaf.
+   */
+  static byte[] leaf(MessageDigest md, Transaction t) {
+    byte[] source = t.getSource().getBytes(StandardCharsets.UTF_8);
+    byte[] target = t.getTarget().getBytes(StandardCharsets.UTF_8);
+    md.reset();
+    md.update(LEAF);
+    md.update(ByteBuffer.allocate(3 * Integer.BYTES + source.length + target.length)
+        .putInt(source.length).put(source).putInt(target.length).put(target)
+        .putInt(t.getAmount()).array());
+    return md.digest();
+  } // leaf(MessageDigest, Transaction)
+} // class MerkleTree
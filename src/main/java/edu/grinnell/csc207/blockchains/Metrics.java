@@ -0,0 +1,200 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and times the work a chain does: the hashes computed while mining, the blocks appended
+ * and rejected, balance lookups, and how long mining, appending, and validation take. Counters
+ * are LongAdders and latencies go into LatencyHistograms, so recording stays cheap enough to
+ * leave on, even with several threads mining and appending. The chain's size and number of users
+ * are read from the chain when asked for.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class Metrics {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chain being measured.
+   */
+  final BlockChain chain;
+
+  /**
+   * The number of hashes computed while searching for nonces.
+   */
+  final LongAdder hashes = new LongAdder();
+
+  /**
+   * The number of blocks added to the chain.
+   */
+  final LongAdder appended = new LongAdder();
+
+  /**
+   * The number of blocks the chain refused to add.
+   */
+  final LongAdder rejected = new LongAdder();
+
+  /**
+   * The number of balances looked up.
+   */
+  final LongAdder balanceLookups = new LongAdder();
+
+  /**
+   * How long each search for a nonce took.
+   */
+  final LatencyHistogram mining = new LatencyHistogram();
+
+  /**
+   * How long each call to append took, including its checks.
+   */
+  final LatencyHistogram appending = new LatencyHistogram();
+
+  /**
+   * How long each validation of the whole chain took.
+   */
+  final LatencyHistogram validating = new LatencyHistogram();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create metrics for a chain, with every counter at zero.
+   *
+   * @param pChain The chain.
+   */
+  Metrics(BlockChain pChain) {
+    this.chain = pChain;
+  } // Metrics(BlockChain)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of hashes computed while searching for nonces.
+   *
+   * @return the number of hashes.
+   */
+  public long getHashes() {
+    return this.hashes.sum();
+  } // getHashes()
+
+  /**
+   * Get the average mining hash rate, over the time spent mining.
+   *
+   * @return the hashes per second, or 0 if nothing has been mined.
+   */
+  public double getHashRate() {
+    long nanos = this.mining.getTotalNanos();
+    return (nanos == 0) ? 0 : getHashes() * 1e9 / nanos;
+  } // getHashRate()
+
+  /**
+   * Get the number of blocks added to the chain, including blocks later removed.
+   *
+   * @return the number of blocks.
+   */
+  public long getAppended() {
+    return this.appended.sum();
+  } // getAppended()
+
+  /**
+   * Get the number of blocks the chain refused to add.
+   *
+   * @return the number of blocks.
+   */
+  public long getRejected() {
+    return this.rejected.sum();
+  } // getRejected()
+
+  /**
+   * Get the number of balances looked up.
+   *
+   * @return the number of lookups.
+   */
+  public long getBalanceLookups() {
+    return this.balanceLookups.sum();
+  } // getBalanceLookups()
+
+  /**
+   * Get how long searches for nonces took.
+   *
+   * @return the histogram.
+   */
+  public LatencyHistogram getMining() {
+    return this.mining;
+  } // getMining()
+
+  /**
+   * Get how long appends took.
+   *
+   * @return the histogram.
+   */
+  public LatencyHistogram getAppending() {
+    return this.appending;
+  } // getAppending()
+
+  /**
+   * Get how long validations of the whole chain took.
+   *
+   * @return the histogram.
+   */
+  public LatencyHistogram getValidating() {
+    return this.validating;
+  } // getValidating()
+
+  /**
+   * Get the number of blocks in the chain now.
+   *
+   * @return the size of the chain.
+   */
+  public int getChainSize() {
+    return this.chain.getSize();
+  } // getChainSize()
+
+  /**
+   * Get the number of users in the chain now.
+   *
+   * @return the number of users.
+   */
+  public int getUserCount() {
+    return this.chain.ledger.userCount();
+  } // getUserCount()
+
+  /**
+   * Record one search for a nonce.
+   *
+   * @param attempts The number of hashes computed.
+   * @param nanos    How long the search took, or a negative number if it did not find a nonce.
+   */
+  void mined(long attempts, long nanos) {
+    this.hashes.add(attempts);
+    if (nanos >= 0) {
+      this.mining.record(nanos);
+    } // if
+  } // mined(long, long)
+
+  /**
+   * Get a string representation of the metrics, one per line.
+   *
+   * @return a string representation of the metrics.
+   */
+  public String toString() {
+    return String.format("""
+        blocks: %d
+        users: %d
+        appended: %d
+        rejected: %d
+        balance lookups: %d
+        hashes: %d (%.0f/s)
+        mining: %s
+        append: %s
+        validate: %s""", getChainSize(), getUserCount(), getAppended(), getRejected(),
+        getBalanceLookups(), getHashes(), getHashRate(), this.mining, this.appending,
+        this.validating);
+  } // toString()
+} // class Metrics
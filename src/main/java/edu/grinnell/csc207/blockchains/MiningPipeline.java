@@ -0,0 +1,250 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Mines the transactions in a mempool into a chain, continuously, on a background thread. The
+ * pipeline takes up to a batch of transactions at a time in priority order, mines them into one
+ * block, and appends the block as soon as a nonce is found. A single transaction gets a block of
+ * its own; several go into a batch under a Merkle root.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class MiningPipeline implements AutoCloseable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default most transactions to mine into one block.
+   */
+  public static final int DEFAULT_MAX_BATCH = 1_000;
+
+  /**
+   * How long to wait for transactions before checking whether to stop, in milliseconds.
+   */
+  static final long POLL_MILLIS = 100;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chain the blocks go into.
+   */
+  BlockChain chain;
+
+  /**
+   * Where the transactions come from.
+   */
+  Mempool mempool;
+
+  /**
+   * The most transactions to mine into one block.
+   */
+  int maxBatch;
+
+  /**
+   * The thread that does the work.
+   */
+  Thread worker;
+
+  /**
+   * Whether the pipeline should stop.
+   */
+  volatile boolean closed;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start mining the transactions in a mempool into its chain, DEFAULT_MAX_BATCH at a time.
+   *
+   * @param pMempool The mempool.
+   */
+  public MiningPipeline(Mempool pMempool) {
+    this(pMempool, DEFAULT_MAX_BATCH);
+  } // MiningPipeline(Mempool)
+
+  /**
+   * Start mining the transactions in a mempool into its chain.
+   *
+   * @param pMempool  The mempool.
+   * @param pMaxBatch The most transactions to mine into one block.
+   * @throws IllegalArgumentException if pMaxBatch is not positive.
+   */
+  public MiningPipeline(Mempool pMempool, int pMaxBatch) {
+    if (pMaxBatch < 1) {
+      throw new IllegalArgumentException("A block needs at least one transaction");
+    } // if
+    this.chain = pMempool.chain;
+    this.mempool = pMempool;
+    this.maxBatch = pMaxBatch;
+    this.worker = new Thread(this::run, "mining-pipeline");
+    this.worker.setDaemon(true);
+    this.worker.start();
+  } // MiningPipeline(Mempool, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Stop the pipeline. The transactions still waiting, and any being mined, are dropped and their
+   * futures cancelled. An interrupt while waiting for the pipeline to stop does not cut the wait
+   * short; the thread's interrupt status is restored afterwards.
+   */
+  public void close() {
+    this.closed = true;
+    this.worker.interrupt();
+    boolean interrupted = false;
+    while (this.worker.isAlive()) {
+      try {
+        this.worker.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } // try-catch
+    } // while
+    this.mempool.cancelAll();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    } // if
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Take and mine transactions until closed.
+   */
+  void run() {
+    try {
+      while (!this.closed) {
+        List<Mempool.Pending> batch = this.mempool.take(this.maxBatch, POLL_MILLIS);
+        if (!batch.isEmpty()) {
+          mine(batch);
+        } // if
+      } // while
+    } catch (InterruptedException e) {
+      return;
+    } // try-catch
+  } // run()
+
+  /**
+   * Mine a batch of transactions into a block and append it, mining again if the chain moves on
+   * in the meantime. If mining or appending fails, the batch is dropped with the failure and the
+   * pipeline goes on to the next.
+   *
+   * @param taken The transactions.
+   * @throws InterruptedException if interrupted while mining.
+   */
+  void mine(List<Mempool.Pending> taken) throws InterruptedException {
+    List<Mempool.Pending> batch = taken;
+    Block mined = null;
+    while (mined == null) {
+      Hash tail = this.chain.tailHash();
+      batch = affordable(batch);
+      if (batch.isEmpty()) {
+        return;
+      } // if
+      List<Mempool.Pending> current = batch;
+      CompletableFuture<Block> search = null;
+      try {
+        Block template = this.chain.read(() -> template(current));
+        if (!template.getPrevHash().equals(tail)) {
+          // The chain moved while the balances were checked; check them again.
+          continue;
+        } // if
+        search = this.chain.mineAsync(template);
+        mined = search.get();
+        if (!this.chain.tryAppend(mined)) {
+          mined = null;
+        } // if
+      } catch (InterruptedException e) {
+        search.cancel(true);
+        drop(batch, new CancellationException("The pipeline was closed"));
+        throw e;
+      } catch (ExecutionException e) {
+        drop(batch, e.getCause());
+        return;
+      } catch (RuntimeException e) {
+        drop(batch, e);
+        return;
+      } // try-catch
+    } // while
+    for (Mempool.Pending p : batch) {
+      this.mempool.release(p.transaction);
+      p.result.complete(mined);
+    } // for
+  } // mine(List<Mempool.Pending>)
+
+  /**
+   * Keep the transactions in a batch that can still be paid for, in order, from the balances in
+   * the chain, and fail the rest.
+   *
+   * @param batch The transactions.
+   * @return the transactions that can be paid for.
+   */
+  List<Mempool.Pending> affordable(List<Mempool.Pending> batch) {
+    ArrayList<Mempool.Pending> result = new ArrayList<Mempool.Pending>();
+    HashMap<String, Long> changes = new HashMap<String, Long>();
+    for (Mempool.Pending p : batch) {
+      Transaction t = p.transaction;
+      if (!t.getSource().isEmpty()) {
+        long balance = this.chain.balance(t.getSource()) + changes.getOrDefault(t.getSource(), 0L);
+        if (balance < t.getAmount()) {
+          this.mempool.release(t);
+          p.result.completeExceptionally(
+              new IllegalStateException(t.getSource() + " can no longer pay for " + t));
+          continue;
+        } // if
+        changes.merge(t.getSource(), (long) -t.getAmount(), Long::sum);
+      } // if
+      changes.merge(t.getTarget(), (long) t.getAmount(), Long::sum);
+      result.add(p);
+    } // for
+    return result;
+  } // affordable(List<Mempool.Pending>)
+
+  /**
+   * Make an unmined block for the end of the chain that holds a batch of transactions, starting
+   * from the nonce the chain's validator asks for. The caller reads the chain's size, tail, and
+   * validator together, as with BlockChain.read.
+   *
+   * @param batch The transactions.
+   * @return the block.
+   */
+  Block template(List<Mempool.Pending> batch) {
+    long nonce = this.chain.check.startNonce();
+    if (batch.size() == 1) {
+      return new Block(this.chain.size, batch.get(0).transaction, this.chain.tailHash(), nonce,
+          null);
+    } // if
+    Transaction[] transactions = new Transaction[batch.size()];
+    for (int i = 0; i < transactions.length; i++) {
+      transactions[i] = batch.get(i).transaction;
+    } // for
+    return new Block(this.chain.size, transactions, this.chain.tailHash(), nonce, null);
+  } // template(List<Mempool.Pending>)
+
+  /**
+   * Drop a batch of transactions, failing their futures.
+   *
+   * @param batch The transactions.
+   * @param cause Why they were dropped.
+   */
+  void drop(List<Mempool.Pending> batch, Throwable cause) {
+    for (Mempool.Pending p : batch) {
+      this.mempool.release(p.transaction);
+      p.result.completeExceptionally(cause);
+    } // for
+  } // drop(List<Mempool.Pending>, Throwable)
+} // class MiningPipeline
@@ -0,0 +1,91 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * A report on how far a mining search has gotten.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class MiningProgress {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Nanoseconds in one second.
+   */
+  static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of nonces tried so far.
+   */
+  long attempts;
+
+  /**
+   * The nanoseconds since the search started.
+   */
+  long elapsedNanos;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new progress report.
+   *
+   * @param pAttempts     The number of nonces tried so far.
+   * @param pElapsedNanos The nanoseconds since the search started.
+   */
+  public MiningProgress(long pAttempts, long pElapsedNanos) {
+    this.attempts = pAttempts;
+    this.elapsedNanos = pElapsedNanos;
+  } // MiningProgress(long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of nonces tried so far.
+   *
+   * @return the number of attempts.
+   */
+  public long getAttempts() {
+    return this.attempts;
+  } // getAttempts()
+
+  /**
+   * Get the time since the search started.
+   *
+   * @return the elapsed time in nanoseconds.
+   */
+  public long getElapsedNanos() {
+    return this.elapsedNanos;
+  } // getElapsedNanos()
+
+  /**
+   * Get the average number of hashes computed per second.
+   *
+   * @return the hash rate, or 0 if no time has passed.
+   */
+  public double getHashRate() {
+    if (this.elapsedNanos <= 0) {
+      return 0;
+    } // if
+    return this.attempts * NANOS_PER_SECOND / this.elapsedNanos;
+  } // getHashRate()
+
+  /**
+   * Get a string representation of the progress.
+   *
+   * @return a string representation of the progress.
+   */
+  public String toString() {
+    return String.format("[Attempts: %d, Elapsed: %.3fs, Rate: %.0f H/s]",
+        this.attempts, this.elapsedNanos / NANOS_PER_SECOND, getHashRate());
+  } // toString()
+} // class MiningProgress
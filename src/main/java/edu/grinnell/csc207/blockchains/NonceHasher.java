@@ -0,0 +1,77 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * Hashes candidate nonces for one block. Everything but the nonce is absorbed once, when the
+ * hasher is built; each attempt restores that midstate and hashes only the eight nonce bytes. The
+ * hashes are identical to those of Block.calculateHash(). A hasher must stay on one thread.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+class NonceHasher {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The state after absorbing everything but the nonce.
+   */
+  Sha256 prefix;
+
+  /**
+   * The state used for each attempt.
+   */
+  Sha256 work;
+
+  /**
+   * The most recent hash, reused across attempts.
+   */
+  byte[] digest;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a hasher for a block with the given fixed contents.
+   *
+   * @param pNum         The number of the block.
+   * @param pTransaction The transaction for the block.
+   * @param pPrevHash    The hash of the previous block.
+   */
+  NonceHasher(int pNum, Transaction pTransaction, Hash pPrevHash) {
+    this.prefix = new Sha256();
+    this.prefix.update(Block.header(pNum, pTransaction, pPrevHash));
+    this.work = new Sha256();
+    this.digest = new byte[Sha256.DIGEST_BYTES];
+  } // NonceHasher(int, Transaction, Hash)
+
+  /**
+   * Create a hasher for a block with the same contents as another, which may hold a batch.
+   *
+   * @param pTemplate The block; its nonce and hash are ignored.
+   */
+  NonceHasher(Block pTemplate) {
+    this.prefix = new Sha256();
+    this.prefix.update(pTemplate.header());
+    this.work = new Sha256();
+    this.digest = new byte[Sha256.DIGEST_BYTES];
+  } // NonceHasher(Block)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Hash the block with a candidate nonce. The returned array is overwritten by the next call.
+   *
+   * @param nonce The candidate nonce.
+   * @return the bytes of the hash.
+   */
+  byte[] hash(long nonce) {
+    this.work.copyFrom(this.prefix);
+    this.work.updateLong(nonce);
+    this.work.digest(this.digest);
+    return this.digest;
+  } // hash(long)
+} // class NonceHasher
@@ -0,0 +1,400 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Mines blocks by splitting the nonce space across a pool of worker threads. Workers claim chunks
+ * of consecutive nonces from a shared counter, so faster workers simply claim more chunks, and all
+ * of them stop once any one has found a valid nonce.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class ParallelMiner implements AutoCloseable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of nonces a worker claims at a time.
+   */
+  static final int CHUNK_SIZE = 1 << 12;
+
+  /**
+   * Marks that no valid nonce has been found yet.
+   */
+  static final long NOT_FOUND = Long.MAX_VALUE;
+
+  /**
+   * An attempt limit that never runs out.
+   */
+  public static final long UNLIMITED = Long.MAX_VALUE;
+
+  /**
+   * The least time between progress reports, in nanoseconds.
+   */
+  static final long PROGRESS_INTERVAL_NANOS = 100_000_000L;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of worker threads.
+   */
+  int threads;
+
+  /**
+   * The threads that do the mining.
+   */
+  ExecutorService pool;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a miner with one worker per available processor.
+   */
+  public ParallelMiner() {
+    this(Runtime.getRuntime().availableProcessors());
+  } // ParallelMiner()
+
+  /**
+   * Create a miner with a fixed number of workers.
+   *
+   * @param pThreads The number of worker threads.
+   * @throws IllegalArgumentException if pThreads is not positive.
+   */
+  public ParallelMiner(int pThreads) {
+    if (pThreads < 1) {
+      throw new IllegalArgumentException("A miner needs at least one thread");
+    } // if
+    this.threads = pThreads;
+    this.pool = Executors.newFixedThreadPool(pThreads, (r) -> {
+      Thread worker = new Thread(r, "miner");
+      worker.setDaemon(true);
+      return worker;
+    });
+  } // ParallelMiner(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of worker threads.
+   *
+   * @return the number of workers.
+   */
+  public int getThreads() {
+    return this.threads;
+  } // getThreads()
+
+  /**
+   * Mine a new block, choosing a nonce that meets the requirements of the validator.
+   *
+   * @param pNum         The number of the block.
+   * @param pTransaction The transaction for the block.
+   * @param pPrevHash    The hash of the previous block.
+   * @param pCheck       The validator used to check the block.
+   * @return the mined block.
+   * @throws IllegalStateException if the miner is interrupted or a worker fails.
+   */
+  public Block mine(int pNum, Transaction pTransaction, Hash pPrevHash, HashValidator pCheck) {
+    return mine(new Block(pNum, pTransaction, pPrevHash, 0, null), pCheck);
+  } // mine(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Mine a block with the same contents as another, which may hold a batch, choosing a nonce
+   * that meets the requirements of the validator.
+   *
+   * @param pTemplate The block to mine; the search starts at its nonce.
+   * @param pCheck    The validator used to check the block.
+   * @return the mined block.
+   * @throws IllegalStateException if the miner is interrupted or a worker fails.
+   */
+  public Block mine(Block pTemplate, HashValidator pCheck) {
+    return mine(pTemplate, pCheck, null);
+  } // mine(Block, HashValidator)
+
+  /**
+   * Mine a block with the same contents as another, reporting progress along the way. The last
+   * report, made before this returns, counts every nonce tried.
+   *
+   * @param pTemplate The block to mine; the search starts at its nonce.
+   * @param pCheck    The validator used to check the block.
+   * @param progress  Receives periodic progress reports from worker threads, or null.
+   * @return the mined block.
+   * @throws IllegalStateException if the miner is interrupted or a worker fails.
+   */
+  public Block mine(Block pTemplate, HashValidator pCheck, Consumer<MiningProgress> progress) {
+    CompletableFuture<Block> result = mineAsync(pTemplate, pCheck, UNLIMITED, null, progress);
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      result.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while mining", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Mining failed", e.getCause());
+    } // try-catch
+  } // mine(Block, HashValidator, Consumer)
+
+  /**
+   * Start mining a new block in the background. Cancelling the returned future stops the workers.
+   * If the time or attempt limit runs out first, the future completes exceptionally with a
+   * TimeoutException or a NoSuchElementException, respectively. The time limit counts from this
+   * call, even while the workers are still busy with an earlier search.
+   *
+   * @param pNum         The number of the block.
+   * @param pTransaction The transaction for the block.
+   * @param pPrevHash    The hash of the previous block.
+   * @param pCheck       The validator used to check the block.
+   * @param maxAttempts  The most nonces to try, or UNLIMITED.
+   * @param timeout      How long to search before giving up, or null to search indefinitely.
+   * @param progress     Receives periodic progress reports from worker threads, or null.
+   * @return a future for the mined block.
+   */
+  public CompletableFuture<Block> mineAsync(int pNum, Transaction pTransaction, Hash pPrevHash,
+      HashValidator pCheck, long maxAttempts, Duration timeout,
+      Consumer<MiningProgress> progress) {
+    return mineAsync(new Block(pNum, pTransaction, pPrevHash, 0, null), pCheck, maxAttempts,
+        timeout, progress);
+  } // mineAsync(int, Transaction, Hash, HashValidator, long, Duration, Consumer)
+
+  /**
+   * Start mining a block with the same contents as another, which may hold a batch, in the
+   * background. Otherwise like mineAsync(int, Transaction, Hash, HashValidator, long, Duration,
+   * Consumer).
+   *
+   * @param pTemplate   The block to mine; the search starts at its nonce.
+   * @param pCheck      The validator used to check the block.
+   * @param maxAttempts The most nonces to try, or UNLIMITED.
+   * @param timeout     How long to search before giving up, or null to search indefinitely.
+   * @param progress    Receives periodic progress reports from worker threads, or null.
+   * @return a future for the mined block.
+   */
+  public CompletableFuture<Block> mineAsync(Block pTemplate, HashValidator pCheck,
+      long maxAttempts, Duration timeout, Consumer<MiningProgress> progress) {
+    // Compute any Merkle root once, before the workers share the template.
+    pTemplate.getMerkleRoot();
+    Search search = new Search(pTemplate, pCheck, maxAttempts, progress);
+    if (timeout != null) {
+      search.result.orTimeout(Math.max(1, timeout.toNanos()), TimeUnit.NANOSECONDS);
+    } // if
+    search.result.whenComplete((block, failure) -> search.stop = true);
+    search.running.set(this.threads);
+    for (int i = 0; i < this.threads; i++) {
+      this.pool.execute(search::work);
+    } // for
+    return search.result;
+  } // mineAsync(Block, HashValidator, long, Duration, Consumer)
+
+  /**
+   * Stop the worker threads.
+   */
+  public void close() {
+    this.pool.shutdownNow();
+  } // close()
+
+  // +----------------+----------------------------------------------
+  // | Static helpers |
+  // +----------------+
+
+  /**
+   * Add two non-negative numbers, giving Long.MAX_VALUE rather than overflowing.
+   *
+   * @param a The first number.
+   * @param b The second number.
+   * @return the sum, or Long.MAX_VALUE if it is larger.
+   */
+  static long saturatedAdd(long a, long b) {
+    return (a > Long.MAX_VALUE - b) ? Long.MAX_VALUE : a + b;
+  } // saturatedAdd(long, long)
+
+  // +----------------+----------------------------------------------
+  // | Nested classes |
+  // +----------------+
+
+  /**
+   * The shared state of one mining search.
+   */
+  static class Search {
+    /**
+     * The block being mined, with any Merkle root already computed.
+     */
+    final Block template;
+
+    /**
+     * The validator the nonces are checked with, for the nonce the search starts at.
+     */
+    final HashValidator check;
+
+    /**
+     * The most nonces to try.
+     */
+    final long maxAttempts;
+
+    /**
+     * The first nonce past the ones to try.
+     */
+    final long limit;
+
+    /**
+     * When the search started, as given by System.nanoTime().
+     */
+    final long startNanos;
+
+    /**
+     * Receives progress reports, or null.
+     */
+    final Consumer<MiningProgress> progress;
+
+    /**
+     * The first nonce that no worker has claimed.
+     */
+    final AtomicLong nextNonce;
+
+    /**
+     * The smallest valid nonce found so far.
+     */
+    final AtomicLong found = new AtomicLong(NOT_FOUND);
+
+    /**
+     * The number of nonces tried so far.
+     */
+    final LongAdder attempts = new LongAdder();
+
+    /**
+     * When progress was last reported.
+     */
+    final AtomicLong lastReport;
+
+    /**
+     * The number of workers still searching.
+     */
+    final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * The first exception thrown by a worker, if any.
+     */
+    final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+
+    /**
+     * The mined block, once the search ends.
+     */
+    final CompletableFuture<Block> result = new CompletableFuture<Block>();
+
+    /**
+     * Whether the workers should stop, which they do once the result is complete.
+     */
+    volatile boolean stop;
+
+    /**
+     * Set up a search.
+     *
+     * @param pTemplate    The block being mined.
+     * @param pCheck       The validator used to check the block.
+     * @param pMaxAttempts The most nonces to try.
+     * @param pProgress    Receives progress reports, or null.
+     */
+    Search(Block pTemplate, HashValidator pCheck, long pMaxAttempts,
+        Consumer<MiningProgress> pProgress) {
+      this.template = pTemplate;
+      this.check = pCheck.forNonce(pTemplate.getNonce());
+      this.maxAttempts = pMaxAttempts;
+      long first = pTemplate.getNonce();
+      this.limit = saturatedAdd(first, pMaxAttempts);
+      this.nextNonce = new AtomicLong(first);
+      this.progress = pProgress;
+      this.startNanos = System.nanoTime();
+      this.lastReport = new AtomicLong(this.startNanos);
+    } // Search(...)
+
+    /**
+     * Claim and try chunks of nonces until the search is over. A worker that starts after the
+     * result is complete, because it was queued behind another search, does nothing.
+     */
+    void work() {
+      try {
+        if (this.stop || this.result.isDone()) {
+          return;
+        } // if
+        NonceHasher hasher = new NonceHasher(this.template);
+        while (!this.stop) {
+          long start = this.nextNonce.getAndAccumulate(CHUNK_SIZE, ParallelMiner::saturatedAdd);
+          if (start >= this.limit) {
+            break;
+          } // if
+          long end = Math.min(saturatedAdd(start, CHUNK_SIZE), this.limit);
+          long nonce = start;
+          while (nonce < end && !this.check.isValidDigest(hasher.hash(nonce))) {
+            nonce++;
+          } // while
+          if (nonce < end) {
+            this.found.accumulateAndGet(nonce, Math::min);
+            this.stop = true;
+            this.attempts.add(nonce - start + 1);
+          } else {
+            this.attempts.add(end - start);
+          } // if-else
+          report(System.nanoTime());
+        } // while
+      } catch (RuntimeException e) {
+        this.failure.compareAndSet(null, e);
+        this.stop = true;
+      } finally {
+        if (this.running.decrementAndGet() == 0) {
+          finish();
+        } // if
+      } // try-catch-finally
+    } // work()
+
+    /**
+     * Publish progress if enough time has passed since the last report.
+     *
+     * @param now The current time, from System.nanoTime().
+     */
+    void report(long now) {
+      if (this.progress == null) {
+        return;
+      } // if
+      long last = this.lastReport.get();
+      if (now - last >= PROGRESS_INTERVAL_NANOS && this.lastReport.compareAndSet(last, now)) {
+        this.progress.accept(new MiningProgress(this.attempts.sum(), now - this.startNanos));
+      } // if
+    } // report(long)
+
+    /**
+     * Complete the result once the last worker has stopped, unless a time limit or a
+     * cancellation has already completed it.
+     */
+    void finish() {
+      if (this.progress != null) {
+        this.progress.accept(
+            new MiningProgress(this.attempts.sum(), System.nanoTime() - this.startNanos));
+      } // if
+      long nonce = this.found.get();
+      if (this.failure.get() != null) {
+        this.result.completeExceptionally(this.failure.get());
+      } else if (nonce != NOT_FOUND) {
+        this.result.complete(this.template.withNonce(nonce));
+      } else {
+        this.result.completeExceptionally(new NoSuchElementException(
+            "No valid nonce in the first " + this.maxAttempts + " attempts"));
+      } // if-else
+    } // finish()
+  } // class Search
+} // class ParallelMiner
@@ -0,0 +1,736 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a chain in step with the chains of other nodes over TCP. One thread runs each node,
+ * waiting on a selector for every connection at once, so a node can serve many peers without a
+ * thread apiece. Nodes may share a host and talk over the loopback interface.
+ *
+ * <p>Nodes exchange framed messages. Each frame is a length, a type, and a body; blocks are laid
+ * out as in a BlockLog record. On connecting, each side sends its status: the size of its chain
+ * and the hash of its last block. A node that is behind asks for the blocks it lacks by number,
+ * MAX_BATCH blocks per request, with up to WINDOW requests under way at once, so the answers
+ * stream back without a round trip between them. Peers may also ask for the blocks after the
+ * block with a given hash. When a node's chain grows, it announces the new blocks to each peer
+ * that lacks them, several to a frame. Received blocks are checked against the chain's
+ * validator and then added with BlockChain.appendAll, which checks their links and hashes.</p>
+ *
+ * <p>Blocks that do not extend the chain, as from a peer on another branch, are ignored; the
+ * node keeps the chain it has. A peer that sends a malformed frame is disconnected.</p>
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class PeerNode implements AutoCloseable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The type of a frame that gives the size of the sender's chain and the hash of its last
+   * block.
+   */
+  static final byte STATUS = 1;
+
+  /**
+   * The type of a frame that asks for a number of blocks starting at a block number.
+   */
+  static final byte GET_RANGE = 2;
+
+  /**
+   * The type of a frame that asks for a number of blocks after the block with a hash.
+   */
+  static final byte GET_AFTER = 3;
+
+  /**
+   * The type of a frame that answers a request with the number of the first block and the
+   * blocks.
+   */
+  static final byte BLOCKS = 4;
+
+  /**
+   * The type of a frame that announces new blocks, laid out like an answer.
+   */
+  static final byte ANNOUNCE = 5;
+
+  /**
+   * The most blocks sent in one frame.
+   */
+  public static final int MAX_BATCH = 128;
+
+  /**
+   * The most requests under way to one peer, and the most frames waiting to go to one peer
+   * before announcements wait.
+   */
+  public static final int WINDOW = 8;
+
+  /**
+   * The largest frame accepted, in bytes.
+   */
+  static final int MAX_FRAME = 16 << 20;
+
+  /**
+   * How long to wait for the network before checking whether the chain has grown, in
+   * milliseconds.
+   */
+  static final long POLL_MILLIS = 20;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chain kept in step.
+   */
+  BlockChain chain;
+
+  /**
+   * Tells the node's thread which connections are ready.
+   */
+  Selector selector;
+
+  /**
+   * Accepts connections from peers.
+   */
+  ServerSocketChannel server;
+
+  /**
+   * The connected peers. Only the node's thread uses this.
+   */
+  ArrayList<Peer> peers;
+
+  /**
+   * Work for the node's thread to do, such as connecting to peers.
+   */
+  ConcurrentLinkedQueue<Runnable> tasks;
+
+  /**
+   * The number of connected peers.
+   */
+  volatile int peerCount;
+
+  /**
+   * The number of blocks received and added to the chain.
+   */
+  final LongAdder received = new LongAdder();
+
+  /**
+   * The number of blocks sent to peers.
+   */
+  final LongAdder sent = new LongAdder();
+
+  /**
+   * The thread that runs the node.
+   */
+  Thread worker;
+
+  /**
+   * Whether the node should stop.
+   */
+  volatile boolean closed;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start a node that keeps a chain in step with its peers and listens for peers at an
+   * address.
+   *
+   * @param pChain   The chain.
+   * @param pAddress The address to listen on; port 0 picks a free port.
+   * @throws IOException if the node cannot listen on the address.
+   */
+  public PeerNode(BlockChain pChain, InetSocketAddress pAddress) throws IOException {
+    this.chain = pChain;
+    this.peers = new ArrayList<Peer>();
+    this.tasks = new ConcurrentLinkedQueue<Runnable>();
+    this.selector = Selector.open();
+    this.server = ServerSocketChannel.open();
+    try {
+      this.server.bind(pAddress);
+      this.server.configureBlocking(false);
+      this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      this.server.close();
+      this.selector.close();
+      throw e;
+    } // try-catch
+    this.worker = new Thread(this::run, "peer-node " + getAddress().getPort());
+    this.worker.setDaemon(true);
+    this.worker.start();
+  } // PeerNode(BlockChain, InetSocketAddress)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the address the node listens on.
+   *
+   * @return the address.
+   */
+  public InetSocketAddress getAddress() {
+    return new InetSocketAddress(this.server.socket().getInetAddress(),
+        this.server.socket().getLocalPort());
+  } // getAddress()
+
+  /**
+   * Get the chain the node keeps in step.
+   *
+   * @return the chain.
+   */
+  public BlockChain getChain() {
+    return this.chain;
+  } // getChain()
+
+  /**
+   * Get the number of connected peers.
+   *
+   * @return the number of peers.
+   */
+  public int getPeerCount() {
+    return this.peerCount;
+  } // getPeerCount()
+
+  /**
+   * Get the number of blocks received from peers and added to the chain.
+   *
+   * @return the number of blocks.
+   */
+  public long getBlocksReceived() {
+    return this.received.sum();
+  } // getBlocksReceived()
+
+  /**
+   * Get the number of blocks sent to peers, in answers and announcements.
+   *
+   * @return the number of blocks.
+   */
+  public long getBlocksSent() {
+    return this.sent.sum();
+  } // getBlocksSent()
+
+  /**
+   * Connect to a peer. The connection is made on the node's thread; if it fails, the peer is
+   * dropped.
+   *
+   * @param address The address the peer listens on.
+   */
+  public void connect(InetSocketAddress address) {
+    this.tasks.add(() -> {
+      SocketChannel channel = null;
+      try {
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Peer peer = new Peer(channel);
+        peer.key = channel.register(this.selector, SelectionKey.OP_CONNECT, peer);
+        if (channel.connect(address)) {
+          connected(peer);
+        } // if
+      } catch (IOException e) {
+        closeQuietly(channel);
+      } // try-catch
+    });
+    this.selector.wakeup();
+  } // connect(InetSocketAddress)
+
+  /**
+   * Announce the blocks added to the chain without waiting for the node to notice them. Nodes
+   * check for new blocks every POLL_MILLIS milliseconds regardless.
+   */
+  public void announce() {
+    this.selector.wakeup();
+  } // announce()
+
+  /**
+   * Stop the node and close its connections, waiting for it to stop. An interrupt while waiting
+   * does not cut the wait short; the thread's interrupt status is restored afterwards.
+   */
+  public void close() {
+    this.closed = true;
+    this.selector.wakeup();
+    boolean interrupted = false;
+    while (this.worker.isAlive()) {
+      try {
+        this.worker.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } // try-catch
+    } // while
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    } // if
+  } // close()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Serve peers until closed, then close every channel.
+   */
+  void run() {
+    try {
+      while (!this.closed) {
+        this.selector.select(POLL_MILLIS);
+        for (Runnable task = this.tasks.poll(); task != null; task = this.tasks.poll()) {
+          try {
+            task.run();
+          } catch (RuntimeException e) {
+            // The task is abandoned; the node keeps serving its peers.
+          } // try-catch
+        } // for
+        for (SelectionKey key : this.selector.selectedKeys()) {
+          ready(key);
+        } // for
+        this.selector.selectedKeys().clear();
+        push();
+      } // while
+    } catch (IOException e) {
+      return;
+    } finally {
+      for (Peer peer : this.peers) {
+        closeQuietly(peer.channel);
+      } // for
+      closeQuietly(this.server);
+      try {
+        this.selector.close();
+      } catch (IOException e) {
+        // Nothing more to release.
+      } // try-catch
+    } // try-finally
+  } // run()
+
+  /**
+   * Handle a channel the selector found ready.
+   *
+   * @param key The channel's key.
+   */
+  void ready(SelectionKey key) {
+    if (!key.isValid()) {
+      return;
+    } // if
+    if (key.isAcceptable()) {
+      SocketChannel channel = null;
+      try {
+        channel = this.server.accept();
+        if (channel != null) {
+          channel.configureBlocking(false);
+          channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+          Peer peer = new Peer(channel);
+          peer.key = channel.register(this.selector, 0, peer);
+          connected(peer);
+        } // if
+      } catch (IOException | RuntimeException e) {
+        closeQuietly(channel);
+      } // try-catch
+      return;
+    } // if
+    Peer peer = (Peer) key.attachment();
+    try {
+      if (key.isConnectable() && peer.channel.finishConnect()) {
+        connected(peer);
+      } // if
+      if (key.isValid() && key.isReadable()) {
+        receive(peer);
+      } // if
+      if (key.isValid() && key.isWritable()) {
+        flush(peer);
+      } // if
+    } catch (IOException | RuntimeException e) {
+      drop(peer);
+    } // try-catch
+  } // ready(SelectionKey)
+
+  /**
+   * Start talking to a newly connected peer by sending our status.
+   *
+   * @param peer The peer.
+   */
+  void connected(Peer peer) {
+    peer.key.interestOps(SelectionKey.OP_READ);
+    this.peers.add(peer);
+    this.peerCount = this.peers.size();
+    Block last = this.chain.getLastBlock();
+    byte[] hash = (last == null) ? new byte[0] : last.getHash().hashData;
+    send(peer, frame(STATUS, 2 * Integer.BYTES + hash.length)
+        .putInt(this.chain.getSize()).putInt(hash.length).put(hash).flip());
+  } // connected(Peer)
+
+  /**
+   * Disconnect a peer.
+   *
+   * @param peer The peer.
+   */
+  void drop(Peer peer) {
+    peer.key.cancel();
+    closeQuietly(peer.channel);
+    this.peers.remove(peer);
+    this.peerCount = this.peers.size();
+  } // drop(Peer)
+
+  /**
+   * Read what a peer has sent and handle each whole frame.
+   *
+   * @param peer The peer.
+   * @throws IOException if the connection fails or the peer closes it.
+   * @throws IndexOutOfBoundsException if a frame is malformed.
+   */
+  void receive(Peer peer) throws IOException {
+    if (peer.channel.read(peer.in) < 0) {
+      throw new IOException("Connection closed");
+    } // if
+    while (peer.in.position() >= Integer.BYTES) {
+      int length = peer.in.getInt(0);
+      if (length < 1 || length > MAX_FRAME) {
+        throw new IndexOutOfBoundsException("Invalid frame length: " + length);
+      } // if
+      if (Integer.BYTES + length > peer.in.capacity()) {
+        ByteBuffer bigger = ByteBuffer.allocate(Integer.BYTES + length);
+        peer.in = bigger.put(peer.in.flip());
+        return;
+      } // if
+      if (peer.in.position() < Integer.BYTES + length) {
+        return;
+      } // if
+      ByteBuffer body = peer.in.duplicate().limit(Integer.BYTES + length)
+          .position(Integer.BYTES + 1).slice();
+      handle(peer, peer.in.get(Integer.BYTES), body);
+      peer.in.flip().position(Integer.BYTES + length);
+      peer.in.compact();
+    } // while
+  } // receive(Peer)
+
+  /**
+   * Handle one frame from a peer.
+   *
+   * @param peer The peer.
+   * @param type The type of the frame.
+   * @param body The body of the frame, from position 0.
+   * @throws IndexOutOfBoundsException if the frame is malformed.
+   */
+  void handle(Peer peer, byte type, ByteBuffer body) {
+    switch (type) {
+      case STATUS:
+        peer.height = body.getInt(0);
+        peer.has = Math.max(peer.has, peer.height);
+        peer.ready = true;
+        request(peer);
+        break;
+      case GET_RANGE:
+        answer(peer, body.getInt(0), body.getInt(Integer.BYTES));
+        break;
+      case GET_AFTER:
+        byte[] hash = BlockLog.field(body, 0);
+        int after = 0;
+        if (hash.length > 0) {
+          Block blk = this.chain.findByHash(new Hash(hash));
+          after = (blk == null) ? this.chain.getSize() : blk.getNum() + 1;
+        } // if
+        answer(peer, after, body.getInt(Integer.BYTES + hash.length));
+        break;
+      case BLOCKS:
+      case ANNOUNCE:
+        if (type == BLOCKS) {
+          peer.outstanding = Math.max(0, peer.outstanding - 1);
+        } // if
+        int first = body.getInt(0);
+        int count = body.getInt(Integer.BYTES);
+        if (count < 0 || count > body.limit() / BlockLog.FIXED_BYTES) {
+          throw new IndexOutOfBoundsException("Invalid number of blocks: " + count);
+        } // if
+        ArrayList<Block> blocks = new ArrayList<Block>(count);
+        int at = 2 * Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+          int length = body.getInt(at) & ~BlockLog.BATCH_FLAG;
+          if (length < BlockLog.FIXED_BYTES || length > body.limit() - at) {
+            throw new IndexOutOfBoundsException("Invalid record length: " + length);
+          } // if
+          blocks.add(BlockLog.decode(body.duplicate().limit(at + length).position(at)));
+          at += length;
+        } // for
+        take(peer, first, blocks);
+        break;
+      default:
+        throw new IndexOutOfBoundsException("Invalid frame type: " + type);
+    } // switch
+  } // handle(Peer, byte, ByteBuffer)
+
+  /**
+   * Add blocks from a peer to the chain, skipping those we already have. Blocks that leave a
+   * gap, fail the validator, or do not link to the chain are not added. Unless the blocks were
+   * refused, ask for any more the peer has.
+   *
+   * @param peer   The peer.
+   * @param first  The number of the first block.
+   * @param blocks The blocks, in order.
+   */
+  void take(Peer peer, int first, List<Block> blocks) {
+    int end = first + blocks.size();
+    peer.height = Math.max(peer.height, end);
+    peer.has = Math.max(peer.has, end);
+    int size = this.chain.getSize();
+    int skip = this.chain.read(() -> {
+      int same = 0;
+      while (same < blocks.size() && first + same < this.chain.size) {
+        if (!this.chain.blockAt(first + same).getHash().equals(blocks.get(same).getHash())) {
+          return -1;
+        } // if
+        same++;
+      } // while
+      return same;
+    });
+    if (skip < 0) {
+      return;
+    } // if
+    if (skip < blocks.size() && first + skip == size) {
+      List<Block> fresh = blocks.subList(skip, blocks.size());
+      long prevNonce = (size == 0) ? 0 : this.chain.getLastBlock().getNonce();
+      for (int i = 0; i < fresh.size(); i++) {
+        if (!this.chain.check.isValidBlock(fresh.get(i), size + i, prevNonce)) {
+          this.chain.metrics.rejected.add(fresh.size());
+          return;
+        } // if
+        prevNonce = fresh.get(i).getNonce();
+      } // for
+      try {
+        this.chain.appendAll(fresh);
+        this.received.add(fresh.size());
+      } catch (IllegalArgumentException e) {
+        // The chain moved on, or the blocks are on another branch.
+        return;
+      } // try-catch
+    } // if
+    request(peer);
+  } // take(Peer, int, List<Block>)
+
+  /**
+   * Ask a peer for blocks it has and we lack, keeping up to WINDOW requests under way.
+   *
+   * @param peer The peer.
+   */
+  void request(Peer peer) {
+    int size = this.chain.getSize();
+    if (peer.outstanding == 0 || peer.asked < size) {
+      peer.asked = size;
+    } // if
+    while (peer.outstanding < WINDOW && peer.asked < peer.height) {
+      int count = Math.min(MAX_BATCH, peer.height - peer.asked);
+      send(peer, frame(GET_RANGE, 2 * Integer.BYTES).putInt(peer.asked).putInt(count).flip());
+      peer.asked += count;
+      peer.outstanding++;
+    } // while
+  } // request(Peer)
+
+  /**
+   * Answer a request with the blocks we have in a range, which may be none.
+   *
+   * @param peer  The peer.
+   * @param from  The number of the first block wanted.
+   * @param count The number of blocks wanted.
+   */
+  void answer(Peer peer, int from, int count) {
+    int size = this.chain.getSize();
+    int start = Math.max(0, Math.min(from, size));
+    sendBlocks(peer, BLOCKS, start, Math.max(0, Math.min(Math.min(count, MAX_BATCH),
+        size - start)));
+  } // answer(Peer, int, int)
+
+  /**
+   * Announce new blocks to each peer that lacks them, holding back from peers with frames
+   * still waiting to go. A peer that cannot be served is dropped, as in ready().
+   */
+  void push() {
+    int size = this.chain.getSize();
+    for (Peer peer : new ArrayList<Peer>(this.peers)) {
+      try {
+        peer.has = Math.min(peer.has, size);
+        while (peer.ready && peer.has < size && peer.out.size() < WINDOW) {
+          int count = sendBlocks(peer, ANNOUNCE, peer.has, Math.min(MAX_BATCH, size - peer.has));
+          if (count == 0) {
+            break;
+          } // if
+          peer.has += count;
+        } // while
+      } catch (RuntimeException e) {
+        drop(peer);
+      } // try-catch
+    } // for
+  } // push()
+
+  /**
+   * Send a frame of blocks from the chain. The blocks are read together, under the chain's
+   * lock, so a chain that shrinks meanwhile only shortens the frame.
+   *
+   * @param peer  The peer.
+   * @param type  BLOCKS or ANNOUNCE.
+   * @param first The number of the first block.
+   * @param count The most blocks to send.
+   * @return the number of blocks sent, which is fewer than count if the chain ends sooner.
+   */
+  int sendBlocks(Peer peer, byte type, int first, int count) {
+    ByteBuffer[] records = this.chain.read(() -> {
+      ByteBuffer[] found = new ByteBuffer[Math.max(0, Math.min(count, this.chain.size - first))];
+      for (int i = 0; i < found.length; i++) {
+        found[i] = BlockLog.encode(this.chain.blockAt(first + i));
+      } // for
+      return found;
+    });
+    int bytes = 2 * Integer.BYTES;
+    for (ByteBuffer record : records) {
+      bytes += record.remaining();
+    } // for
+    ByteBuffer frame = frame(type, bytes).putInt(first).putInt(records.length);
+    for (ByteBuffer record : records) {
+      frame.put(record);
+    } // for
+    send(peer, frame.flip());
+    this.sent.add(records.length);
+    return records.length;
+  } // sendBlocks(Peer, byte, int, int)
+
+  /**
+   * Queue a frame for a peer and write as much as the connection will take.
+   *
+   * @param peer  The peer.
+   * @param frame The frame, ready to read.
+   */
+  void send(Peer peer, ByteBuffer frame) {
+    peer.out.add(frame);
+    try {
+      flush(peer);
+    } catch (IOException e) {
+      drop(peer);
+    } // try-catch
+  } // send(Peer, ByteBuffer)
+
+  /**
+   * Write queued frames to a peer until they are gone or the connection is full, and watch for
+   * room to write the rest.
+   *
+   * @param peer The peer.
+   * @throws IOException if the connection fails.
+   */
+  void flush(Peer peer) throws IOException {
+    if (!peer.channel.isConnected()) {
+      return;
+    } // if
+    while (!peer.out.isEmpty()) {
+      peer.channel.write(peer.out.toArray(new ByteBuffer[0]));
+      while (!peer.out.isEmpty() && !peer.out.peek().hasRemaining()) {
+        peer.out.remove();
+      } // while
+      if (!peer.out.isEmpty() && peer.out.peek().hasRemaining()) {
+        break;
+      } // if
+    } // while
+    peer.key.interestOps(peer.out.isEmpty() ? SelectionKey.OP_READ
+        : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+  } // flush(Peer)
+
+  /**
+   * Start a frame.
+   *
+   * @param type  The type of the frame.
+   * @param bytes The number of bytes in the body.
+   * @return a buffer with room for the body, positioned after the type.
+   */
+  static ByteBuffer frame(byte type, int bytes) {
+    return ByteBuffer.allocate(Integer.BYTES + 1 + bytes).putInt(1 + bytes).put(type);
+  } // frame(byte, int)
+
+  /**
+   * Close a channel, ignoring failures.
+   *
+   * @param channel The channel, or null.
+   */
+  static void closeQuietly(Channel channel) {
+    if (channel == null) {
+      return;
+    } // if
+    try {
+      channel.close();
+    } catch (IOException e) {
+      // The channel is as closed as it will get.
+    } // try-catch
+  } // closeQuietly(Channel)
+
+  // +----------------+----------------------------------------------
+  // | Nested classes |
+  // +----------------+
+
+  /**
+   * A connection to a peer and what we know of its chain.
+   */
+  static class Peer {
+    /**
+     * The connection.
+     */
+    final SocketChannel channel;
+
+    /**
+     * The connection's key in the selector.
+     */
+    SelectionKey key;
+
+    /**
+     * What has been read and not yet handled.
+     */
+    ByteBuffer in = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * The frames waiting to be written.
+     */
+    final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * Whether the peer has sent its status.
+     */
+    boolean ready;
+
+    /**
+     * The size of the peer's chain, as far as we know.
+     */
+    int height;
+
+    /**
+     * The number of blocks at the start of our chain the peer has or has been sent.
+     */
+    int has;
+
+    /**
+     * The number of the first block not yet asked for.
+     */
+    int asked;
+
+    /**
+     * The number of requests not yet answered.
+     */
+    int outstanding;
+
+    /**
+     * Set up a peer on a connection.
+     *
+     * @param pChannel The connection.
+     */
+    Peer(SocketChannel pChannel) {
+      this.channel = pChannel;
+    } // Peer(SocketChannel)
+  } // class Peer
+} // class PeerNode
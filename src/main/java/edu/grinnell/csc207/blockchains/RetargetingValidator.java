@@ -0,0 +1,326 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.time.Duration;
+
+/**
+ * Validates hashes against a number of leading zero bits that changes to keep blocks coming at a
+ * steady rate. Every few blocks, the validator compares how long the last run of blocks took
+ * with how long it should have taken and moves the difficulty by whole bits, each bit doubling
+ * or halving the expected work, by at most MAX_STEP bits at a time.
+ *
+ * <p>Each block records the number of bits it was mined for in the top byte of its nonce, so
+ * the hash covers it and the chain carries the whole history of the difficulty. A block is valid
+ * when its hash has at least the bits it records and those bits follow from the block before:
+ * the same bits within a run, and a change of at most MAX_STEP at the start of each run. The
+ * first block records the initial bits. Mining times are only known to the node that measured
+ * them, so validation checks that the recorded difficulty changes within these bounds rather
+ * than repeating the timing.</p>
+ *
+ * <p>Validity never depends on the timing state. Only the bits for the next block do, and each
+ * chain keeps that state in its own copy of the validator, from forChain().</p>
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class RetargetingValidator implements HashValidator {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Where the bits are kept in a nonce: above the rest of the nonce, in its top byte.
+   */
+  static final int SHIFT = Long.SIZE - Byte.SIZE;
+
+  /**
+   * The most bits a block can need, which keeps nonces positive.
+   */
+  public static final int MAX_BITS = Byte.MAX_VALUE;
+
+  /**
+   * The most bits the difficulty changes by at a time, a factor of 4 in expected work.
+   */
+  public static final int MAX_STEP = 2;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks between changes to the difficulty.
+   */
+  int interval;
+
+  /**
+   * How long each block should take to mine, in nanoseconds.
+   */
+  long blockNanos;
+
+  /**
+   * The bits the first block needs.
+   */
+  int initialBits;
+
+  /**
+   * A validator for each number of bits.
+   */
+  DifficultyTarget[] targets;
+
+  /**
+   * The bits the next block of the chain needs.
+   */
+  volatile int bits;
+
+  /**
+   * The size of the chain when the current run of blocks started, or -1 if unknown.
+   */
+  int runSize;
+
+  /**
+   * When the current run of blocks started, as given by System.nanoTime().
+   */
+  long runStart;
+
+  /**
+   * The size of the chain when we last heard.
+   */
+  int size;
+
+  /**
+   * The number of times the difficulty has been changed.
+   */
+  int retargets;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a validator that changes the difficulty every pInterval blocks.
+   *
+   * @param pInterval    The number of blocks between changes, at least 1.
+   * @param pBlockTime   How long each block should take to mine.
+   * @param pInitialBits The number of leading zero bits the first blocks need, between 0 and
+   *                     MAX_BITS.
+   * @throws IllegalArgumentException if any of these is out of range.
+   */
+  public RetargetingValidator(int pInterval, Duration pBlockTime, int pInitialBits) {
+    if (pInterval < 1) {
+      throw new IllegalArgumentException("Invalid interval: " + pInterval);
+    } else if (pBlockTime.isNegative() || pBlockTime.isZero()) {
+      throw new IllegalArgumentException("Invalid block time: " + pBlockTime);
+    } else if (pInitialBits < 0 || pInitialBits > MAX_BITS) {
+      throw new IllegalArgumentException("Invalid number of zero bits: " + pInitialBits);
+    } // if-else
+    this.interval = pInterval;
+    this.blockNanos = pBlockTime.toNanos();
+    this.initialBits = pInitialBits;
+    this.targets = new DifficultyTarget[MAX_BITS + 1];
+    for (int b = 0; b <= MAX_BITS; b++) {
+      this.targets[b] = DifficultyTarget.leadingZeroBits(b);
+    } // for
+    this.bits = pInitialBits;
+    this.runSize = -1;
+  } // RetargetingValidator(int, Duration, int)
+
+  /**
+   * Create a copy of a validator, with the same settings and the same record of its chain.
+   *
+   * @param other The validator to copy. The caller holds its lock.
+   */
+  RetargetingValidator(RetargetingValidator other) {
+    this.interval = other.interval;
+    this.blockNanos = other.blockNanos;
+    this.initialBits = other.initialBits;
+    this.targets = other.targets;
+    this.bits = other.bits;
+    this.runSize = other.runSize;
+    this.runStart = other.runStart;
+    this.size = other.size;
+    this.retargets = other.retargets;
+  } // RetargetingValidator(RetargetingValidator)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Get the number of bits a block was mined for, as recorded in its nonce.
+   *
+   * @param nonce The nonce of the block.
+   * @return the number of bits.
+   */
+  public static int bits(long nonce) {
+    return (int) (nonce >>> SHIFT);
+  } // bits(long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of leading zero bits the next block needs.
+   *
+   * @return the number of bits.
+   */
+  public int getBits() {
+    return this.bits;
+  } // getBits()
+
+  /**
+   * Get the number of blocks between changes to the difficulty.
+   *
+   * @return the interval.
+   */
+  public int getInterval() {
+    return this.interval;
+  } // getInterval()
+
+  /**
+   * Get how long each block should take to mine.
+   *
+   * @return the block time.
+   */
+  public Duration getBlockTime() {
+    return Duration.ofNanos(this.blockNanos);
+  } // getBlockTime()
+
+  /**
+   * Get the number of times the difficulty has been changed.
+   *
+   * @return the number of changes.
+   */
+  public synchronized int getRetargets() {
+    return this.retargets;
+  } // getRetargets()
+
+  /**
+   * Determine if a hash has the initial bits. A hash alone does not say what it was mined for,
+   * so blocks are checked with isValidBlock(), against the bits in their nonces.
+   *
+   * @param hash The hash we're checking.
+   * @return true if the hash is valid and false otherwise.
+   */
+  public boolean isValid(Hash hash) {
+    return this.targets[this.initialBits].isValid(hash);
+  } // isValid(Hash)
+
+  /**
+   * Determine if the bytes of a hash have the initial bits.
+   *
+   * @param digest The bytes of the hash we're checking.
+   * @return true if the hash is valid and false otherwise.
+   */
+  public boolean isValidDigest(byte[] digest) {
+    return this.targets[this.initialBits].isValidDigest(digest);
+  } // isValidDigest(byte[])
+
+  /**
+   * Determine if a block's hash has the bits recorded in its nonce, and if those bits follow
+   * from the bits of the block before.
+   *
+   * @param blk       The block we're checking.
+   * @param num       The position of the block in the chain.
+   * @param prevNonce The nonce of the block before it, or 0 for the first block.
+   * @return true if the block is valid and false otherwise.
+   */
+  public boolean isValidBlock(Block blk, int num, long prevNonce) {
+    int claimed = bits(blk.getNonce());
+    int before = (num == 0) ? this.initialBits : bits(prevNonce);
+    int step = (num > 0 && num % this.interval == 0) ? MAX_STEP : 0;
+    return claimed <= MAX_BITS && Math.abs(claimed - before) <= step
+        && this.targets[claimed].isValid(blk.getHash());
+  } // isValidBlock(Block, int, long)
+
+  /**
+   * Get the validator for mining a block from a nonce: the bits that nonce records.
+   *
+   * @param nonce The first nonce to try.
+   * @return the validator for those bits.
+   */
+  public HashValidator forNonce(long nonce) {
+    return this.targets[Math.min(bits(nonce), MAX_BITS)];
+  } // forNonce(long)
+
+  /**
+   * Get a copy of this validator for one chain, so that chains do not share the record of how
+   * fast their blocks came.
+   *
+   * @return the copy.
+   */
+  public synchronized HashValidator forChain() {
+    return new RetargetingValidator(this);
+  } // forChain()
+
+  /**
+   * Get the work a block proves: 2 to the number of bits recorded in its nonce.
+   *
+   * @param blk The block.
+   * @return the expected number of hashes.
+   */
+  public double work(Block blk) {
+    return Math.pow(2, Math.min(bits(blk.getNonce()), MAX_BITS));
+  } // work(Block)
+
+  /**
+   * Get the nonce at which mining the next block starts, which records the bits it needs.
+   *
+   * @return the first nonce to try.
+   */
+  public long startNonce() {
+    return (long) this.bits << SHIFT;
+  } // startNonce()
+
+  /**
+   * Note that the chain has grown or shrunk. When it grows to the end of a run of blocks that
+   * we saw start, the difficulty for the next run is set by how long the run took.
+   *
+   * @param pSize     The number of blocks now in the chain.
+   * @param lastNonce The nonce of the last block, or 0 if there are none.
+   */
+  public synchronized void resized(int pSize, long lastNonce) {
+    long now = System.nanoTime();
+    int next = (pSize == 0) ? this.initialBits : bits(lastNonce);
+    if (pSize % this.interval == 0 && pSize >= this.size) {
+      if (pSize > this.size && pSize == this.runSize + this.interval) {
+        next = retarget(next, now - this.runStart);
+      } // if
+      this.runSize = pSize;
+      this.runStart = now;
+    } else if (pSize < this.runSize) {
+      this.runSize = -1;
+    } // if-else
+    this.size = pSize;
+    this.bits = next;
+  } // resized(int, long)
+
+  /**
+   * Get a string representation of the validator.
+   *
+   * @return the bits the next block needs and how they are adjusted.
+   */
+  public String toString() {
+    return "RetargetingValidator " + this.bits + " bits, every " + this.interval
+        + " blocks toward " + getBlockTime();
+  } // toString()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Choose the bits for the next run of blocks from how long the last run took. The caller
+   * holds the lock.
+   *
+   * @param current The bits of the last run.
+   * @param elapsed How long the last run took, in nanoseconds.
+   * @return the bits for the next run.
+   */
+  int retarget(int current, long elapsed) {
+    double ratio = (double) this.interval * this.blockNanos / Math.max(elapsed, 1);
+    int step = (int) Math.round(Math.log(ratio) / Math.log(2));
+    step = Math.max(-MAX_STEP, Math.min(MAX_STEP, step));
+    this.retargets++;
+    return Math.max(0, Math.min(MAX_BITS, current + step));
+  } // retarget(int, long)
+} // class RetargetingValidator
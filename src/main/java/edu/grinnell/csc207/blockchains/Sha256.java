@@ -0,0 +1,280 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+/**
+ * A plain SHA-256 implementation whose intermediate state can be copied. Unlike MessageDigest,
+ * restoring a saved state and finishing a hash allocates nothing, which lets mining absorb the
+ * fixed part of a block once and then hash only the nonce for each attempt. Hashes computed
+ * once go through MessageDigest instead, which is faster when there is no midstate to reuse.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+final class Sha256 {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes in a digest.
+   */
+  static final int DIGEST_BYTES = 32;
+
+  /**
+   * The number of bytes in one compression block.
+   */
+  static final int BLOCK_BYTES = 64;
+
+  /**
+   * The offset within the final block at which the message length is written.
+   */
+  static final int LENGTH_OFFSET = 56;
+
+  /**
+   * The initial hash values.
+   */
+  static final int[] IV = {
+      0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
+      0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+  };
+
+  /**
+   * The round constants.
+   */
+  static final int[] K = {
+      0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4,
+      0xab1c5ed5, 0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe,
+      0x9bdc06a7, 0xc19bf174, 0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f,
+      0x4a7484aa, 0x5cb0a9dc, 0x76f988da, 0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7,
+      0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967, 0x27b70a85, 0x2e1b2138, 0x4d2c6dfc,
+      0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85, 0xa2bfe8a1, 0xa81a664b,
+      0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070, 0x19a4c116,
+      0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+      0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7,
+      0xc67178f2
+  };
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The current chaining values.
+   */
+  final int[] state = new int[IV.length];
+
+  /**
+   * Bytes waiting for a full block.
+   */
+  final byte[] pending = new byte[BLOCK_BYTES];
+
+  /**
+   * The number of bytes in pending.
+   */
+  int pendingLength;
+
+  /**
+   * The total number of bytes absorbed.
+   */
+  long length;
+
+  /**
+   * The message schedule, kept to avoid reallocating it for each block.
+   */
+  final int[] schedule = new int[K.length];
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a hasher that has absorbed nothing.
+   */
+  Sha256() {
+    reset();
+  } // Sha256()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Forget everything absorbed so far.
+   */
+  void reset() {
+    System.arraycopy(IV, 0, this.state, 0, IV.length);
+    this.pendingLength = 0;
+    this.length = 0;
+  } // reset()
+
+  /**
+   * Make this hasher's state identical to another's.
+   *
+   * @param other The hasher to copy.
+   */
+  void copyFrom(Sha256 other) {
+    System.arraycopy(other.state, 0, this.state, 0, IV.length);
+    System.arraycopy(other.pending, 0, this.pending, 0, other.pendingLength);
+    this.pendingLength = other.pendingLength;
+    this.length = other.length;
+  } // copyFrom(Sha256)
+
+  /**
+   * Absorb one byte.
+   *
+   * @param b The byte.
+   */
+  void update(byte b) {
+    this.pending[this.pendingLength++] = b;
+    this.length++;
+    if (this.pendingLength == BLOCK_BYTES) {
+      compress(this.pending, 0);
+      this.pendingLength = 0;
+    } // if
+  } // update(byte)
+
+  /**
+   * Absorb an array of bytes.
+   *
+   * @param data The bytes.
+   */
+  void update(byte[] data) {
+    update(data, 0, data.length);
+  } // update(byte[])
+
+  /**
+   * Absorb part of an array of bytes.
+   *
+   * @param data   The bytes.
+   * @param offset The index of the first byte to absorb.
+   * @param count  The number of bytes to absorb.
+   */
+  void update(byte[] data, int offset, int count) {
+    int pos = offset;
+    int end = offset + count;
+    this.length += count;
+    if (this.pendingLength > 0) {
+      int take = Math.min(BLOCK_BYTES - this.pendingLength, count);
+      System.arraycopy(data, pos, this.pending, this.pendingLength, take);
+      this.pendingLength += take;
+      pos += take;
+      if (this.pendingLength < BLOCK_BYTES) {
+        return;
+      } // if
+      compress(this.pending, 0);
+      this.pendingLength = 0;
+    } // if
+    while (end - pos >= BLOCK_BYTES) {
+      compress(data, pos);
+      pos += BLOCK_BYTES;
+    } // while
+    System.arraycopy(data, pos, this.pending, 0, end - pos);
+    this.pendingLength = end - pos;
+  } // update(byte[], int, int)
+
+  /**
+   * Absorb the big-endian bytes of an int.
+   *
+   * @param value The int.
+   */
+  void updateInt(int value) {
+    for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+      update((byte) (value >>> shift));
+    } // for
+  } // updateInt(int)
+
+  /**
+   * Absorb the big-endian bytes of a long.
+   *
+   * @param value The long.
+   */
+  void updateLong(long value) {
+    for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+      update((byte) (value >>> shift));
+    } // for
+  } // updateLong(long)
+
+  /**
+   * Finish the hash and write it into a buffer. The hasher must be reset or restored with
+   * copyFrom before it is used again.
+   *
+   * @param out The buffer, which must hold at least DIGEST_BYTES bytes.
+   */
+  void digest(byte[] out) {
+    long bits = this.length * Byte.SIZE;
+    this.pending[this.pendingLength++] = (byte) 0x80;
+    if (this.pendingLength > LENGTH_OFFSET) {
+      Arrays.fill(this.pending, this.pendingLength, BLOCK_BYTES, (byte) 0);
+      compress(this.pending, 0);
+      this.pendingLength = 0;
+    } // if
+    Arrays.fill(this.pending, this.pendingLength, LENGTH_OFFSET, (byte) 0);
+    for (int i = 0; i < Long.BYTES; i++) {
+      this.pending[LENGTH_OFFSET + i] = (byte) (bits >>> (Long.SIZE - Byte.SIZE * (i + 1)));
+    } // for
+    compress(this.pending, 0);
+    for (int i = 0; i < this.state.length; i++) {
+      int word = this.state[i];
+      out[4 * i] = (byte) (word >>> 24);
+      out[4 * i + 1] = (byte) (word >>> 16);
+      out[4 * i + 2] = (byte) (word >>> 8);
+      out[4 * i + 3] = (byte) word;
+    } // for
+  } // digest(byte[])
+
+  /**
+   * Run the compression function over one block.
+   *
+   * @param data   The bytes holding the block.
+   * @param offset The index of the block's first byte.
+   */
+  void compress(byte[] data, int offset) {
+    int[] w = this.schedule;
+    for (int i = 0; i < 16; i++) {
+      int p = offset + 4 * i;
+      w[i] = (data[p] << 24) | ((data[p + 1] & 0xff) << 16) | ((data[p + 2] & 0xff) << 8)
+          | (data[p + 3] & 0xff);
+    } // for
+    for (int i = 16; i < K.length; i++) {
+      int s0 = Integer.rotateRight(w[i - 15], 7) ^ Integer.rotateRight(w[i - 15], 18)
+          ^ (w[i - 15] >>> 3);
+      int s1 = Integer.rotateRight(w[i - 2], 17) ^ Integer.rotateRight(w[i - 2], 19)
+          ^ (w[i - 2] >>> 10);
+      w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+    } // for
+
+    int a = this.state[0];
+    int b = this.state[1];
+    int c = this.state[2];
+    int d = this.state[3];
+    int e = this.state[4];
+    int f = this.state[5];
+    int g = this.state[6];
+    int h = this.state[7];
+    for (int i = 0; i < K.length; i++) {
+      int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+      int ch = (e & f) ^ (~e & g);
+      int t1 = h + s1 + ch + K[i] + w[i];
+      int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+      int maj = (a & b) ^ (a & c) ^ (b & c);
+      int t2 = s0 + maj;
+      h = g;
+      g = f;
+      f = e;
+      e = d + t1;
+      d = c;
+      c = b;
+      b = a;
+      a = t1 + t2;
+    } // for
+    this.state[0] += a;
+    this.state[1] += b;
+    this.state[2] += c;
+    this.state[3] += d;
+    this.state[4] += e;
+    this.state[5] += f;
+    this.state[6] += g;
+    this.state[7] += h;
+  } // compress(byte[], int)
+} // class Sha256
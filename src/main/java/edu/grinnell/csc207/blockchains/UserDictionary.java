@@ -0,0 +1,129 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Small integer ids for user names, so that storage can refer to a user with an int rather than a
+ * String. Ids are handed out in order starting from 0, which always names the empty source of a
+ * deposit, and are never taken back. Names may be looked up while a new id is being handed out
+ * on another thread.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class UserDictionary {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The id of the empty name used as the source of deposits.
+   */
+  public static final int NOBODY = 0;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The name for each id.
+   */
+  String[] names;
+
+  /**
+   * The id for each name.
+   */
+  ConcurrentHashMap<String, Integer> ids;
+
+  /**
+   * The number of ids handed out.
+   */
+  int count;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a dictionary that only knows the empty name.
+   */
+  public UserDictionary() {
+    this.names = new String[16];
+    this.ids = new ConcurrentHashMap<String, Integer>();
+    id("");
+  } // UserDictionary()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the id of a name, handing out a new one if the name has none yet.
+   *
+   * @param name The name.
+   * @return its id.
+   */
+  public int id(String name) {
+    Integer known = this.ids.get(name);
+    if (known != null) {
+      return known;
+    } // if
+    if (this.count == this.names.length) {
+      this.names = Arrays.copyOf(this.names, this.count * 2);
+    } // if
+    this.names[this.count] = name;
+    this.ids.put(name, this.count);
+    return this.count++;
+  } // id(String)
+
+  /**
+   * Find the id of a name without handing out a new one.
+   *
+   * @param name The name.
+   * @return its id, or -1 if it has none.
+   */
+  public int find(String name) {
+    Integer known = this.ids.get(name);
+    if (known == null) {
+      return -1;
+    } // if
+    return known;
+  } // find(String)
+
+  /**
+   * Get the name with an id.
+   *
+   * @param id The id, between 0 (inclusive) and size() (exclusive).
+   * @return the name.
+   * @throws IndexOutOfBoundsException if no name has that id.
+   */
+  public String name(int id) {
+    if (id < 0 || id >= this.count) {
+      throw new IndexOutOfBoundsException("No user " + id);
+    } // if
+    return this.names[id];
+  } // name(int)
+
+  /**
+   * Make an independent copy of the dictionary, with the same ids.
+   *
+   * @return the copy.
+   */
+  public UserDictionary copy() {
+    UserDictionary result = new UserDictionary();
+    result.names = Arrays.copyOf(this.names, this.names.length);
+    result.ids = new ConcurrentHashMap<String, Integer>(this.ids);
+    result.count = this.count;
+    return result;
+  } // copy()
+
+  /**
+   * Get the number of ids handed out, including the one for the empty name.
+   *
+   * @return the number of ids.
+   */
+  public int size() {
+    return this.count;
+  } // size()
+} // class UserDictionary
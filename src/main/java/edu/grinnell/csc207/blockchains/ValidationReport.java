@@ -0,0 +1,123 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * The outcome of checking a blockchain: either every block checked out, or the first block that
+ * did not and why.
+ *
+ * @author Paden Houck
+ * @author Grant Sackmann
+ */
+public class ValidationReport {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks that checked out.
+   */
+  int blocksChecked;
+
+  /**
+   * The position in the chain of the first bad block, or -1 if there is none.
+   */
+  int failedBlock;
+
+  /**
+   * Why the bad block failed, or null if there is none.
+   */
+  String reason;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new report.
+   *
+   * @param pBlocksChecked The number of blocks that checked out.
+   * @param pFailedBlock   The position of the first bad block, or -1.
+   * @param pReason        Why the bad block failed, or null.
+   */
+  ValidationReport(int pBlocksChecked, int pFailedBlock, String pReason) {
+    this.blocksChecked = pBlocksChecked;
+    this.failedBlock = pFailedBlock;
+    this.reason = pReason;
+  } // ValidationReport(int, int, String)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Report that every block checked out.
+   *
+   * @param blocks The number of blocks checked.
+   * @return the report.
+   */
+  static ValidationReport valid(int blocks) {
+    return new ValidationReport(blocks, -1, null);
+  } // valid(int)
+
+  /**
+   * Report a bad block. Every block before it checked out.
+   *
+   * @param block  The position of the bad block.
+   * @param reason Why it failed.
+   * @return the report.
+   */
+  static ValidationReport failure(int block, String reason) {
+    return new ValidationReport(block, block, reason);
+  } // failure(int, String)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine if every block checked out.
+   *
+   * @return true if the chain is correct and false otherwise.
+   */
+  public boolean isValid() {
+    return this.failedBlock < 0;
+  } // isValid()
+
+  /**
+   * Get the number of blocks that checked out.
+   *
+   * @return the number of good blocks.
+   */
+  public int getBlocksChecked() {
+    return this.blocksChecked;
+  } // getBlocksChecked()
+
+  /**
+   * Get the position in the chain of the first bad block.
+   *
+   * @return the position, or -1 if the chain is correct.
+   */
+  public int getFailedBlock() {
+    return this.failedBlock;
+  } // getFailedBlock()
+
+  /**
+   * Get the reason the first bad block failed.
+   *
+   * @return the reason, or null if the chain is correct.
+   */
+  public String getReason() {
+    return this.reason;
+  } // getReason()
+
+  /**
+   * Get a string representation of the report.
+   *
+   * @return a string representation of the report.
+   */
+  public String toString() {
+    if (isValid()) {
+      return String.format("All %d blocks are correct", this.blocksChecked);
+    } // if
+    return String.format("Block %d is incorrect: %s", this.failedBlock, this.reason);
+  } // toString()
+} // class ValidationReport
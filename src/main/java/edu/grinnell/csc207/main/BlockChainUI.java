@@ -2,15 +2,26 @@ package edu.grinnell.csc207.main;
 
 import edu.grinnell.csc207.blockchains.Block;
 import edu.grinnell.csc207.blockchains.BlockChain;
+import edu.grinnell.csc207.blockchains.BlockLog;
+import edu.grinnell.csc207.blockchains.DifficultyTarget;
 import edu.grinnell.csc207.blockchains.Hash;
 import edu.grinnell.csc207.blockchains.HashValidator;
+import edu.grinnell.csc207.blockchains.ParallelMiner;
+import edu.grinnell.csc207.blockchains.RetargetingValidator;
 import edu.grinnell.csc207.blockchains.Transaction;
 import edu.grinnell.csc207.util.IOUtils;
 
 import java.io.PrintWriter;
 import java.util.Iterator;
+import java.util.regex.Pattern;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 
 /**
  * A simple UI for our BlockChain class.
@@ -29,6 +40,16 @@ public class BlockChainUI {
    */
   static final int VALIDATOR_BYTES = 3;
 
+  /**
+   * What separates the fields of a command in batch mode.
+   */
+  static final Pattern FIELDS = Pattern.compile("\\s+");
+
+  /**
+   * How a batch marks a missing source, that is, a deposit.
+   */
+  static final String DEPOSIT = "-";
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
@@ -49,10 +70,166 @@ public class BlockChainUI {
           balance: finds a user's balance
           transactions: prints out the chain of transactions
           blocks: prints out the chain of blocks (for debugging only)
+          stats: prints counts and timings of the chain's work
           help: prints this list of commands
           quit: quits the program""");
   } // instructions(PrintWriter)
 
+  /**
+   * Run the commands in a batch, one per line, without prompting. Each line holds a command and
+   * its fields separated by whitespace:
+   *
+   * <pre>
+   *   mine SOURCE TARGET AMOUNT          print the nonce for a transaction
+   *   add SOURCE TARGET AMOUNT           mine a transaction and append it
+   *   append SOURCE TARGET AMOUNT NONCE  append a transaction with a known nonce
+   *   remove | check | users | blocks | transactions | stats
+   *   balance USER
+   *   quit
+   * </pre>
+   *
+   * <p>A source of "-" makes a deposit. Blank lines and lines starting with '#' are skipped. A
+   * command that fails prints an error naming its line, and the batch goes on.</p>
+   *
+   * @param chain   The chain to run the commands against.
+   * @param eyes    Where to read the commands.
+   * @param pen     Where to print the results.
+   * @param summary Where to print the number of commands run and how fast they ran.
+   * @throws IOException if the commands cannot be read.
+   */
+  public static void batch(BlockChain chain, BufferedReader eyes, PrintWriter pen,
+      PrintWriter summary) throws IOException {
+    long start = System.nanoTime();
+    int commands = 0;
+    int errors = 0;
+    int lineNum = 0;
+    String line;
+    while ((line = eyes.readLine()) != null) {
+      lineNum++;
+      line = line.strip();
+      if (line.isEmpty() || line.charAt(0) == '#') {
+        continue;
+      } // if
+      String[] fields = FIELDS.split(line);
+      if ("quit".equals(fields[0])) {
+        break;
+      } // if
+      commands++;
+      try {
+        run(chain, fields, pen);
+      } catch (RuntimeException e) {
+        errors++;
+        pen.printf("error %d: %s\n", lineNum, e.getMessage());
+      } // try-catch
+    } // while
+    pen.flush();
+
+    double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+    summary.printf("%d commands (%d errors) in %.3f s: %.0f commands/s, %d blocks\n",
+        commands, errors, seconds, commands / seconds, chain.getSize());
+    summary.flush();
+  } // batch(BlockChain, BufferedReader, PrintWriter, PrintWriter)
+
+  /**
+   * Run one command from a batch.
+   *
+   * @param chain  The chain to run the command against.
+   * @param fields The command and its fields.
+   * @param pen    Where to print the result.
+   * @throws IllegalArgumentException if the command or its fields are not valid.
+   */
+  static void run(BlockChain chain, String[] fields, PrintWriter pen) {
+    switch (fields[0].toLowerCase()) {
+      case "add":
+        expect(fields, 4);
+        Block added = chain.mine(transaction(fields));
+        chain.append(added);
+        pen.printf("appended %d %s\n", added.getNum(), added.getHash());
+        break;
+
+      case "append":
+        expect(fields, 5);
+        Hash prev = chain.getSize() == 0 ? new Hash(new byte[] {}) : chain.getHash();
+        Block b = new Block(chain.getSize(), transaction(fields), prev, Long.parseLong(fields[4]));
+        chain.append(b);
+        pen.printf("appended %d %s\n", b.getNum(), b.getHash());
+        break;
+
+      case "balance":
+        expect(fields, 2);
+        pen.printf("%s %d\n", fields[1], chain.balance(fields[1]));
+        break;
+
+      case "blocks":
+        for (Iterator<Block> blocks = chain.blocks(); blocks.hasNext(); ) {
+          pen.println(blocks.next());
+        } // for
+        break;
+
+      case "check":
+        pen.println(chain.validate());
+        break;
+
+      case "mine":
+        expect(fields, 4);
+        pen.printf("nonce %d\n", chain.mine(transaction(fields)).getNonce());
+        break;
+
+      case "remove":
+        pen.println(chain.removeLast() ? "removed" : "not removed");
+        break;
+
+      case "stats":
+        pen.println(chain.getMetrics());
+        break;
+
+      case "transactions":
+        for (Iterator<Block> blocks = chain.blocks(); blocks.hasNext(); ) {
+          Block block = blocks.next();
+          for (Transaction t : block.getTransactions()) {
+            pen.printf("%d %s\n", block.getNum(), t);
+          } // for
+        } // for
+        break;
+
+      case "users":
+        for (Iterator<String> users = chain.users(); users.hasNext(); ) {
+          String user = users.next();
+          pen.printf("%s %d\n", user, chain.balance(user));
+        } // for
+        break;
+
+      default:
+        throw new IllegalArgumentException("invalid command: " + fields[0]);
+    } // switch
+  } // run(BlockChain, String[], PrintWriter)
+
+  /**
+   * Make sure a batch command has the right number of fields.
+   *
+   * @param fields The command and its fields.
+   * @param count  The number of fields it needs, counting the command.
+   * @throws IllegalArgumentException if it has some other number.
+   */
+  static void expect(String[] fields, int count) {
+    if (fields.length != count) {
+      throw new IllegalArgumentException(String.format("%s takes %d fields, not %d", fields[0],
+          count - 1, fields.length - 1));
+    } // if
+  } // expect(String[], int)
+
+  /**
+   * Read the transaction in the fields of a batch command.
+   *
+   * @param fields The command, source, target, and amount.
+   * @return the transaction.
+   * @throws NumberFormatException if the amount is not a number.
+   */
+  static Transaction transaction(String[] fields) {
+    String source = DEPOSIT.equals(fields[1]) ? "" : fields[1];
+    return new Transaction(source, fields[2], Integer.parseInt(fields[3]));
+  } // transaction(String[])
+
   // +------+--------------------------------------------------------
   // | Main |
   // +------+
@@ -60,25 +237,56 @@ public class BlockChainUI {
   /**
    * Run the UI.
    *
-   * @param args Command-line arguments (currently ignored).
+   * @param args Command-line arguments: optionally "--log DIR" to keep the chain in a durable
+   *             log in DIR, so that it survives from one run to the next; "--batch FILE" to run
+   *             the commands in FILE (or standard input, for "-") without prompting;
+   *             "--difficulty BITS" to require BITS leading zero bits in each hash; and
+   *             "--retarget BLOCKS MILLIS" to start at that difficulty and adjust it every
+   *             BLOCKS blocks so that each block takes about MILLIS milliseconds to mine.
    */
   public static void main(String[] args) throws Exception {
     PrintWriter pen = new PrintWriter(System.out, true);
     BufferedReader eyes = new BufferedReader(new InputStreamReader(System.in));
 
+    BlockLog log = null;
+    String script = null;
+    int bits = VALIDATOR_BYTES * Byte.SIZE;
+    int interval = 0;
+    long millis = 0;
+    for (int i = 0; i < args.length; i++) {
+      if ("--log".equals(args[i]) && i + 1 < args.length) {
+        log = new BlockLog(Path.of(args[++i]));
+      } else if ("--batch".equals(args[i]) && i + 1 < args.length) {
+        script = args[++i];
+      } else if ("--difficulty".equals(args[i]) && i + 1 < args.length) {
+        bits = Integer.parseInt(args[++i]);
+      } else if ("--retarget".equals(args[i]) && i + 2 < args.length) {
+        interval = Integer.parseInt(args[++i]);
+        millis = Long.parseLong(args[++i]);
+      } else {
+        pen.printf("Unknown argument: '%s'\n", args[i]);
+      } // if-else
+    } // for
+
     // Set up our blockchain.
-    HashValidator validator = (h) -> {
-      if (h.length() < VALIDATOR_BYTES) {
-        return false;
+    HashValidator validator = (interval == 0) ? DifficultyTarget.leadingZeroBits(bits)
+        : new RetargetingValidator(interval, Duration.ofMillis(millis), bits);
+    BlockChain chain = new BlockChain(validator, new ParallelMiner(), log);
+
+    if (script != null) {
+      BufferedReader commands =
+          "-".equals(script) ? eyes : Files.newBufferedReader(Path.of(script));
+      PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out),
+          1 << 16));
+      batch(chain, commands, out, new PrintWriter(System.err));
+      if (log != null) {
+        chain.checkpoint();
+        log.close();
       } // if
-      for (int v = 0; v < VALIDATOR_BYTES; v++) {
-        if (h.get(v) != 0) {
-          return false;
-        } // if
-      } // for
-      return true;
-    };
-    BlockChain chain = new BlockChain(validator);
+      commands.close();
+      out.close();
+      return;
+    } // if
 
     instructions(pen);
 
@@ -87,7 +295,7 @@ public class BlockChainUI {
     String source;
     String target;
     int amount;
-    int nonce;
+    long nonce;
     Block b;
 
     while (!done) {
@@ -103,7 +311,7 @@ public class BlockChainUI {
           source = IOUtils.readLine(pen, eyes, "Source (return for deposit): ");
           target = IOUtils.readLine(pen, eyes, "Target: ");
           amount = IOUtils.readInt(pen, eyes, "Amount: ");
-          nonce = IOUtils.readInt(pen, eyes, "Nonce: ");
+          nonce = IOUtils.readLong(pen, eyes, "Nonce: ");
           if (chain.getLastBlock() == null) {
             b = new Block(chain.getSize(), new Transaction(source, target, amount),
                 new Hash(new byte[]{}), nonce);
@@ -163,12 +371,18 @@ public class BlockChainUI {
           chain.removeLast();
           break;
 
+        case "stats":
+          pen.println(chain.getMetrics());
+          break;
+
         case "transactions":
           Iterator<Block> transactionIterator = chain.blocks();
           pen.printf("Transactions");
           while (transactionIterator.hasNext()) {
             Block block = (Block) transactionIterator.next();
-            pen.printf("> '%s' : '%s'", 0, block.getTransaction().toString());
+            for (Transaction t : block.getTransactions()) {
+              pen.printf("> '%s' : '%s'", block.getNum(), t.toString());
+            } // for
           } // while
           break;
 
@@ -188,6 +402,10 @@ public class BlockChainUI {
     } // while
 
     pen.printf("\nGoodbye\n");
+    if (log != null) {
+      chain.checkpoint();
+      log.close();
+    } // if
     eyes.close();
     pen.close();
   } // main(String[])
@@ -4,9 +4,16 @@ import java.nio.ByteBuffer;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -243,6 +250,39 @@ public class TestBlock {
     assertEquals(ph, b.getPrevHash(), "correct previous hash in initial block");
   } // initialBlockTest()
 
+  /**
+   * Ensure that blocks on different threads can compute hashes at the
+   * same time.
+   */
+  @Test
+  public void concurrentHashTest() throws Exception {
+    Block[] blocks = new Block[64];
+    byte[][] expected = new byte[blocks.length][];
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = new Block(i, new Transaction("From" + i, "To" + i, i),
+          new Hash(new byte[] {(byte) i}), i * 7L);
+      expected[i] = expectedHash(blocks[i]);
+    } // for
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    for (int t = 0; t < 8; t++) {
+      results.add(pool.submit(() -> {
+        for (int round = 0; round < 200; round++) {
+          for (int i = 0; i < blocks.length; i++) {
+            if (!Arrays.equals(expected[i], blocks[i].calculateHash().getBytes())) {
+              return false;
+            } // if
+          } // for
+        } // for
+        return true;
+      }));
+    } // for
+    for (Future<Boolean> result : results) {
+      assertTrue(result.get(), "concurrent hashes are correct");
+    } // for
+    pool.shutdown();
+  } // concurrentHashTest()
+
   /**
    * Test that the toString method works.
    * Forthcoming.
@@ -1,6 +1,21 @@
 package edu.grinnell.csc207.blockchains;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Test;
 
@@ -11,4 +26,345 @@ import org.junit.jupiter.api.Test;
  * @author Samuel A. Rebelsky
  */
 public class TestBlockChain {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Build a chain with an accept-everything validator and some deposits.
+   *
+   * @param deposits
+   *   The amounts to deposit, one block each.
+   *
+   * @return the chain.
+   */
+  static BlockChain depositChain(int... deposits) {
+    BlockChain chain = new BlockChain((h) -> true);
+    for (int amount : deposits) {
+      chain.append(chain.mine(new Transaction("", "User" + amount, amount)));
+    } // for
+    return chain;
+  } // depositChain(int...)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Size and tail follow appends and removals.
+   */
+  @Test
+  public void sizeAndTailTest() {
+    BlockChain chain = depositChain();
+    assertEquals(0, chain.getSize(), "empty chain");
+    assertNull(chain.getLastBlock(), "empty chain has no tail");
+    assertFalse(chain.removeLast(), "cannot remove from an empty chain");
+
+    Block first = chain.mine(new Transaction("", "A", 10));
+    chain.append(first);
+    Block second = chain.mine(new Transaction("A", "B", 5));
+    chain.append(second);
+    Block third = chain.mine(new Transaction("B", "A", 1));
+    chain.append(third);
+    assertEquals(3, chain.getSize(), "three blocks");
+    assertSame(third, chain.getLastBlock(), "tail after appends");
+    assertEquals(third.getHash(), chain.getHash(), "hash of the tail");
+    assertArrayEquals(second.getHash().getBytes(), third.getPrevHash().getBytes(),
+        "mined blocks link to the tail");
+
+    assertTrue(chain.removeLast(), "remove the third block");
+    assertEquals(2, chain.getSize(), "two blocks after removal");
+    assertEquals(second.getHash(), chain.getHash(), "tail after removal");
+    assertNull(chain.getBlock(1).getNextBlock(), "removed block is unlinked");
+    assertTrue(chain.removeLast(), "remove the second block");
+    assertFalse(chain.removeLast(), "the first block stays");
+    assertEquals(1, chain.getSize(), "one block left");
+
+    chain.append(chain.mine(new Transaction("", "C", 3)));
+    assertEquals(2, chain.getSize(), "append after removal");
+    assertEquals(1, chain.getLastBlock().getNum(), "new block is numbered by size");
+  } // sizeAndTailTest()
+
+  /**
+   * Blocks that do not link to the tail are rejected.
+   */
+  @Test
+  public void badAppendTest() {
+    BlockChain chain = depositChain(5, 6);
+    Block stray = new Block(2, new Transaction("", "X", 1), new Hash(new byte[] {1}), 0);
+    assertThrows(IllegalArgumentException.class, () -> chain.append(stray),
+        "wrong previous hash");
+    assertEquals(2, chain.getSize(), "size unchanged after a rejected block");
+  } // badAppendTest()
+
+  /**
+   * A conditional append only adds a block that still links to the tail and pays its way.
+   */
+  @Test
+  public void tryAppendTest() {
+    BlockChain chain = depositChain(5);
+    Block late = chain.mine(new Transaction("User5", "X", 2));
+    chain.append(chain.mine(new Transaction("", "Y", 1)));
+    assertFalse(chain.tryAppend(late), "the tail moved");
+    assertEquals(2, chain.getSize(), "stale block not added");
+
+    Block next = chain.mine(new Transaction("User5", "X", 2));
+    assertTrue(chain.tryAppend(next), "links to the tail");
+    assertSame(next, chain.getLastBlock(), "added at the end");
+
+    Block overdraft = chain.mine(new Transaction("User5", "X", 4));
+    assertThrows(IllegalArgumentException.class, () -> chain.tryAppend(overdraft),
+        "User5 has only 3 left");
+    assertEquals(3, chain.getSize(), "overdraft not added");
+    assertEquals(3, chain.balance("User5"), "balances unchanged");
+    assertTrue(chain.isCorrect(), "still correct");
+  } // tryAppendTest()
+
+  /**
+   * Balances and users follow appends and removals.
+   */
+  @Test
+  public void balanceTest() {
+    BlockChain chain = depositChain(100);
+    chain.append(chain.mine(new Transaction("User100", "Bob", 30)));
+    chain.append(chain.mine(new Transaction("Bob", "Carol", 10)));
+    assertEquals(70, chain.balance("User100"), "after paying Bob");
+    assertEquals(20, chain.balance("Bob"), "after paying Carol");
+    assertEquals(10, chain.balance("Carol"), "Carol's balance");
+    assertEquals(0, chain.balance("Nobody"), "unknown user");
+    assertEquals(chain.calculateBalances(), chain.ledger.toMap(), "ledger matches a replay");
+
+    HashSet<String> users = new HashSet<String>();
+    chain.users().forEachRemaining(users::add);
+    assertEquals(Set.of("User100", "Bob", "Carol"), users, "all users");
+
+    chain.removeLast();
+    assertEquals(30, chain.balance("Bob"), "Bob's payment to Carol is undone");
+    assertEquals(0, chain.balance("Carol"), "Carol is gone");
+    users.clear();
+    chain.users().forEachRemaining(users::add);
+    assertEquals(Set.of("User100", "Bob"), users, "Carol is no longer a user");
+    assertEquals(chain.calculateBalances(), chain.ledger.toMap(), "ledger matches after removal");
+  } // balanceTest()
+
+  /**
+   * Validation passes a correct chain and names the first bad block otherwise.
+   */
+  @Test
+  public void validateTest() {
+    BlockChain chain = depositChain(50);
+    chain.append(chain.mine(new Transaction("User50", "Dee", 20)));
+    chain.append(chain.mine(new Transaction("Dee", "User50", 5)));
+    assertTrue(chain.isCorrect(), "correct chain");
+    assertEquals(3, chain.validate().getBlocksChecked(), "all blocks checked");
+
+    chain.append(chain.mine(new Transaction("Dee", "Eve", 100)));
+    ValidationReport overdraft = chain.validate();
+    assertFalse(overdraft.isValid(), "overdraft is caught");
+    assertEquals(3, overdraft.getFailedBlock(), "the overdraft block fails");
+    assertThrows(Exception.class, () -> chain.check(), "check rejects the overdraft");
+    chain.removeLast();
+
+    chain.store.transactionChunk(1).amounts[1] = 1;
+    ValidationReport tampered = chain.validate();
+    assertEquals(1, tampered.getFailedBlock(), "the tampered block fails");
+    assertEquals("hash does not match the contents", tampered.getReason(), "why it fails");
+  } // validateTest()
+
+  /**
+   * Blocks can be looked up by number and by hash as the chain grows and shrinks.
+   */
+  @Test
+  public void lookupTest() {
+    BlockChain chain = depositChain(1, 2, 3);
+    Block second = chain.getBlock(1);
+    assertEquals(2, second.getTransaction().getAmount(), "block by number");
+    assertEquals(1, chain.findByHash(second.getHash()).getNum(), "block by hash");
+    assertNull(chain.findByHash(new Hash(new byte[] {1, 2})), "unknown hash");
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.getBlock(3), "past the end");
+
+    Block third = chain.getBlock(2);
+    chain.removeLast();
+    assertNull(chain.findByHash(third.getHash()), "removed block is forgotten");
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.getBlock(2), "removed number");
+    chain.append(chain.mine(new Transaction("", "D", 4)));
+    assertSame(chain.getLastBlock(), chain.getBlock(2), "appended block by number");
+    assertSame(chain.getLastBlock(), chain.findByHash(chain.getHash()), "appended block by hash");
+  } // lookupTest()
+
+  /**
+   * Batches move balances, validate, iterate, and come off the chain as a unit.
+   */
+  @Test
+  public void batchTest() {
+    BlockChain chain = depositChain(100);
+    chain.append(chain.mine(List.of(new Transaction("User100", "Ann", 40),
+        new Transaction("Ann", "Ben", 15), new Transaction("", "Cal", 5))));
+    chain.append(chain.mine(new Transaction("Ben", "Cal", 5)));
+    assertEquals(60, chain.balance("User100"), "payer's balance");
+    assertEquals(25, chain.balance("Ann"), "Ann's balance");
+    assertEquals(10, chain.balance("Ben"), "Ben's balance");
+    assertEquals(10, chain.balance("Cal"), "Cal's balance");
+    assertTrue(chain.isCorrect(), "correct chain");
+    assertEquals(chain.calculateBalances(), chain.ledger.toMap(), "ledger matches a replay");
+    assertEquals(3, chain.getBlock(1).getTransactionCount(), "stored batch");
+    assertEquals(chain.getBlock(1).getHash(), chain.getBlock(1).calculateHash(), "stored hash");
+
+    ArrayList<Transaction> all = new ArrayList<Transaction>();
+    chain.forEach(all::add);
+    assertEquals(5, all.size(), "iteration covers every transaction");
+    assertEquals(new Transaction("Ann", "Ben", 15), all.get(2), "transactions in order");
+
+    chain.removeLast();
+    chain.removeLast();
+    assertEquals(100, chain.balance("User100"), "batch undone");
+    assertFalse(chain.ledger.contains("Ann"), "Ann is gone");
+
+    chain.append(chain.mine(List.of(new Transaction("User100", "Dee", 10),
+        new Transaction("Dee", "Eve", 11), new Transaction("Dee", "Eve", 1))));
+    ValidationReport report = chain.validate();
+    assertEquals(1, report.getFailedBlock(), "the overdrawn batch fails");
+    assertEquals("Dee has a negative balance", report.getReason(), "first bad transaction");
+  } // batchTest()
+
+  /**
+   * Bulk appends add every block or none.
+   */
+  @Test
+  public void appendAllTest() {
+    BlockChain source = depositChain(500);
+    for (int i = 0; i < 200; i++) {
+      source.append(source.mine(new Transaction("User500", "User" + i, 1)));
+    } // for
+    ArrayList<Block> blocks = new ArrayList<Block>();
+    source.blocks().forEachRemaining(blocks::add);
+
+    BlockChain chain = depositChain();
+    chain.appendAll(blocks.subList(0, 100));
+    assertEquals(100, chain.getSize(), "first half");
+    chain.appendAll(blocks.subList(100, blocks.size()));
+    assertEquals(source.getHash(), chain.getHash(), "same tail");
+    assertEquals(source.ledger.toMap(), chain.ledger.toMap(), "same balances");
+    assertEquals(blocks.size(), chain.getVerifiedSize(), "every block verified");
+
+    BlockChain partial = depositChain();
+    partial.appendAll(blocks.subList(0, 50));
+    ArrayList<Block> skipping = new ArrayList<Block>(blocks.subList(50, 60));
+    skipping.remove(5);
+    assertThrows(IllegalArgumentException.class, () -> partial.appendAll(skipping),
+        "a missing block breaks the links");
+    assertEquals(50, partial.getSize(), "nothing added after a bad link");
+
+    ArrayList<Block> forged = new ArrayList<Block>(blocks.subList(50, 60));
+    Block original = forged.get(7);
+    forged.set(7, new Block(original.getNum(), new Transaction("User500", "Thief", 400),
+        original.getPrevHash(), original.getNonce(), original.getHash()));
+    assertThrows(IllegalArgumentException.class, () -> partial.appendAll(forged),
+        "a forged block breaks its hash");
+    assertEquals(50, partial.getSize(), "nothing added after a bad hash");
+    assertEquals(0, partial.balance("Thief"), "no balance from a rejected batch");
+  } // appendAllTest()
+
+  /**
+   * A snapshot keeps the chain as it was while the chain changes.
+   */
+  @Test
+  public void snapshotTest() {
+    BlockChain chain = depositChain(10, 20, 30);
+    chain.append(chain.mine(new Transaction("User30", "Ann", 5)));
+    BlockChain snapshot = chain.snapshot();
+    Hash tail = chain.getHash();
+
+    chain.removeLast();
+    chain.removeLast();
+    chain.append(chain.mine(new Transaction("User20", "Ben", 7)));
+    chain.append(chain.mine(List.of(new Transaction("Ben", "Cal", 2),
+        new Transaction("User10", "Cal", 1))));
+
+    assertEquals(4, snapshot.getSize(), "snapshot size");
+    assertEquals(tail, snapshot.getHash(), "snapshot tail");
+    assertEquals(25, snapshot.balance("User30"), "snapshot balance");
+    assertEquals(0, snapshot.balance("Ben"), "users added later are not in the snapshot");
+    assertEquals(new Transaction("", "User30", 30), snapshot.getBlock(2).getTransaction(),
+        "overwritten block");
+    assertEquals(tail, snapshot.getBlock(2).getNextBlock().getHash(), "neighbors in the snapshot");
+    ArrayList<Transaction> all = new ArrayList<Transaction>();
+    snapshot.forEach(all::add);
+    assertEquals(4, all.size(), "snapshot transactions");
+    assertEquals(new Transaction("User30", "Ann", 5), all.get(3), "last transaction");
+    assertTrue(snapshot.isCorrect(), "snapshot validates");
+    assertEquals(snapshot.calculateBalances(), snapshot.ledger.toMap(), "snapshot ledger");
+    assertEquals(chain.calculateBalances(), chain.ledger.toMap(), "chain ledger");
+    assertEquals(3, chain.balance("Cal"), "the chain moved on");
+    assertThrows(UnsupportedOperationException.class, () -> snapshot.removeLast(), "read-only");
+  } // snapshotTest()
+
+  /**
+   * Readers see a consistent chain while another thread appends to it.
+   */
+  @Test
+  public void concurrentReadTest() throws Exception {
+    BlockChain chain = depositChain();
+    for (int i = 0; i < 4; i++) {
+      chain.append(chain.mine(new Transaction("", "User" + i, 250)));
+    } // for
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      ArrayList<Future<?>> readers = new ArrayList<Future<?>>();
+      for (int r = 0; r < 3; r++) {
+        readers.add(pool.submit(() -> {
+          int seen = 0;
+          while (seen < 5000) {
+            int size = chain.getSize();
+            assertTrue(size >= seen, "the chain never shrinks");
+            seen = size;
+            Block last = chain.getBlock(size - 1);
+            assertEquals(size - 1, last.getNum(), "block by number");
+            assertEquals(last.getNum(), chain.findByHash(last.getHash()).getNum(), "by hash");
+            for (int u = 0; u < 4; u++) {
+              int balance = chain.balance("User" + u);
+              assertTrue(balance >= 249 && balance <= 251, "balance " + balance);
+            } // for
+            int count = 0;
+            for (Iterator<String> users = chain.users(); users.hasNext(); users.next()) {
+              count++;
+            } // for
+            assertEquals(4, count, "users");
+          } // while
+          int num = 0;
+          for (Iterator<Block> blocks = chain.blocks(); blocks.hasNext(); num++) {
+            assertEquals(num, blocks.next().getNum(), "blocks in order");
+          } // for
+        }));
+      } // for
+      for (int i = 4; i < 5000; i++) {
+        chain.append(chain.mine(new Transaction("User" + (i % 4), "User" + ((i + 1) % 4), 1)));
+      } // for
+      for (Future<?> reader : readers) {
+        reader.get();
+      } // for
+    } finally {
+      pool.shutdownNow();
+    } // try-finally
+    assertTrue(chain.isCorrect(), "correct chain");
+  } // concurrentReadTest()
+
+  /**
+   * Validation checks every hash against the chain's validator.
+   */
+  @Test
+  public void validatorTest() {
+    DifficultyTarget target = DifficultyTarget.leadingZeroBits(4);
+    BlockChain chain = new BlockChain(target);
+    chain.append(chain.mine(new Transaction("", "A", 1)));
+    Transaction t = new Transaction("", "B", 2);
+    Block weak = new Block(1, t, chain.getHash(), 0);
+    for (long nonce = 1; target.isValid(weak.getHash()); nonce++) {
+      weak = new Block(1, t, chain.getHash(), nonce);
+    } // for
+    chain.append(weak);
+    ValidationReport report = chain.validate();
+    assertEquals(1, report.getFailedBlock(), "the unmined block fails");
+    assertEquals("hash is not valid", report.getReason(), "why it fails");
+  } // validatorTest()
 } // class TestBlockChain
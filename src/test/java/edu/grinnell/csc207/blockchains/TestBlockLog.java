@@ -0,0 +1,282 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Some simple tests of our BlockLog class.
+ *
+ * @author Paden Houck
+ */
+public class TestBlockLog {
+  /**
+   * A validator that accepts everything.
+   */
+  static final HashValidator ANY = (h) -> true;
+
+  /**
+   * Make sure two blocks hold the same data.
+   *
+   * @param expected The block written.
+   * @param actual   The block read back.
+   */
+  static void assertSameBlock(Block expected, Block actual) {
+    assertEquals(expected.getNum(), actual.getNum(), "number");
+    assertEquals(expected.getTransaction(), actual.getTransaction(), "transaction");
+    assertEquals(expected.getNonce(), actual.getNonce(), "nonce");
+    assertEquals(expected.getPrevHash(), actual.getPrevHash(), "previous hash");
+    assertEquals(expected.getHash(), actual.getHash(), "hash");
+  } // assertSameBlock(Block, Block)
+
+  /**
+   * Blocks written to the log can be read back after reopening it, across segments.
+   */
+  @Test
+  public void reopenTest(@TempDir Path dir) throws Exception {
+    BlockChain chain = new BlockChain(ANY);
+    chain.append(chain.mine(new Transaction("", "Zoë", 100)));
+    for (int i = 1; i < 50; i++) {
+      chain.append(chain.mine(new Transaction("Zoë", "User" + i, 1)));
+    } // for
+
+    try (BlockLog log = new BlockLog(dir, 512)) {
+      chain.blocks().forEachRemaining(log::append);
+      assertEquals(50, log.size(), "blocks written");
+    } // try
+    assertTrue(Files.exists(dir.resolve("segment-000003.log")), "small segments roll over");
+
+    try (BlockLog log = new BlockLog(dir, 512)) {
+      assertEquals(50, log.size(), "blocks after reopening");
+      int i = 0;
+      for (Iterator<Block> it = chain.blocks(); it.hasNext(); i++) {
+        assertSameBlock(it.next(), log.read(i));
+      } // for
+      assertEquals(new Transaction("Zoë", "User7", 1), log.readTransaction(7),
+          "transaction only");
+      assertThrows(IndexOutOfBoundsException.class, () -> log.read(50), "past the end");
+    } // try
+  } // reopenTest()
+
+  /**
+   * Removing blocks truncates the log, and later appends replace them.
+   */
+  @Test
+  public void removeLastTest(@TempDir Path dir) throws Exception {
+    BlockChain chain = new BlockChain(ANY);
+    for (int i = 0; i < 20; i++) {
+      chain.append(chain.mine(new Transaction("", "User" + i, i)));
+    } // for
+    try (BlockLog log = new BlockLog(dir, 256)) {
+      chain.blocks().forEachRemaining(log::append);
+      for (int i = 0; i < 15; i++) {
+        assertTrue(log.removeLast(), "remove block " + (19 - i));
+      } // for
+      assertEquals(5, log.size(), "five blocks left");
+    } // try
+    try (BlockLog log = new BlockLog(dir, 256)) {
+      assertEquals(5, log.size(), "removals survive reopening");
+      assertSameBlock(chain.blocks().next(), log.read(0));
+      while (log.removeLast()) {
+        continue;
+      } // while
+      assertFalse(log.removeLast(), "cannot remove from an empty log");
+      assertEquals(0, log.size(), "empty log");
+    } // try
+  } // removeLastTest()
+
+  /**
+   * Appending and then reading remaps a segment only a few times as it grows, and closing the
+   * log leaves only the records in it.
+   */
+  @Test
+  public void mappingTest(@TempDir Path dir) throws Exception {
+    BlockChain chain = new BlockChain(ANY);
+    long tail;
+    try (BlockLog log = new BlockLog(dir)) {
+      int remaps = 0;
+      for (int i = 0; i < 2000; i++) {
+        Block blk = chain.mine(new Transaction("", "User" + i, i));
+        chain.append(blk);
+        Object before = log.maps.get(0);
+        log.append(blk);
+        remaps += (log.maps.get(0) == before) ? 0 : 1;
+        assertSameBlock(blk, log.read(i));
+      } // for
+      assertTrue(remaps <= 10, "remapped " + remaps + " times");
+      assertTrue(log.removeLast(), "remove the last block");
+      assertSameBlock(chain.getBlock(1998), log.read(1998));
+      tail = log.tail;
+    } // try
+    assertEquals(tail, Files.size(dir.resolve("segment-000000.log")), "no space left over");
+  } // mappingTest()
+
+  /**
+   * A chain kept in a log survives being closed and reopened.
+   */
+  @Test
+  public void durableChainTest(@TempDir Path dir) throws Exception {
+    Hash tail;
+    try (BlockLog log = new BlockLog(dir)) {
+      BlockChain chain = new BlockChain(ANY, null, log);
+      chain.append(chain.mine(new Transaction("", "Ann", 30)));
+      chain.append(chain.mine(new Transaction("Ann", "Ben", 10)));
+      chain.append(chain.mine(new Transaction("Ben", "Cat", 4)));
+      assertTrue(chain.removeLast(), "remove the payment to Cat");
+      chain.append(chain.mine(new Transaction("Ben", "Cat", 3)));
+      tail = chain.getHash();
+    } // try
+    try (BlockLog log = new BlockLog(dir)) {
+      BlockChain chain = new BlockChain(ANY, null, log);
+      assertEquals(3, chain.getSize(), "size after reopening");
+      assertEquals(tail, chain.getHash(), "tail after reopening");
+      assertEquals(20, chain.balance("Ann"), "Ann's balance");
+      assertEquals(7, chain.balance("Ben"), "Ben's balance");
+      assertEquals(3, chain.balance("Cat"), "Cat's balance");
+      assertTrue(chain.isCorrect(), "reopened chain is correct");
+      chain.append(chain.mine(new Transaction("Cat", "Ann", 1)));
+      assertTrue(chain.isCorrect(), "reopened chain can grow");
+      assertEquals(tail, chain.getBlock(2).getHash(), "block by number");
+      assertEquals(1, chain.findByHash(chain.getBlock(1).getHash()).getNum(), "block by hash");
+      assertTrue(chain.removeLast(), "remove the payment to Ann");
+      assertEquals(tail, chain.findByHash(tail).getHash(), "lookups follow removals");
+    } // try
+  } // durableChainTest()
+
+  /**
+   * Batches survive the log alongside single transactions.
+   */
+  @Test
+  public void batchTest(@TempDir Path dir) throws Exception {
+    Hash tail;
+    try (BlockLog log = new BlockLog(dir, 512)) {
+      BlockChain chain = new BlockChain(ANY, null, log);
+      chain.append(chain.mine(new Transaction("", "Ann", 30)));
+      chain.append(chain.mine(TestMerkleTree.batch(40)));
+      chain.append(chain.mine(new Transaction("Ann", "Ben", 5)));
+      tail = chain.getHash();
+    } // try
+    try (BlockLog log = new BlockLog(dir, 512)) {
+      BlockChain chain = new BlockChain(ANY, null, log);
+      assertEquals(tail, chain.getHash(), "tail after reopening");
+      assertEquals(TestMerkleTree.batch(40), log.readTransactions(1), "batch read back");
+      assertEquals(log.read(1).getHash(), log.readHash(1), "hash of a batch");
+      assertThrows(IllegalStateException.class, () -> log.readTransaction(1), "not a single");
+      assertEquals(chain.calculateBalances(), chain.ledger.toMap(), "ledger matches a replay");
+      assertEquals(25, chain.balance("Ann"), "Ann's balance");
+      assertEquals(1, chain.validate().getFailedBlock(), "the batch overdraws From0");
+      assertTrue(chain.removeLast(), "remove the payment to Ben");
+      assertTrue(chain.removeLast(), "remove the batch");
+      assertEquals(1, chain.ledger.userCount(), "only Ann is left");
+    } // try
+  } // batchTest()
+
+  /**
+   * Reopening a chain starts from its newest usable checkpoint.
+   */
+  @Test
+  public void checkpointTest(@TempDir Path dir) throws Exception {
+    try (BlockLog log = new BlockLog(dir)) {
+      BlockChain chain = new BlockChain(ANY, null, log);
+      chain.append(chain.mine(new Transaction("", "Ann", 30)));
+      chain.append(chain.mine(new Transaction("Ann", "Ben", 10)));
+      chain.checkpoint();
+      chain.append(chain.mine(new Transaction("Ben", "Cat", 4)));
+      chain.append(chain.mine(new Transaction("Cat", "Dan", 40)));
+      assertEquals(3, chain.getVerifiedSize(), "the overdraft is not verified");
+      chain.checkpoint();
+      assertEquals(4, log.latestCheckpoint().getSize(), "newest checkpoint");
+    } // try
+
+    try (BlockLog log = new BlockLog(dir)) {
+      BlockChain chain = new BlockChain(ANY, null, log);
+      assertEquals(4, chain.getSize(), "size from the checkpoint");
+      assertEquals(3, chain.getVerifiedSize(), "verified size from the checkpoint");
+      assertEquals(-36, chain.balance("Cat"), "balance from the checkpoint");
+      assertTrue(chain.removeLast(), "remove the overdraft");
+      assertTrue(chain.removeLast(), "remove the payment to Cat");
+      chain.append(chain.mine(new Transaction("Ben", "Cat", 3)));
+      chain.append(chain.mine(new Transaction("Cat", "Ann", 1)));
+    } // try
+
+    try (BlockLog log = new BlockLog(dir)) {
+      assertEquals(2, log.latestCheckpoint().getSize(), "the replaced blocks' checkpoint is stale");
+      BlockChain chain = new BlockChain(ANY, null, log);
+      assertEquals(4, chain.getVerifiedSize(), "every block verified");
+      assertEquals(chain.calculateBalances(), chain.ledger.toMap(), "ledger matches a replay");
+      assertEquals(2, chain.balance("Cat"), "Cat's balance");
+    } // try
+  } // checkpointTest()
+
+  /**
+   * A damaged checkpoint is skipped.
+   */
+  @Test
+  public void damagedCheckpointTest(@TempDir Path dir) throws Exception {
+    try (BlockLog log = new BlockLog(dir)) {
+      BlockChain chain = new BlockChain(ANY, null, log);
+      chain.append(chain.mine(new Transaction("", "Ann", 30)));
+      chain.checkpoint();
+      chain.append(chain.mine(new Transaction("Ann", "Ben", 10)));
+      chain.checkpoint();
+      chain.append(chain.mine(new Transaction("Ann", "Ben", 5)));
+      chain.checkpoint();
+    } // try
+    assertFalse(Files.exists(dir.resolve(String.format(BlockLog.CHECKPOINT_FILE, 1))),
+        "only the newest checkpoints are kept");
+
+    Path newest = dir.resolve(String.format(BlockLog.CHECKPOINT_FILE, 3));
+    byte[] bytes = Files.readAllBytes(newest);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(newest, bytes);
+    try (BlockLog log = new BlockLog(dir)) {
+      assertEquals(2, log.latestCheckpoint().getSize(), "falls back to the older checkpoint");
+    } // try
+
+    Files.write(dir.resolve(String.format(BlockLog.CHECKPOINT_FILE, 2)), new byte[] {1, 2},
+        StandardOpenOption.TRUNCATE_EXISTING);
+    try (BlockLog log = new BlockLog(dir)) {
+      assertNull(log.latestCheckpoint(), "no usable checkpoint");
+      BlockChain chain = new BlockChain(ANY, null, log);
+      assertEquals(3, chain.getVerifiedSize(), "replayed from the start");
+      assertEquals(15, chain.balance("Ann"), "Ann's balance");
+    } // try
+  } // damagedCheckpointTest()
+
+  /**
+   * A checkpoint whose lengths claim more than the file holds is skipped without reading them.
+   */
+  @Test
+  public void hugeLengthCheckpointTest(@TempDir Path dir) throws Exception {
+    try (BlockLog log = new BlockLog(dir)) {
+      BlockChain chain = new BlockChain(ANY, null, log);
+      chain.append(chain.mine(new Transaction("", "Ann", 30)));
+      chain.checkpoint();
+    } // try
+    Path path = dir.resolve(String.format(BlockLog.CHECKPOINT_FILE, 1));
+    byte[] original = Files.readAllBytes(path);
+    // The length of the tail hash, then the length of the first user's name.
+    for (int offset : new int[] {16, 16 + 4 + Sha256.DIGEST_BYTES + 4}) {
+      ByteBuffer damaged = ByteBuffer.wrap(original.clone());
+      damaged.putInt(offset, Integer.MAX_VALUE - 8);
+      Files.write(path, damaged.array());
+      try (BlockLog log = new BlockLog(dir)) {
+        assertNull(log.latestCheckpoint(), "no usable checkpoint at " + offset);
+        BlockChain chain = new BlockChain(ANY, null, log);
+        assertEquals(30, chain.balance("Ann"), "replayed from the start");
+      } // try
+    } // for
+  } // hugeLengthCheckpointTest()
+} // class TestBlockLog
@@ -0,0 +1,138 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our BlockStore class.
+ *
+ * @author Paden Houck
+ */
+public class TestBlockStore {
+  /**
+   * Make a run of blocks, each linked to the one before.
+   *
+   * @param count How many blocks to make.
+   * @return the blocks.
+   */
+  static ArrayList<Block> blocks(int count) {
+    ArrayList<Block> result = new ArrayList<Block>();
+    Hash prevHash = new Hash(new byte[] {});
+    for (int i = 0; i < count; i++) {
+      Block blk = new Block(i, new Transaction((i == 0) ? "" : "U" + (i % 7), "U" + (i % 5), i),
+          prevHash, i * 3L);
+      result.add(blk);
+      prevHash = blk.getHash();
+    } // for
+    return result;
+  } // blocks(int)
+
+  /**
+   * Blocks read back match the blocks stored, across chunks.
+   */
+  @Test
+  public void roundTripTest() {
+    ArrayList<Block> blocks = blocks(BlockStore.CHUNK_BLOCKS + 10);
+    BlockStore store = new BlockStore();
+    blocks.forEach(store::append);
+    assertEquals(blocks.size(), store.size(), "every block stored");
+    assertEquals(8, store.users().size(), "seven users and the empty name");
+    for (int i : new int[] {0, 1, BlockStore.CHUNK_BLOCKS - 1, BlockStore.CHUNK_BLOCKS,
+        blocks.size() - 1}) {
+      TestBlockLog.assertSameBlock(blocks.get(i), store.read(i));
+      assertEquals(blocks.get(i).getTransactions(), store.readTransactions(i),
+          "transaction " + i);
+    } // for
+    assertEquals(UserDictionary.NOBODY, store.sourceId(0), "deposit source");
+    assertThrows(IndexOutOfBoundsException.class, () -> store.read(blocks.size()), "past the end");
+  } // roundTripTest()
+
+  /**
+   * Views find their neighbors in the store.
+   */
+  @Test
+  public void viewTest() {
+    BlockStore store = new BlockStore();
+    blocks(3).forEach(store::append);
+    Block middle = store.read(1);
+    assertEquals(0, middle.getPreviousBlock().getNum(), "previous view");
+    assertEquals(2, middle.getNextBlock().getNum(), "next view");
+    assertNull(store.read(2).getNextBlock(), "no block after the last");
+    assertTrue(store.removeLast(), "remove the last block");
+    assertNull(middle.getNextBlock(), "removed neighbor");
+  } // viewTest()
+
+  /**
+   * Removing blocks across a chunk boundary, then appending again.
+   */
+  @Test
+  public void removeLastTest() {
+    ArrayList<Block> blocks = blocks(BlockStore.CHUNK_BLOCKS + 2);
+    BlockStore store = new BlockStore();
+    blocks.forEach(store::append);
+    for (int i = 0; i < 3; i++) {
+      assertTrue(store.removeLast(), "remove a block");
+    } // for
+    assertEquals(1, store.chunks.size(), "empty chunk dropped");
+    store.append(blocks.get(BlockStore.CHUNK_BLOCKS - 1));
+    TestBlockLog.assertSameBlock(blocks.get(BlockStore.CHUNK_BLOCKS - 1),
+        store.read(BlockStore.CHUNK_BLOCKS - 1));
+    assertThrows(IllegalArgumentException.class, () -> store.append(blocks.get(0)),
+        "block that does not link");
+    while (store.removeLast()) {
+      continue;
+    } // while
+    assertFalse(store.removeLast(), "empty store");
+  } // removeLastTest()
+
+  /**
+   * A snapshot keeps its blocks while the store removes and replaces them, across chunks.
+   */
+  @Test
+  public void snapshotTest() {
+    ArrayList<Block> blocks = blocks(BlockStore.CHUNK_BLOCKS + 100);
+    BlockStore store = new BlockStore();
+    blocks.forEach(store::append);
+    BlockStore snapshot = store.snapshot();
+    BlockStore.Chunk first = store.chunk(0);
+
+    for (int i = 0; i < 200; i++) {
+      store.removeLast();
+    } // for
+    Hash prevHash = store.readHash(store.size() - 1);
+    for (int i = 0; i < 300; i++) {
+      Block blk = new Block(store.size(), new Transaction("", "New" + i, i), prevHash, 0);
+      store.append(blk);
+      prevHash = blk.getHash();
+    } // for
+
+    assertEquals(blocks.size(), snapshot.size(), "snapshot size");
+    for (int i : new int[] {0, BlockStore.CHUNK_BLOCKS - 150, BlockStore.CHUNK_BLOCKS - 1,
+        BlockStore.CHUNK_BLOCKS, blocks.size() - 1}) {
+      TestBlockLog.assertSameBlock(blocks.get(i), snapshot.read(i));
+      assertEquals(blocks.get(i).getTransactions(), snapshot.readTransactions(i),
+          "snapshot transaction " + i);
+    } // for
+    assertEquals(new Transaction("", "New0", 0),
+        store.read(BlockStore.CHUNK_BLOCKS - 100).getTransaction(), "the store moved on");
+    assertNotSame(first, store.chunk(0), "the overwritten chunk was copied");
+    assertSame(first, snapshot.chunk(0), "the snapshot kept the original");
+    assertEquals(-1, snapshot.users.find("New0"), "the store's new users are not in it");
+
+    BlockStore.Chunk last = store.chunk(store.size() - 1);
+    Block next = new Block(store.size(), new Transaction("", "X", 1), prevHash, 0);
+    store.snapshot();
+    store.append(next);
+    assertSame(last, store.chunk(store.size() - 1), "appends past a snapshot write in place");
+  } // snapshotTest()
+} // class TestBlockStore
@@ -0,0 +1,206 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our BlockTree class.
+ *
+ * @author Paden Houck
+ */
+public class TestBlockTree {
+  /**
+   * A validator that accepts everything.
+   */
+  static final HashValidator ANY = (h) -> true;
+
+  /**
+   * Make a block that extends another.
+   *
+   * @param prev The block it extends.
+   * @param t    The transaction.
+   * @return the block.
+   */
+  static Block extend(Block prev, Transaction t) {
+    return new Block(prev.getNum() + 1, t, prev.getHash(), ANY);
+  } // extend(Block, Transaction)
+
+  /**
+   * Make a block that extends another and records the bits it was mined for.
+   *
+   * @param prev The block it extends.
+   * @param t    The transaction.
+   * @param bits The number of bits.
+   * @return the block.
+   */
+  static Block recording(Block prev, Transaction t, int bits) {
+    Block blk = new Block(prev.getNum() + 1, t, prev.getHash(),
+        (long) bits << RetargetingValidator.SHIFT);
+    blk.mine(DifficultyTarget.leadingZeroBits(bits));
+    return blk;
+  } // recording(Block, Transaction, int)
+
+  /**
+   * The longest branch becomes the chain, and switching back and forth keeps the balances right.
+   */
+  @Test
+  public void reorgTest() {
+    BlockChain chain = new BlockChain(ANY);
+    BlockTree tree = new BlockTree(chain, false);
+    Block genesis = new Block(0, new Transaction("", "Ann", 100), new Hash(new byte[] {}), ANY);
+    Block a1 = extend(genesis, new Transaction("Ann", "Ben", 10));
+    Block a2 = extend(a1, new Transaction("Ann", "Ben", 10));
+    for (Block blk : new Block[] {genesis, a1, a2}) {
+      assertTrue(tree.add(blk), "add block " + blk.getNum());
+    } // for
+    assertEquals(3, chain.getSize(), "blocks on the chain");
+    assertFalse(tree.add(a2), "a block already in the tree");
+
+    Block b1 = extend(genesis, new Transaction("Ann", "Cat", 30));
+    Block b2 = extend(b1, new Transaction("Cat", "Dan", 5));
+    tree.add(b1);
+    tree.add(b2);
+    assertEquals(a2.getHash(), chain.getHash(), "ties go to the chain we had");
+    assertEquals(2, tree.getSideBlocks(), "a side branch");
+
+    Block b3 = extend(b2, new Transaction("Ann", "Dan", 1));
+    tree.add(b3);
+    assertEquals(b3.getHash(), chain.getHash(), "the longer branch wins");
+    assertEquals(1, tree.getReorgs(), "one reorganization");
+    assertEquals(69, chain.balance("Ann"), "Ann's balance on the new branch");
+    assertEquals(0, chain.balance("Ben"), "Ben's payments are undone");
+    assertEquals(2, tree.getSideBlocks(), "the old blocks are a side branch");
+    assertEquals(chain.calculateBalances(), chain.ledger.toMap(), "ledger matches a replay");
+
+    Block a3 = extend(a2, new Transaction("Ben", "Eve", 20));
+    tree.add(a3);
+    tree.add(extend(a3, new Transaction("Eve", "Ann", 1)));
+    assertEquals(5, chain.getSize(), "back on the first branch");
+    assertEquals(2, tree.getReorgs(), "two reorganizations");
+    assertEquals(19, chain.balance("Eve"), "Eve's balance");
+    assertEquals(0, chain.balance("Cat"), "Cat's deposit is undone");
+    assertEquals(chain.calculateBalances(), chain.ledger.toMap(), "ledger matches after switching");
+    assertTrue(chain.isCorrect(), "correct chain");
+    assertEquals(a2.getHash(), chain.findByHash(a2.getHash()).getHash(), "lookups follow");
+  } // reorgTest()
+
+  /**
+   * A branch that overdraws is dropped instead of becoming the chain.
+   */
+  @Test
+  public void badBranchTest() {
+    BlockChain chain = new BlockChain(ANY);
+    BlockTree tree = new BlockTree(chain, false);
+    Block genesis = new Block(0, new Transaction("", "Ann", 10), new Hash(new byte[] {}), ANY);
+    Block a1 = extend(genesis, new Transaction("Ann", "Ben", 5));
+    tree.add(genesis);
+    tree.add(a1);
+
+    Block b1 = extend(genesis, new Transaction("Ann", "Cat", 4));
+    Block b2 = extend(b1, new Transaction("Ann", "Dan", 50));
+    Block b3 = extend(b2, new Transaction("Dan", "Eve", 1));
+    tree.add(b1);
+    tree.add(b2);
+    assertEquals(a1.getHash(), chain.getHash(), "the overdrawn branch is not taken");
+    assertEquals(1, tree.getSideBlocks(), "only the good side block is kept");
+    assertEquals(5, chain.balance("Ann"), "balances unchanged");
+    assertThrows(IllegalArgumentException.class, () -> tree.add(b3), "its descendants are lost");
+
+    Block bad = extend(a1, new Transaction("Ben", "Cat", 6));
+    tree.add(bad);
+    assertEquals(a1.getHash(), chain.getHash(), "an overdraft cannot extend the chain");
+    assertEquals(chain.calculateBalances(), chain.ledger.toMap(), "ledger matches a replay");
+  } // badBranchTest()
+
+  /**
+   * When comparing by work, one block mined for more bits beats several mined for fewer, however
+   * lucky their hashes.
+   */
+  @Test
+  public void workTest() {
+    BlockChain chain = new BlockChain(new RetargetingValidator(1, Duration.ofHours(1), 0));
+    BlockTree tree = new BlockTree(chain, true);
+    Block genesis = chain.mine(new Transaction("", "Ann", 10));
+    tree.add(genesis);
+    Block prev = genesis;
+    for (int i = 0; i < 3; i++) {
+      prev = recording(prev, new Transaction("Ann", "Ben", 1), 0);
+      tree.add(prev);
+    } // for
+    assertEquals(4, chain.getSize(), "a long chain of light blocks");
+    assertEquals(1.0, chain.check.work(prev), "a light block");
+
+    Block heavy = recording(genesis, new Transaction("Ann", "Cat", 1), 2);
+    assertEquals(4.0, chain.check.work(heavy), "a heavy block");
+    tree.add(heavy);
+    assertEquals(heavy.getHash(), chain.getHash(), "more work wins over more blocks");
+    assertEquals(2, chain.getSize(), "the shorter chain");
+    assertEquals(1, chain.balance("Cat"), "Cat's balance");
+
+    assertEquals(256.0, DifficultyTarget.leadingZeroBits(8).work(heavy), "work of a target");
+    assertEquals(1.0, ANY.work(heavy), "a validator that does not say counts each block once");
+  } // workTest()
+
+  /**
+   * An empty chain takes only a first block, and blocks may build on first blocks that compete
+   * with the chain's.
+   */
+  @Test
+  public void rootTest() {
+    BlockChain chain = new BlockChain(ANY);
+    BlockTree tree = new BlockTree(chain, false);
+    Hash none = new Hash(new byte[] {});
+    assertThrows(IllegalArgumentException.class,
+        () -> tree.add(new Block(3, new Transaction("", "Ann", 1), new Hash(new byte[] {7}), ANY)),
+        "an orphan");
+    assertThrows(IllegalArgumentException.class,
+        () -> tree.add(new Block(1, new Transaction("", "Ann", 1), none, ANY)),
+        "not a first block");
+    assertEquals(0, chain.getSize(), "nothing added");
+
+    Block genesis = new Block(0, new Transaction("", "Ann", 10), none, ANY);
+    Block other = new Block(0, new Transaction("", "Bob", 10), none, ANY);
+    assertTrue(tree.add(genesis), "a first block");
+    assertTrue(tree.add(other), "a competing first block");
+    assertEquals(genesis.getHash(), chain.getHash(), "ties go to the chain we had");
+    assertEquals(1, tree.getSideBlocks(), "the other first block is kept");
+
+    chain.removeLast();
+    Block next = extend(other, new Transaction("Bob", "Cat", 4));
+    assertTrue(tree.add(next), "a block on a side branch of an empty chain");
+    assertEquals(2, chain.getSize(), "the whole branch is linked");
+    assertEquals(other.getHash(), chain.getBlock(0).getHash(), "starting at its first block");
+    assertEquals(6, chain.balance("Bob"), "Bob's balance");
+    assertThrows(IllegalArgumentException.class,
+        () -> tree.add(new Block(5, new Transaction("", "Ann", 1), next.getHash(), ANY)),
+        "a number that does not follow");
+  } // rootTest()
+
+  /**
+   * Blocks must extend a block in the tree and have proper hashes.
+   */
+  @Test
+  public void rejectTest() {
+    BlockChain chain = new BlockChain(DifficultyTarget.leadingZeroBits(4));
+    BlockTree tree = new BlockTree(chain, false);
+    Block genesis = chain.mine(new Transaction("", "Ann", 10));
+    tree.add(genesis);
+    Block stray = new Block(5, new Transaction("", "Ann", 1), new Hash(new byte[] {1}),
+        chain.check);
+    assertThrows(IllegalArgumentException.class, () -> tree.add(stray), "unknown parent");
+    Block weak = new Block(1, new Transaction("", "Ben", 1), genesis.getHash(), 0);
+    for (long nonce = 1; chain.check.isValid(weak.getHash()); nonce++) {
+      weak = new Block(1, new Transaction("", "Ben", 1), genesis.getHash(), nonce);
+    } // for
+    Block unmined = weak;
+    assertThrows(IllegalArgumentException.class, () -> tree.add(unmined), "invalid hash");
+    assertEquals(1, chain.getSize(), "nothing added");
+  } // rejectTest()
+} // class TestBlockTree
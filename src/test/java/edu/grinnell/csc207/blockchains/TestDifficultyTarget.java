@@ -0,0 +1,72 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our DifficultyTarget class.
+ *
+ * @author Paden Houck
+ */
+public class TestDifficultyTarget {
+  /**
+   * Make a 32-byte hash whose first bytes are given and whose remaining bytes are 0xFF.
+   *
+   * @param start The first bytes.
+   * @return the bytes of the hash.
+   */
+  static byte[] digest(int... start) {
+    byte[] bytes = new byte[Sha256.DIGEST_BYTES];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) ((i < start.length) ? start[i] : 0xff);
+    } // for
+    return bytes;
+  } // digest(int...)
+
+  /**
+   * Leading zero bits are counted at bit, not byte, granularity.
+   */
+  @Test
+  public void leadingZeroBitsTest() {
+    DifficultyTarget twelve = DifficultyTarget.leadingZeroBits(12);
+    assertTrue(twelve.isValidDigest(digest(0x00, 0x0f)), "exactly 12 zero bits");
+    assertTrue(twelve.isValidDigest(digest(0x00, 0x00)), "more than 12 zero bits");
+    assertFalse(twelve.isValidDigest(digest(0x00, 0x10)), "only 11 zero bits");
+    assertFalse(twelve.isValidDigest(digest(0x80)), "no zero bits");
+    assertTrue(DifficultyTarget.leadingZeroBits(0).isValidDigest(digest(0xff)),
+        "zero bits accepts anything");
+    assertFalse(twelve.isValidDigest(new byte[] {0, 0}), "wrong length");
+  } // leadingZeroBitsTest()
+
+  /**
+   * The Hash and raw byte checks agree.
+   */
+  @Test
+  public void hashAgreesWithDigestTest() {
+    DifficultyTarget target = new DifficultyTarget(digest(0x00, 0x7f, 0x80));
+    int[][] cases = {{0x00, 0x7f, 0x80}, {0x00, 0x7f, 0x81}, {0x00, 0x7e}, {0x01}, {0x00, 0x80}};
+    for (int[] start : cases) {
+      byte[] bytes = digest(start);
+      assertEquals(target.isValidDigest(bytes), target.isValid(new Hash(bytes)),
+          "Hash and digest checks agree for " + new Hash(bytes));
+    } // for
+    assertTrue(target.isValidDigest(digest(0x00, 0x7f, 0x80)), "target itself is valid");
+    assertFalse(target.isValidDigest(digest(0x00, 0x7f, 0x81)), "just above target");
+  } // hashAgreesWithDigestTest()
+
+  /**
+   * Mining with a bit-level target produces hashes that meet it.
+   */
+  @Test
+  public void mineTest() {
+    DifficultyTarget target = DifficultyTarget.leadingZeroBits(10);
+    Block b = new Block(1, new Transaction("", "Miner", 10), new Hash(new byte[] {}), target);
+    assertTrue(target.isValid(b.getHash()), "mined block meets the target");
+    assertEquals(0, b.getHash().get(0), "first byte is zero");
+    assertTrue((b.getHash().get(1) & 0xc0) == 0, "next two bits are zero");
+  } // mineTest()
+} // class TestDifficultyTarget
@@ -6,6 +6,8 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
+import java.util.HashMap;
+
 import org.junit.jupiter.api.Test;
 
 
@@ -106,5 +108,22 @@ public class TestHash {
     assertFalse(h.equals(new Hash(bytes)), 
        "a hash does not equal a hash made from its modified bytes");
   } // testReturnBytes
-  
+
+  /**
+   * Equal hashes have equal hash codes and work as map keys.
+   */
+  @Test
+  public void testHashCode() {
+    Hash h = new Hash(new byte[] {2, 7, 1, 8, 2, 8});
+    Hash same = new Hash(new byte[] {2, 7, 1, 8, 2, 8});
+    assertEquals(h.hashCode(), same.hashCode(), "equal hashes have equal codes");
+    assertEquals(h.hashCode(), h.hashCode(), "hash code is stable");
+    assertEquals(h.toString(), same.toString(), "equal hashes have equal strings");
+    HashMap<Hash, String> map = new HashMap<Hash, String>();
+    map.put(h, "e");
+    assertEquals("e", map.get(same), "a hash finds an equal key");
+    assertFalse(map.containsKey(new Hash(new byte[] {2, 7, 1, 8, 2, 9})),
+        "a different hash is not a key");
+  } // testHashCode
+
 } // class TestHash
@@ -0,0 +1,57 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our Ledger class.
+ *
+ * @author Paden Houck
+ */
+public class TestLedger {
+  /**
+   * Transactions by name and by id land in the same balances, and reverting undoes them.
+   */
+  @Test
+  public void applyRevertTest() {
+    UserDictionary users = new UserDictionary();
+    Ledger ledger = new Ledger(users);
+    ledger.apply(new Transaction("", "Ann", 50));
+    int ann = users.find("Ann");
+    int ben = users.id("Ben");
+    ledger.apply(ann, ben, 20);
+    assertEquals(30, ledger.balance("Ann"), "Ann's balance");
+    assertEquals(20, ledger.balanceOf(ben), "Ben's balance by id");
+    assertEquals(2, ledger.userCount(), "two users");
+    assertEquals(Map.of("Ann", 30, "Ben", 20), ledger.toMap(), "balances as a map");
+
+    ledger.revert(new Transaction("Ann", "Ben", 20));
+    assertFalse(ledger.contains("Ben"), "Ben is forgotten");
+    assertTrue(users.find("Ben") >= 0, "but keeps his id");
+    assertEquals(1, ledger.userCount(), "one user");
+    assertEquals("Ann", ledger.users().next(), "only Ann is left");
+  } // applyRevertTest()
+
+  /**
+   * Copies do not share balances or ids.
+   */
+  @Test
+  public void copyTest() {
+    Ledger ledger = new Ledger();
+    for (int i = 0; i < 100; i++) {
+      ledger.apply(new Transaction("", "User" + i, i));
+    } // for
+    Ledger copy = ledger.copy();
+    copy.apply(new Transaction("User99", "New", 9));
+    assertEquals(99, ledger.balance("User99"), "original unchanged");
+    assertEquals(-1, ledger.dictionary().find("New"), "original dictionary unchanged");
+    assertEquals(90, copy.balance("User99"), "copy changed");
+    assertEquals(101, copy.userCount(), "copy has the new user");
+  } // copyTest()
+} // class TestLedger
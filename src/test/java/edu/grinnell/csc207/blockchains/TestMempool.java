@@ -0,0 +1,226 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our Mempool and MiningPipeline classes.
+ *
+ * @author Paden Houck
+ */
+public class TestMempool {
+  /**
+   * A validator that accepts everything.
+   */
+  static final HashValidator ANY = (h) -> true;
+
+  /**
+   * Submitted transactions end up in the chain, and their futures say where.
+   */
+  @Test
+  public void pipelineTest() throws Exception {
+    BlockChain chain = new BlockChain(DifficultyTarget.leadingZeroBits(4), new ParallelMiner(2));
+    Mempool mempool = new Mempool(chain);
+    MiningPipeline pipeline = new MiningPipeline(mempool, 4);
+    try (pipeline) {
+      Block first = mempool.submit(new Transaction("", "Ann", 100)).get(10, TimeUnit.SECONDS);
+      assertEquals(0, first.getNum(), "the deposit is the first block");
+      ArrayList<CompletableFuture<Block>> futures = new ArrayList<CompletableFuture<Block>>();
+      for (int i = 0; i < 20; i++) {
+        futures.add(mempool.submit(new Transaction("Ann", "User" + i, 5)));
+      } // for
+      for (CompletableFuture<Block> future : futures) {
+        Block blk = future.get(10, TimeUnit.SECONDS);
+        assertEquals(blk.getHash(), chain.getBlock(blk.getNum()).getHash(), "block in chain");
+      } // for
+      assertEquals(0, chain.balance("Ann"), "Ann paid everyone");
+      assertTrue(chain.isCorrect(), "mined chain is correct");
+      assertEquals(0, mempool.pendingDebit("Ann"), "nothing pending");
+    } // try
+  } // pipelineTest()
+
+  /**
+   * Transfers that the source cannot cover, counting what they have already submitted, are
+   * rejected.
+   */
+  @Test
+  public void overdraftTest() throws Exception {
+    BlockChain chain = new BlockChain(ANY);
+    chain.append(chain.mine(new Transaction("", "Ann", 10)));
+    Mempool mempool = new Mempool(chain);
+    CompletableFuture<Block> first = mempool.submit(new Transaction("Ann", "Ben", 7));
+    CompletableFuture<Block> second = mempool.submit(new Transaction("Ann", "Cat", 4));
+    CompletableFuture<Block> third = mempool.submit(new Transaction("Ben", "Cat", 1));
+    ExecutionException e = assertThrows(ExecutionException.class, () -> second.get(),
+        "Ann cannot pay twice");
+    assertTrue(e.getCause() instanceof IllegalArgumentException, "rejected, not failed");
+    assertTrue(third.isCompletedExceptionally(), "pending credits do not count");
+    assertEquals(7, mempool.pendingDebit("Ann"), "the first transfer is pending");
+    assertEquals(1, mempool.size(), "one transfer waiting");
+
+    MiningPipeline pipeline = new MiningPipeline(mempool);
+    try (pipeline) {
+      first.get(10, TimeUnit.SECONDS);
+    } // try
+    assertEquals(7, chain.balance("Ben"), "Ben was paid");
+  } // overdraftTest()
+
+  /**
+   * Waiting transactions are mined in priority order.
+   */
+  @Test
+  public void priorityTest() throws Exception {
+    BlockChain chain = new BlockChain(ANY);
+    Mempool mempool = new Mempool(chain, Mempool.LARGEST_FIRST);
+    ArrayList<CompletableFuture<Block>> futures = new ArrayList<CompletableFuture<Block>>();
+    for (int amount : new int[] {3, 9, 1, 9, 5}) {
+      futures.add(mempool.submit(new Transaction("", "User" + futures.size(), amount)));
+    } // for
+    MiningPipeline pipeline = new MiningPipeline(mempool);
+    try (pipeline) {
+      Block blk = futures.get(0).get(10, TimeUnit.SECONDS);
+      List<Transaction> mined = blk.getTransactions();
+      assertEquals(5, mined.size(), "one batch");
+      assertEquals(List.of(new Transaction("", "User1", 9), new Transaction("", "User3", 9),
+          new Transaction("", "User4", 5), new Transaction("", "User0", 3),
+          new Transaction("", "User2", 1)), mined, "largest first, ties in order");
+    } // try
+  } // priorityTest()
+
+  /**
+   * Blocks mined by the pipeline record the bits a retargeting chain asks for.
+   */
+  @Test
+  public void retargetingTest() throws Exception {
+    BlockChain chain = new BlockChain(new RetargetingValidator(4, Duration.ofHours(1), 2));
+    Mempool mempool = new Mempool(chain);
+    MiningPipeline pipeline = new MiningPipeline(mempool, 1);
+    try (pipeline) {
+      for (int i = 0; i < 10; i++) {
+        mempool.submit(new Transaction("", "User" + i, 1)).get(10, TimeUnit.SECONDS);
+      } // for
+    } // try
+    assertEquals(10, chain.getSize(), "one block per deposit");
+    assertEquals(6, RetargetingValidator.bits(chain.getLastBlock().getNonce()),
+        "the difficulty went up");
+    assertTrue(chain.validate().isValid(), "mined chain is valid");
+  } // retargetingTest()
+
+  /**
+   * Blocks appended to the chain directly while the pipeline mines make it mine again, not stop.
+   */
+  @Test
+  public void outsideAppendTest() throws Exception {
+    BlockChain chain = new BlockChain(DifficultyTarget.leadingZeroBits(6), new ParallelMiner(2));
+    Mempool mempool = new Mempool(chain);
+    ArrayList<CompletableFuture<Block>> futures = new ArrayList<CompletableFuture<Block>>();
+    MiningPipeline pipeline = new MiningPipeline(mempool, 1);
+    try (pipeline) {
+      Thread outsider = new Thread(() -> {
+        for (int i = 0; i < 30; i++) {
+          while (!chain.tryAppend(chain.mine(new Transaction("", "Outsider", 1)))) {
+            // The pipeline got there first; mine again.
+          } // while
+        } // for
+      });
+      outsider.start();
+      for (int i = 0; i < 30; i++) {
+        futures.add(mempool.submit(new Transaction("", "Insider", 1)));
+      } // for
+      outsider.join();
+      for (CompletableFuture<Block> future : futures) {
+        Block blk = future.get(10, TimeUnit.SECONDS);
+        assertEquals(blk.getHash(), chain.getBlock(blk.getNum()).getHash(), "block in chain");
+      } // for
+    } // try
+    assertEquals(30, chain.balance("Outsider"), "every outside deposit");
+    assertEquals(30, chain.balance("Insider"), "every pipeline deposit");
+    assertTrue(chain.validate().isValid(), "mined chain is valid");
+  } // outsideAppendTest()
+
+  /**
+   * A batch that cannot be mined fails on its own and the pipeline keeps going.
+   */
+  @Test
+  public void failedBatchTest() throws Exception {
+    ParallelMiner miner = new ParallelMiner(1);
+    BlockChain chain = new BlockChain(ANY, miner);
+    chain.append(chain.mine(new Transaction("", "Ann", 10)));
+    miner.close();
+    Mempool mempool = new Mempool(chain);
+    MiningPipeline pipeline = new MiningPipeline(mempool);
+    try (pipeline) {
+      CompletableFuture<Block> first = mempool.submit(new Transaction("Ann", "Ben", 7));
+      assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS),
+          "no miner to mine with");
+      assertEquals(0, mempool.pendingDebit("Ann"), "the failed transfer is released");
+      assertTrue(pipeline.worker.isAlive(), "the pipeline is still running");
+      CompletableFuture<Block> second = mempool.submit(new Transaction("Ann", "Cat", 7));
+      assertThrows(ExecutionException.class, () -> second.get(10, TimeUnit.SECONDS),
+          "the next batch is tried too");
+    } // try
+  } // failedBatchTest()
+
+  /**
+   * Closing the pipeline waits for it to stop even when interrupted, and keeps the interrupt.
+   */
+  @Test
+  public void closeTest() throws Exception {
+    Mempool mempool = new Mempool(new BlockChain(ANY));
+    MiningPipeline pipeline = new MiningPipeline(mempool);
+    Thread.currentThread().interrupt();
+    pipeline.close();
+    assertTrue(Thread.interrupted(), "the interrupt is kept");
+    assertFalse(pipeline.worker.isAlive(), "the pipeline stopped");
+  } // closeTest()
+
+  /**
+   * Many threads can submit at once.
+   */
+  @Test
+  public void concurrentSubmitTest() throws Exception {
+    BlockChain chain = new BlockChain(ANY);
+    Mempool mempool = new Mempool(chain);
+    ArrayList<CompletableFuture<Block>> futures = new ArrayList<CompletableFuture<Block>>();
+    MiningPipeline pipeline = new MiningPipeline(mempool, 16);
+    try (pipeline) {
+      ArrayList<Thread> threads = new ArrayList<Thread>();
+      for (int i = 0; i < 4; i++) {
+        String user = "User" + i;
+        Thread submitter = new Thread(() -> {
+          for (int j = 0; j < 50; j++) {
+            CompletableFuture<Block> future = mempool.submit(new Transaction("", user, 1));
+            synchronized (futures) {
+              futures.add(future);
+            } // synchronized
+          } // for
+        });
+        threads.add(submitter);
+        submitter.start();
+      } // for
+      for (Thread submitter : threads) {
+        submitter.join();
+      } // for
+      for (CompletableFuture<Block> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      } // for
+    } // try
+    assertEquals(200, futures.size(), "every submission");
+    for (int i = 0; i < 4; i++) {
+      assertEquals(50, chain.balance("User" + i), "every deposit for User" + i);
+    } // for
+    assertTrue(chain.isCorrect(), "mined chain is correct");
+  } // concurrentSubmitTest()
+} // class TestMempool
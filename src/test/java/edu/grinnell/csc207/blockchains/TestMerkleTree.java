@@ -0,0 +1,119 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our MerkleTree class and of blocks that hold batches.
+ *
+ * @author Paden Houck
+ */
+public class TestMerkleTree {
+  /**
+   * Make a batch of transfers.
+   *
+   * @param count The number of transfers.
+   * @return the batch.
+   */
+  static List<Transaction> batch(int count) {
+    ArrayList<Transaction> result = new ArrayList<Transaction>();
+    for (int i = 0; i < count; i++) {
+      result.add(new Transaction("From" + (i % 3), "To" + i, i));
+    } // for
+    return result;
+  } // batch(int)
+
+  /**
+   * Hash bytes with SHA-256.
+   *
+   * @param parts The bytes to hash, in order.
+   * @return the hash.
+   */
+  static byte[] sha256(byte[]... parts) throws Exception {
+    MessageDigest md = MessageDigest.getInstance("sha-256");
+    for (byte[] part : parts) {
+      md.update(part);
+    } // for
+    return md.digest();
+  } // sha256(byte[]...)
+
+  /**
+   * Hash one transaction the way a leaf is hashed.
+   *
+   * @param t The transaction.
+   * @return the hash.
+   */
+  static byte[] leaf(Transaction t) throws Exception {
+    byte[] source = t.getSource().getBytes(StandardCharsets.UTF_8);
+    byte[] target = t.getTarget().getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buf = ByteBuffer.allocate(13 + source.length + target.length);
+    buf.put(MerkleTree.LEAF).putInt(source.length).put(source).putInt(target.length).put(target)
+        .putInt(t.getAmount());
+    return sha256(buf.array());
+  } // leaf(Transaction)
+
+  /**
+   * The root of three transactions pairs the first two and carries the third up.
+   */
+  @Test
+  public void rootTest() throws Exception {
+    List<Transaction> batch = batch(3);
+    byte[] pair = sha256(new byte[] {MerkleTree.NODE}, leaf(batch.get(0)), leaf(batch.get(1)));
+    byte[] expected = sha256(new byte[] {MerkleTree.NODE}, pair, leaf(batch.get(2)));
+    assertArrayEquals(expected, MerkleTree.root(batch).getBytes(), "root of three");
+    assertArrayEquals(leaf(batch.get(0)), MerkleTree.root(batch(1)).getBytes(), "root of one");
+    assertThrows(IllegalArgumentException.class, () -> MerkleTree.root(List.of()), "no leaves");
+  } // rootTest()
+
+  /**
+   * Changing, reordering, or dropping a transaction changes the root.
+   */
+  @Test
+  public void commitmentTest() {
+    List<Transaction> batch = batch(10);
+    Hash root = MerkleTree.root(batch);
+    ArrayList<Transaction> changed = new ArrayList<Transaction>(batch);
+    changed.set(7, new Transaction("From1", "To7", 8));
+    assertNotEquals(root, MerkleTree.root(changed), "changed amount");
+    changed = new ArrayList<Transaction>(batch);
+    changed.set(3, batch.get(4));
+    changed.set(4, batch.get(3));
+    assertNotEquals(root, MerkleTree.root(changed), "swapped transactions");
+    assertNotEquals(root, MerkleTree.root(batch.subList(0, 9)), "dropped transaction");
+  } // commitmentTest()
+
+  /**
+   * A mined batch hashes its header with the root, and a changed transaction breaks the hash.
+   */
+  @Test
+  public void batchBlockTest() {
+    DifficultyTarget target = DifficultyTarget.leadingZeroBits(8);
+    Hash prevHash = new Hash(new byte[] {1, 2, 3});
+    Block blk = new Block(4, batch(10_000), prevHash, target);
+    assertTrue(blk.isBatch(), "a batch");
+    assertEquals(10_000, blk.getTransactionCount(), "every transaction");
+    assertTrue(target.isValid(blk.getHash()), "mined hash is valid");
+    assertEquals(blk.getHash(), blk.calculateHash(), "stored hash matches");
+    assertEquals(blk.getHash(), new Block(4, batch(10_000), prevHash, blk.getNonce()).getHash(),
+        "same batch and nonce, same hash");
+    assertThrows(IllegalStateException.class, () -> blk.getTransaction(), "no single transaction");
+
+    blk.batch[5] = new Transaction("From2", "To5", 6);
+    assertNotEquals(blk.getHash(), blk.calculateHash(), "changed transaction");
+    Block single = new Block(4, new Transaction("From0", "To0", 0), prevHash, 0L);
+    Block batchOfOne = new Block(4, batch(1), prevHash, 0L);
+    assertNotEquals(single.getHash(), batchOfOne.getHash(), "a batch of one is not a single");
+  } // batchBlockTest()
+} // class TestMerkleTree
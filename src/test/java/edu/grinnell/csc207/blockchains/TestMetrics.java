@@ -0,0 +1,85 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our Metrics and LatencyHistogram classes.
+ *
+ * @author Paden Houck
+ */
+public class TestMetrics {
+  /**
+   * Percentiles fall at the top of their power-of-two bucket.
+   */
+  @Test
+  public void histogramTest() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.percentile(0.5), "empty histogram");
+    for (int i = 0; i < 90; i++) {
+      histogram.record(100);
+    } // for
+    for (int i = 0; i < 10; i++) {
+      histogram.record(5000);
+    } // for
+    assertEquals(100, histogram.getCount(), "count");
+    assertEquals(590, histogram.getMeanNanos(), 1e-9, "mean");
+    assertEquals(5000, histogram.getMaxNanos(), "max");
+    assertEquals(127, histogram.percentile(0.5), "median is in [64, 128)");
+    assertEquals(127, histogram.percentile(0.9), "90th percentile");
+    assertEquals(5000, histogram.percentile(0.99), "capped at the max");
+    assertThrows(IllegalArgumentException.class, () -> histogram.percentile(1.5), "bad fraction");
+  } // histogramTest()
+
+  /**
+   * The chain counts its work as it mines, appends, and validates.
+   */
+  @Test
+  public void chainTest() {
+    BlockChain chain = new BlockChain(DifficultyTarget.leadingZeroBits(4));
+    Metrics metrics = chain.getMetrics();
+    Block first = chain.mine(new Transaction("", "Ann", 10));
+    chain.append(first);
+    chain.append(chain.mine(List.of(new Transaction("Ann", "Ben", 3),
+        new Transaction("Ann", "Cat", 2))));
+    assertThrows(IllegalArgumentException.class, () -> chain.append(first), "stale block");
+    chain.balance("Ann");
+    chain.isCorrect();
+
+    assertEquals(2, metrics.getMining().getCount(), "searches");
+    assertEquals(first.getNonce() + chain.getLastBlock().getNonce() + 2, metrics.getHashes(),
+        "one hash per nonce tried on the calling thread");
+    assertEquals(2, metrics.getAppended(), "appended");
+    assertEquals(1, metrics.getRejected(), "rejected");
+    assertEquals(2, metrics.getAppending().getCount(), "timed appends");
+    assertEquals(1, metrics.getValidating().getCount(), "timed validations");
+    assertEquals(1, metrics.getBalanceLookups(), "lookups");
+    assertEquals(2, metrics.getChainSize(), "size");
+    assertEquals(3, metrics.getUserCount(), "users");
+  } // chainTest()
+
+  /**
+   * Mining in parallel counts every hash the workers try.
+   */
+  @Test
+  public void parallelTest() throws Exception {
+    try (ParallelMiner miner = new ParallelMiner(2)) {
+      BlockChain chain = new BlockChain(DifficultyTarget.leadingZeroBits(12), miner);
+      Metrics metrics = chain.getMetrics();
+      chain.append(chain.mine(new Transaction("", "Ann", 10)));
+      assertTrue(metrics.getHashes() > chain.getLastBlock().getNonce(),
+          "every nonce up to the one found");
+      long before = metrics.getHashes();
+      chain.append(chain.mineAsync(new Transaction("Ann", "Ben", 1)).get());
+      assertEquals(2, metrics.getMining().getCount(), "async search timed");
+      assertTrue(metrics.getHashes() > before, "async hashes counted");
+      assertTrue(metrics.getHashRate() > 0, "hash rate");
+    } // try
+  } // parallelTest()
+} // class TestMetrics
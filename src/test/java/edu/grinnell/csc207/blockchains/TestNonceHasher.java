@@ -0,0 +1,55 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.security.MessageDigest;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our NonceHasher and Sha256 classes.
+ *
+ * @author Paden Houck
+ */
+public class TestNonceHasher {
+  /**
+   * Our SHA-256 matches the library's for messages around the block boundaries.
+   */
+  @Test
+  public void sha256Test() throws Exception {
+    MessageDigest md = MessageDigest.getInstance("sha-256");
+    Sha256 sha = new Sha256();
+    byte[] out = new byte[Sha256.DIGEST_BYTES];
+    for (int len = 0; len < 200; len++) {
+      byte[] message = new byte[len];
+      for (int i = 0; i < len; i++) {
+        message[i] = (byte) (i * 31 + len);
+      } // for
+      sha.reset();
+      sha.update(message, 0, len / 3);
+      sha.update(message, len / 3, len - len / 3);
+      sha.digest(out);
+      assertArrayEquals(md.digest(message), out, "hash of " + len + " bytes");
+    } // for
+  } // sha256Test()
+
+  /**
+   * Midstate hashes are identical to calculateHash() for short and long names.
+   */
+  @Test
+  public void midstateMatchesBlockTest() {
+    String name = "";
+    for (int i = 0; i < 40; i++) {
+      Transaction t = new Transaction(name, name + "target", i);
+      Hash ph = new Hash(new byte[] {(byte) i, 2, 3});
+      NonceHasher hasher = new NonceHasher(i, t, ph);
+      for (long nonce = 0; nonce < 5; nonce++) {
+        Block b = new Block(i, t, ph, nonce * 1_000_003);
+        assertArrayEquals(b.getHash().getBytes(), hasher.hash(nonce * 1_000_003),
+            "midstate hash for name length " + name.length() + ", nonce " + nonce);
+      } // for
+      name = name + "abc";
+    } // for
+  } // midstateMatchesBlockTest()
+} // class TestNonceHasher
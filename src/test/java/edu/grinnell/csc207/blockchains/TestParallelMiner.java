@@ -0,0 +1,186 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our ParallelMiner class.
+ *
+ * @author Paden Houck
+ */
+public class TestParallelMiner {
+  /**
+   * A validator that wants the first byte to be zero.
+   */
+  static final HashValidator ONE_ZERO = (h) -> (h.length() > 0) && (h.get(0) == 0);
+
+  /**
+   * Mining in parallel finds a valid nonce and a correct hash.
+   */
+  @Test
+  public void parallelMineTest() {
+    try (ParallelMiner miner = new ParallelMiner(4)) {
+      Transaction t = new Transaction("Rebel", "Sky", 250);
+      Hash ph = new Hash(new byte[] {42, 42, 42});
+      Block b = miner.mine(5, t, ph, ONE_ZERO);
+      assertEquals(5, b.getNum(), "number of mined block");
+      assertEquals(t, b.getTransaction(), "transaction in mined block");
+      assertEquals(ph, b.getPrevHash(), "previous hash in mined block");
+      assertTrue(ONE_ZERO.isValid(b.getHash()), "mined hash is valid");
+      assertEquals(b.calculateHash(), b.getHash(), "mined hash is correct");
+    } // try
+  } // parallelMineTest()
+
+  /**
+   * Parallel mining agrees with the validity rules of sequential mining.
+   */
+  @Test
+  public void matchesSequentialTest() {
+    try (ParallelMiner miner = new ParallelMiner(1)) {
+      Transaction t = new Transaction("", "Someone", 10);
+      Hash ph = new Hash(new byte[] {1});
+      Block sequential = new Block(1, t, ph, ONE_ZERO);
+      Block parallel = miner.mine(1, t, ph, ONE_ZERO);
+      assertEquals(sequential.getNonce(), parallel.getNonce(),
+          "one worker finds the first valid nonce");
+      assertEquals(sequential.getHash(), parallel.getHash(), "same hash");
+    } // try
+  } // matchesSequentialTest()
+
+  /**
+   * A failing validator stops all of the workers.
+   */
+  @Test
+  public void failingValidatorTest() {
+    try (ParallelMiner miner = new ParallelMiner(3)) {
+      assertThrows(IllegalStateException.class,
+          () -> miner.mine(0, new Transaction("", "A", 1), new Hash(new byte[] {}),
+              (h) -> {
+                throw new UnsupportedOperationException();
+              }));
+    } // try
+  } // failingValidatorTest()
+
+  /**
+   * A blockchain with a miner mines blocks that it will accept.
+   */
+  @Test
+  public void chainMineTest() {
+    try (ParallelMiner miner = new ParallelMiner(2)) {
+      BlockChain chain = new BlockChain(ONE_ZERO, miner);
+      chain.append(chain.mine(new Transaction("", "Alpha", 100)));
+      chain.append(chain.mine(new Transaction("Alpha", "Beta", 40)));
+      assertEquals(2, chain.getSize(), "two mined blocks appended");
+    } // try
+  } // chainMineTest()
+
+  /**
+   * A chain without a miner creates one to mine in the background, and shuts down only that one.
+   */
+  @Test
+  public void chainShutdownTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    chain.append(chain.mineAsync(new Transaction("", "Alpha", 100)).get());
+    ParallelMiner created = chain.miner;
+    assertTrue(chain.ownsMiner, "the chain made its own miner");
+    chain.shutdown();
+    assertTrue(created.pool.isShutdown(), "its miner is stopped");
+    chain.append(chain.mineAsync(new Transaction("Alpha", "Beta", 40)).get());
+    assertEquals(2, chain.getSize(), "mining again makes a new miner");
+    chain.shutdown();
+
+    try (ParallelMiner miner = new ParallelMiner(2)) {
+      BlockChain given = new BlockChain(ONE_ZERO, miner);
+      given.append(given.mineAsync(new Transaction("", "Alpha", 100)).get());
+      given.shutdown();
+      assertFalse(miner.pool.isShutdown(), "a miner we were given keeps running");
+    } // try
+  } // chainShutdownTest()
+
+  /**
+   * Asynchronous mining completes with a valid block and reports progress.
+   */
+  @Test
+  public void asyncMineTest() throws Exception {
+    try (ParallelMiner miner = new ParallelMiner(2)) {
+      List<MiningProgress> reports = new CopyOnWriteArrayList<MiningProgress>();
+      Block b = miner.mineAsync(3, new Transaction("", "A", 5), new Hash(new byte[] {}),
+          ONE_ZERO, ParallelMiner.UNLIMITED, null, reports::add).get();
+      assertTrue(ONE_ZERO.isValid(b.getHash()), "async mined hash is valid");
+      assertFalse(reports.isEmpty(), "progress was reported");
+      assertTrue(reports.get(reports.size() - 1).getAttempts() > b.getNonce(),
+          "final report counts the winning attempt");
+    } // try
+  } // asyncMineTest()
+
+  /**
+   * Searches that cannot succeed stop when their limits run out or they are cancelled.
+   */
+  @Test
+  public void limitsTest() throws Exception {
+    HashValidator never = (h) -> false;
+    Transaction t = new Transaction("", "A", 5);
+    Hash ph = new Hash(new byte[] {});
+    try (ParallelMiner miner = new ParallelMiner(2)) {
+      ExecutionException budget = assertThrows(ExecutionException.class,
+          () -> miner.mineAsync(0, t, ph, never, 10_000, null, null).get());
+      assertTrue(budget.getCause() instanceof NoSuchElementException, "attempts ran out");
+
+      ExecutionException deadline = assertThrows(ExecutionException.class,
+          () -> miner.mineAsync(0, t, ph, never, ParallelMiner.UNLIMITED,
+              Duration.ofMillis(50), null).get());
+      assertTrue(deadline.getCause() instanceof TimeoutException, "time ran out");
+
+      CompletableFuture<Block> cancelled =
+          miner.mineAsync(0, t, ph, never, ParallelMiner.UNLIMITED, null, null);
+      cancelled.cancel(true);
+      assertThrows(CancellationException.class, () -> cancelled.get());
+      Block b = miner.mine(0, t, ph, ONE_ZERO);
+      assertTrue(ONE_ZERO.isValid(b.getHash()), "workers are free after cancelling");
+    } // try
+  } // limitsTest()
+
+  /**
+   * A search queued behind another still times out on time, and a search near the largest
+   * nonce stops there rather than wrapping around.
+   */
+  @Test
+  public void edgesTest() throws Exception {
+    HashValidator never = (h) -> false;
+    Transaction t = new Transaction("", "A", 5);
+    Hash ph = new Hash(new byte[] {});
+    try (ParallelMiner miner = new ParallelMiner(1)) {
+      CompletableFuture<Block> first =
+          miner.mineAsync(0, t, ph, never, ParallelMiner.UNLIMITED, null, null);
+      CompletableFuture<Block> queued =
+          miner.mineAsync(0, t, ph, never, ParallelMiner.UNLIMITED, Duration.ofMillis(50), null);
+      ExecutionException deadline = assertThrows(ExecutionException.class,
+          () -> queued.get(10, TimeUnit.SECONDS));
+      assertTrue(deadline.getCause() instanceof TimeoutException, "queued search timed out");
+      assertFalse(first.isDone(), "the first search is still running");
+      first.cancel(true);
+    } // try
+    try (ParallelMiner miner = new ParallelMiner(2)) {
+      Block last = new Block(0, t, ph, Long.MAX_VALUE - 10, null);
+      ExecutionException end = assertThrows(ExecutionException.class,
+          () -> miner.mineAsync(last, never, ParallelMiner.UNLIMITED, null, null)
+              .get(10, TimeUnit.SECONDS));
+      assertTrue(end.getCause() instanceof NoSuchElementException, "nonces ran out");
+    } // try
+  } // edgesTest()
+} // class TestParallelMiner
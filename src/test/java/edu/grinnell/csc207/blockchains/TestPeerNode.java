@@ -0,0 +1,252 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our PeerNode class, over the loopback interface.
+ *
+ * @author Paden Houck
+ */
+public class TestPeerNode {
+  /**
+   * A validator that accepts everything, so that blocks are quick to make.
+   */
+  static final HashValidator ANY = (h) -> true;
+
+  /**
+   * A free address on the loopback interface.
+   */
+  static final InetSocketAddress LOCAL = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+  /**
+   * Wait until something is true, failing if it takes too long.
+   *
+   * @param condition The condition.
+   * @param message   What we were waiting for.
+   */
+  static void await(BooleanSupplier condition, String message) throws InterruptedException {
+    long deadline = System.nanoTime() + 20_000_000_000L;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.nanoTime() < deadline, message);
+      Thread.sleep(5);
+    } // while
+  } // await(BooleanSupplier, String)
+
+  /**
+   * Add blocks to the end of a chain.
+   *
+   * @param chain The chain.
+   * @param count The number of blocks.
+   */
+  static void grow(BlockChain chain, int count) {
+    for (int i = 0; i < count; i++) {
+      chain.append(chain.mine(new Transaction("", "Ann", 1)));
+    } // for
+  } // grow(BlockChain, int)
+
+  /**
+   * Read one frame from a connection.
+   *
+   * @param channel The connection.
+   * @return the frame, positioned at its type.
+   */
+  static ByteBuffer readFrame(SocketChannel channel) throws Exception {
+    ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+    while (length.hasRemaining()) {
+      assertTrue(channel.read(length) >= 0, "connection open");
+    } // while
+    ByteBuffer frame = ByteBuffer.allocate(length.getInt(0));
+    while (frame.hasRemaining()) {
+      assertTrue(channel.read(frame) >= 0, "connection open");
+    } // while
+    return frame.flip();
+  } // readFrame(SocketChannel)
+
+  /**
+   * Read the blocks from an answer.
+   *
+   * @param frame The frame, positioned at its type.
+   * @return the blocks.
+   */
+  static List<Block> blocks(ByteBuffer frame) {
+    ByteBuffer body = frame.position(1).slice();
+    ArrayList<Block> blocks = new ArrayList<Block>();
+    int at = 2 * Integer.BYTES;
+    for (int i = 0; i < body.getInt(Integer.BYTES); i++) {
+      int length = body.getInt(at) & ~BlockLog.BATCH_FLAG;
+      blocks.add(BlockLog.decode(body.duplicate().limit(at + length).position(at)));
+      at += length;
+    } // for
+    return blocks;
+  } // blocks(ByteBuffer)
+
+  /**
+   * Nodes in a line catch up with a long chain in batches, and then follow it as it grows.
+   */
+  @Test
+  public void syncTest() throws Exception {
+    BlockChain source = new BlockChain(ANY);
+    grow(source, 1000);
+    BlockChain middle = new BlockChain(ANY);
+    BlockChain end = new BlockChain(ANY);
+    try (PeerNode a = new PeerNode(source, LOCAL);
+        PeerNode b = new PeerNode(middle, LOCAL);
+        PeerNode c = new PeerNode(end, LOCAL)) {
+      b.connect(a.getAddress());
+      c.connect(b.getAddress());
+      await(() -> end.getSize() == 1000, "the end of the line catches up");
+      assertEquals(source.getHash(), end.getHash(), "same last block");
+      assertEquals(2, b.getPeerCount(), "the middle node has two peers");
+
+      grow(source, 50);
+      a.announce();
+      await(() -> end.getSize() == 1050, "new blocks are announced along the line");
+      assertEquals(source.getHash(), end.getHash(), "same last block after growing");
+      assertEquals(1050, c.getBlocksReceived(), "every block received once");
+      assertTrue(end.isCorrect(), "a correct copy");
+    } // try
+  } // syncTest()
+
+  /**
+   * One node keeps a dozen peers in step while it mines.
+   */
+  @Test
+  public void dozenTest() throws Exception {
+    BlockChain hub = new BlockChain(DifficultyTarget.leadingZeroBits(6));
+    ArrayList<PeerNode> nodes = new ArrayList<PeerNode>();
+    try (PeerNode center = new PeerNode(hub, LOCAL)) {
+      for (int i = 0; i < 12; i++) {
+        PeerNode node = new PeerNode(new BlockChain(DifficultyTarget.leadingZeroBits(6)), LOCAL);
+        nodes.add(node);
+        node.connect(center.getAddress());
+      } // for
+      await(() -> center.getPeerCount() == 12, "every peer connects");
+      for (int i = 0; i < 100; i++) {
+        hub.append(hub.mine(new Transaction("", "Ann", 1)));
+        center.announce();
+      } // for
+      for (PeerNode node : nodes) {
+        await(() -> node.getChain().getSize() == 100, "every peer keeps up");
+        assertEquals(hub.getHash(), node.getChain().getHash(), "same last block");
+      } // for
+    } finally {
+      for (PeerNode node : nodes) {
+        node.close();
+      } // for
+    } // try-finally
+  } // dozenTest()
+
+  /**
+   * Peers can ask for blocks by number or after a hash, and are dropped for bad frames.
+   */
+  @Test
+  public void requestTest() throws Exception {
+    BlockChain chain = new BlockChain(ANY);
+    grow(chain, 20);
+    try (PeerNode node = new PeerNode(chain, LOCAL);
+        SocketChannel peer = SocketChannel.open(node.getAddress())) {
+      ByteBuffer status = readFrame(peer);
+      assertEquals(PeerNode.STATUS, status.get(0), "status first");
+      assertEquals(20, status.getInt(1), "the size of the chain");
+
+      peer.write(PeerNode.frame(PeerNode.GET_RANGE, 2 * Integer.BYTES).putInt(5).putInt(3)
+          .flip());
+      ByteBuffer answer = readFrame(peer);
+      assertEquals(PeerNode.BLOCKS, answer.get(0), "an answer");
+      assertEquals(5, answer.getInt(1), "from block 5");
+      List<Block> range = blocks(answer);
+      assertEquals(3, range.size(), "three blocks");
+      assertEquals(chain.getBlock(7).getHash(), range.get(2).getHash(), "block 7");
+
+      byte[] hash = chain.getBlock(17).getHash().getBytes();
+      peer.write(PeerNode.frame(PeerNode.GET_AFTER, 2 * Integer.BYTES + hash.length)
+          .putInt(hash.length).put(hash).putInt(10).flip());
+      List<Block> after = blocks(readFrame(peer));
+      assertEquals(2, after.size(), "only two blocks after block 17");
+      assertEquals(chain.getHash(), after.get(1).getHash(), "the last block");
+
+      peer.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, -5));
+      assertEquals(-1, peer.read(ByteBuffer.allocate(1)), "dropped for a bad frame");
+    } // try
+  } // requestTest()
+
+  /**
+   * Blocks from another branch are not taken, and blocks that fail the validator are not
+   * added.
+   */
+  @Test
+  public void rejectTest() throws Exception {
+    BlockChain ours = new BlockChain(ANY);
+    ours.append(ours.mine(new Transaction("", "Ann", 5)));
+    BlockChain theirs = new BlockChain(ANY);
+    grow(theirs, 10);
+    BlockChain strict = new BlockChain(DifficultyTarget.leadingZeroBits(30));
+    try (PeerNode a = new PeerNode(ours, LOCAL);
+        PeerNode b = new PeerNode(theirs, LOCAL);
+        PeerNode c = new PeerNode(strict, LOCAL)) {
+      a.connect(b.getAddress());
+      c.connect(b.getAddress());
+      await(() -> b.getBlocksSent() >= 20, "the blocks are offered");
+      Thread.sleep(100);
+      assertEquals(1, ours.getSize(), "another branch is ignored");
+      assertEquals(0, strict.getSize(), "unmined blocks are refused");
+      assertTrue(strict.getMetrics().getRejected() > 0, "counted as rejected");
+    } // try
+  } // rejectTest()
+
+  /**
+   * A chain that shrinks while its blocks are being sent does not stop the node.
+   */
+  @Test
+  public void shrinkTest() throws Exception {
+    BlockChain chain = new BlockChain(ANY);
+    grow(chain, 2000);
+    ArrayList<PeerNode> followers = new ArrayList<PeerNode>();
+    try (PeerNode node = new PeerNode(chain, LOCAL)) {
+      for (int i = 0; i < 4; i++) {
+        PeerNode follower = new PeerNode(new BlockChain(ANY), LOCAL);
+        followers.add(follower);
+        follower.connect(node.getAddress());
+      } // for
+      while (chain.getSize() > 10) {
+        chain.removeLast();
+        node.announce();
+      } // while
+      assertTrue(node.worker.isAlive(), "the node is still running");
+      try (SocketChannel peer = SocketChannel.open(node.getAddress())) {
+        ByteBuffer status = readFrame(peer);
+        assertEquals(PeerNode.STATUS, status.get(0), "a new peer is greeted");
+        assertEquals(10, status.getInt(1), "with the new size");
+      } // try
+    } finally {
+      for (PeerNode follower : followers) {
+        follower.close();
+      } // for
+    } // try-finally
+  } // shrinkTest()
+
+  /**
+   * Closing a node waits for it to stop even when interrupted, and keeps the interrupt.
+   */
+  @Test
+  public void closeTest() throws Exception {
+    PeerNode node = new PeerNode(new BlockChain(ANY), LOCAL);
+    Thread.currentThread().interrupt();
+    node.close();
+    assertTrue(Thread.interrupted(), "the interrupt is kept");
+    assertFalse(node.worker.isAlive(), "the node stopped");
+  } // closeTest()
+} // class TestPeerNode
@@ -0,0 +1,152 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our RetargetingValidator class.
+ *
+ * @author Paden Houck
+ */
+public class TestRetargetingValidator {
+  /**
+   * Make a block at a position in a chain, mined for a number of bits.
+   *
+   * @param num  The position.
+   * @param prev The hash of the block before.
+   * @param bits The number of bits, which the block records.
+   * @return the block.
+   */
+  static Block minedFor(int num, Hash prev, int bits) {
+    Block blk = new Block(num, new Transaction("", "Ann", 1), prev,
+        (long) bits << RetargetingValidator.SHIFT);
+    blk.mine(DifficultyTarget.leadingZeroBits(bits));
+    return blk;
+  } // minedFor(int, Hash, int)
+
+  /**
+   * Blocks that come faster than planned make the difficulty go up, a few bits at a time.
+   */
+  @Test
+  public void fasterTest() {
+    BlockChain chain = new BlockChain(new RetargetingValidator(4, Duration.ofHours(1), 2));
+    RetargetingValidator check = (RetargetingValidator) chain.check;
+    for (int i = 0; i < 9; i++) {
+      chain.append(chain.mine(new Transaction("", "Ann", 1)));
+    } // for
+    for (int i = 0; i < 9; i++) {
+      int bits = RetargetingValidator.bits(chain.getBlock(i).getNonce());
+      assertEquals(2 + 2 * (i / 4), bits, "bits recorded by block " + i);
+      assertTrue(DifficultyTarget.leadingZeroBits(bits).isValid(chain.getBlock(i).getHash()),
+          "block " + i + " meets its bits");
+    } // for
+    assertEquals(2, check.getRetargets(), "two runs done");
+    assertEquals(6, check.getBits(), "bits for the next block");
+    assertTrue(chain.isCorrect(), "correct chain");
+  } // fasterTest()
+
+  /**
+   * Blocks that come slower than planned make the difficulty go down, but not below 0.
+   */
+  @Test
+  public void slowerTest() {
+    BlockChain chain = new BlockChain(new RetargetingValidator(2, Duration.ofNanos(1), 3));
+    RetargetingValidator check = (RetargetingValidator) chain.check;
+    for (int i = 0; i < 6; i++) {
+      chain.append(chain.mine(new Transaction("", "Ann", 1)));
+    } // for
+    assertEquals(1, RetargetingValidator.bits(chain.getBlock(2).getNonce()), "down two bits");
+    assertEquals(0, RetargetingValidator.bits(chain.getBlock(4).getNonce()), "no lower than 0");
+    assertTrue(chain.isCorrect(), "correct chain");
+
+    chain.removeLast();
+    chain.removeLast();
+    assertEquals(1, check.getBits(), "removing blocks goes back to their bits");
+    chain.append(chain.mine(new Transaction("", "Ann", 1)));
+    chain.append(chain.mine(new Transaction("", "Ann", 1)));
+    assertEquals(1, RetargetingValidator.bits(chain.getLastBlock().getNonce()), "bits kept");
+    assertEquals(3, check.getRetargets(), "no timing for a run we did not see start");
+    assertTrue(chain.isCorrect(), "still correct");
+  } // slowerTest()
+
+  /**
+   * Blocks must record the bits that follow from the block before and meet them.
+   */
+  @Test
+  public void validateTest() {
+    RetargetingValidator check = new RetargetingValidator(4, Duration.ofSeconds(1), 4);
+    Hash none = new Hash(new byte[] {});
+    assertFalse(check.isValidBlock(minedFor(0, none, 3), 0, 0), "the first block needs 4 bits");
+    Block first = minedFor(0, none, 4);
+    assertTrue(check.isValidBlock(first, 0, 0), "the first block");
+
+    long nonce = first.getNonce();
+    assertFalse(check.isValidBlock(minedFor(1, first.getHash(), 5), 1, nonce),
+        "no change within a run");
+    assertTrue(check.isValidBlock(minedFor(4, first.getHash(), 6), 4, nonce),
+        "up two at the start of a run");
+    assertTrue(check.isValidBlock(minedFor(4, first.getHash(), 2), 4, nonce),
+        "down two at the start of a run");
+    assertFalse(check.isValidBlock(minedFor(4, first.getHash(), 7), 4, nonce),
+        "no more than two");
+
+    Block weak = new Block(1, new Transaction("", "Ann", 1), first.getHash(), nonce);
+    while (DifficultyTarget.leadingZeroBits(4).isValid(weak.getHash())) {
+      weak = new Block(1, new Transaction("", "Ann", 1), first.getHash(), weak.getNonce() + 1);
+    } // while
+    assertFalse(check.isValidBlock(weak, 1, nonce), "the hash must meet the recorded bits");
+
+    BlockChain chain = new BlockChain(check);
+    chain.append(first);
+    chain.append(weak);
+    assertEquals(1, chain.validate().getFailedBlock(), "the chain finds the weak block");
+  } // validateTest()
+
+  /**
+   * Chains and snapshots sharing a validator keep their own difficulty, and whether a block is
+   * valid does not depend on it.
+   */
+  @Test
+  public void sharedTest() {
+    RetargetingValidator shared = new RetargetingValidator(2, Duration.ofHours(1), 1);
+    BlockChain fast = new BlockChain(shared);
+    BlockChain idle = new BlockChain(shared);
+    for (int i = 0; i < 3; i++) {
+      fast.append(fast.mine(new Transaction("", "Ann", 1)));
+    } // for
+    BlockChain snap = fast.snapshot();
+    fast.append(fast.mine(new Transaction("", "Ann", 1)));
+    assertEquals(5, ((RetargetingValidator) fast.check).getBits(), "the fast chain went up");
+    assertEquals(3, ((RetargetingValidator) snap.check).getBits(), "the snapshot kept its bits");
+    assertEquals(1, ((RetargetingValidator) idle.check).getBits(), "the idle chain did not");
+    assertEquals(1, shared.getBits(), "nor did the validator they were given");
+    assertTrue(fast.isCorrect(), "the fast chain is correct");
+
+    idle.append(idle.mine(new Transaction("", "Bob", 1)));
+    assertEquals(1, RetargetingValidator.bits(idle.getBlock(0).getNonce()), "mined for 1 bit");
+    assertTrue(idle.isCorrect(), "the idle chain is correct");
+    assertEquals(DifficultyTarget.leadingZeroBits(5).toString(),
+        shared.forNonce(5L << RetargetingValidator.SHIFT).toString(),
+        "mining meets the bits of the nonce");
+  } // sharedTest()
+
+  /**
+   * Bad settings are refused.
+   */
+  @Test
+  public void settingsTest() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new RetargetingValidator(0, Duration.ofSeconds(1), 8), "interval");
+    assertThrows(IllegalArgumentException.class,
+        () -> new RetargetingValidator(4, Duration.ZERO, 8), "block time");
+    assertThrows(IllegalArgumentException.class,
+        () -> new RetargetingValidator(4, Duration.ofSeconds(1), 200), "bits");
+  } // settingsTest()
+} // class TestRetargetingValidator